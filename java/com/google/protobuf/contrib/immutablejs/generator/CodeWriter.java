@@ -14,19 +14,22 @@
 package com.google.protobuf.contrib.immutablejs.generator;
 
 import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
+import java.util.ArrayList;
+import java.util.List;
 
-/** Writer that is able to handle multiple file in a common base directory or zip file. */
+/**
+ * Writer that is able to handle multiple file in a common base directory or zip file.
+ *
+ * <p>A writer is not thread-safe; files that are rendered concurrently each use their own writer,
+ * which are then appended to the response in a fixed order to keep the output deterministic.
+ */
 final class CodeWriter {
 
-  private final CodeGeneratorResponse.Builder response;
+  private final List<CodeGeneratorResponse.File> files = new ArrayList<>();
 
   private StringBuilder writer;
   private String currentFileName;
 
-  public CodeWriter(CodeGeneratorResponse.Builder response) {
-    this.response = response;
-  }
-
   /**
    * Start a new entry (file).
    *
@@ -38,10 +41,19 @@ final class CodeWriter {
   }
 
   public void closeEntry() {
-    response.addFileBuilder().setName(currentFileName).setContent(writer.toString());
+    files.add(
+        CodeGeneratorResponse.File.newBuilder()
+            .setName(currentFileName)
+            .setContent(writer.toString())
+            .build());
   }
 
   public void print(String s) {
     writer.append(s);
   }
+
+  /** Appends the completed entries to the response in the order they were written. */
+  public void writeTo(CodeGeneratorResponse.Builder response) {
+    response.addAllFile(files);
+  }
 }
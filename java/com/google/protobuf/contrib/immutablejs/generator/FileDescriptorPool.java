@@ -0,0 +1,93 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.immutablejs.generator;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the file descriptors of a {@link CodeGeneratorRequest}.
+ *
+ * <p>Descriptors are kept across requests so that a persistent worker does not rebuild the
+ * descriptors of dependencies shared by many targets. A cached descriptor is only reused if both
+ * its proto and its dependencies are unchanged. The pool is safe to use from multiple threads.
+ */
+public final class FileDescriptorPool {
+
+  // Soft values let a long running worker give the memory back when it is under pressure.
+  private final Cache<String, FileDescriptor> descriptors =
+      CacheBuilder.newBuilder().softValues().build();
+
+  /**
+   * Builds all files of the request and returns the ones to generate code for, in the order of the
+   * request.
+   */
+  public ImmutableList<FileDescriptor> buildFilesToGenerate(CodeGeneratorRequest request)
+      throws DescriptorValidationException {
+    Map<String, FileDescriptor> fileDescriptors = new HashMap<>();
+    ImmutableSet<String> fileToGenerateSet = ImmutableSet.copyOf(request.getFileToGenerateList());
+    ImmutableList.Builder<FileDescriptor> filesToGenerate = ImmutableList.builder();
+
+    for (FileDescriptorProto fileDescriptorProto : request.getProtoFileList()) {
+      // Look up the imported files from previous file descriptors.  It is sufficient to look at
+      // only previous file descriptors because CodeGeneratorRequest guarantees that the files
+      // are sorted in topological order.
+      FileDescriptor[] deps = new FileDescriptor[fileDescriptorProto.getDependencyCount()];
+      for (int i = 0; i < fileDescriptorProto.getDependencyCount(); i++) {
+        String name = fileDescriptorProto.getDependency(i);
+        FileDescriptor dependee = checkNotNull(fileDescriptors.get(name),
+            "Missing file descriptor for [%s]", name);
+        deps[i] = dependee;
+      }
+
+      // Build and cache the current file descriptor.
+      FileDescriptor fileDescriptor = build(fileDescriptorProto, deps);
+      fileDescriptors.put(fileDescriptor.getName(), fileDescriptor);
+
+      // We only generate output for protos that we see on the command line not their
+      // dependencies. This is necessary to make strict deps work.
+      if (fileToGenerateSet.contains(fileDescriptorProto.getName())) {
+        filesToGenerate.add(fileDescriptor);
+      }
+    }
+    return filesToGenerate.build();
+  }
+
+  private FileDescriptor build(FileDescriptorProto fileDescriptorProto, FileDescriptor[] deps)
+      throws DescriptorValidationException {
+    FileDescriptor cached = descriptors.getIfPresent(fileDescriptorProto.getName());
+    // FileDescriptor does not override equals, so the dependencies are compared by identity. This
+    // also invalidates the descriptors of files that (transitively) depend on a changed file.
+    if (cached != null
+        && cached.getDependencies().equals(Arrays.asList(deps))
+        && cached.toProto().equals(fileDescriptorProto)) {
+      return cached;
+    }
+
+    FileDescriptor fileDescriptor = FileDescriptor.buildFrom(fileDescriptorProto, deps);
+    descriptors.put(fileDescriptor.getName(), fileDescriptor);
+    return fileDescriptor;
+  }
+}
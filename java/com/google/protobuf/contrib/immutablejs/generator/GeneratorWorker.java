@@ -0,0 +1,332 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.immutablejs.generator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Entry point shared by the protoc plugins that can also run as a Bazel persistent worker.
+ *
+ * <p>Without arguments the generator runs as a protoc plugin. With arguments it reads the
+ * descriptor sets produced by {@code proto_library} instead of going through protoc, and with
+ * {@code --persistent_worker} it keeps serving (multiplexed) work requests so that class loading,
+ * parsed templates and descriptors of shared dependencies stay warm across targets.
+ */
+public final class GeneratorWorker {
+
+  /** Generates the files for a code generator request. */
+  public interface Generator {
+    /**
+     * Generates the files of the request. With {@code renderInParallel} the files are rendered
+     * concurrently, which is only worthwhile if no other requests are handled at the same time.
+     */
+    CodeGeneratorResponse generate(CodeGeneratorRequest request, boolean renderInParallel)
+        throws Exception;
+  }
+
+  private static final String PERSISTENT_WORKER_FLAG = "--persistent_worker";
+
+  // Descriptor sets of widely shared dependencies are part of most requests, so they are parsed
+  // once per content digest.
+  private static final Cache<ByteString, FileDescriptorSet> descriptorSets =
+      CacheBuilder.newBuilder().softValues().build();
+
+  public static void run(String[] args, Generator generator) throws Exception {
+    PrintStream stdout = System.out;
+    if (isPersistentWorker(args)) {
+      // Stdout carries the worker protocol, anything else printed would corrupt it.
+      System.setOut(System.err);
+    }
+    run(args, generator, System.in, stdout);
+  }
+
+  /** Runs the generator on the given streams instead of stdin and stdout. */
+  static void run(String[] args, Generator generator, InputStream in, PrintStream out)
+      throws Exception {
+    if (args.length == 0) {
+      CodeGeneratorRequest request = CodeGeneratorRequest.parseFrom(in);
+      generator.generate(request, /* renderInParallel= */ true).writeTo(out);
+      out.flush();
+    } else if (isPersistentWorker(args)) {
+      runPersistentWorker(generator, in, out);
+    } else {
+      generate(
+          generator,
+          expandParamFiles(Arrays.asList(args)),
+          ImmutableMap.of(),
+          /* renderInParallel= */ true);
+    }
+  }
+
+  private static boolean isPersistentWorker(String[] args) {
+    return Arrays.asList(args).contains(PERSISTENT_WORKER_FLAG);
+  }
+
+  private static void runPersistentWorker(Generator generator, InputStream in, PrintStream out)
+      throws Exception {
+    // Multiplexed requests are handled concurrently, singleplex requests arrive one at a time.
+    // Generating is CPU bound, so running more requests at once than there are processors would
+    // only add memory pressure; Bazel may send many more than that.
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      WorkRequest request;
+      while ((request = WorkRequest.parseDelimitedFrom(in)) != null) {
+        WorkRequest workRequest = request;
+        executor.execute(() -> handle(generator, workRequest, out));
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static void handle(Generator generator, WorkRequest request, PrintStream stdout) {
+    int exitCode = 0;
+    String output = "";
+    try {
+      // Multiplexed requests already keep all processors busy, singleplex requests (with id 0)
+      // arrive one at a time and can use them to render their files.
+      generate(
+          generator,
+          expandParamFiles(request.arguments),
+          request.inputDigests,
+          /* renderInParallel= */ request.requestId == 0);
+    } catch (Throwable e) {
+      // Errors are reported as well, Bazel would otherwise wait for the response forever.
+      exitCode = 1;
+      output = Throwables.getStackTraceAsString(e);
+    }
+    try {
+      try {
+        writeResponse(stdout, request.requestId, exitCode, output);
+      } catch (RuntimeException e) {
+        // The size is computed before anything is written, so a failure to encode the output
+        // still leaves the stream intact to answer the request.
+        writeResponse(stdout, request.requestId, 1, "Failed to write the response: " + e);
+      }
+    } catch (IOException e) {
+      // Bazel is gone, there is nobody left to report to.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void generate(
+      Generator generator,
+      List<String> args,
+      Map<String, ByteString> inputDigests,
+      boolean renderInParallel)
+      throws Exception {
+    GeneratorWorkerOptions options = GeneratorWorkerOptions.create(args);
+    CodeGeneratorResponse response =
+        generator.generate(createRequest(options, inputDigests), renderInParallel);
+    if (response.hasError()) {
+      throw new IllegalStateException(response.getError());
+    }
+
+    Path outputDirectory = Paths.get(options.getOutput());
+    for (CodeGeneratorResponse.File file : response.getFileList()) {
+      Path path = outputDirectory.resolve(file.getName());
+      Files.createDirectories(path.getParent());
+      Files.write(path, file.getContent().getBytes(UTF_8));
+    }
+  }
+
+  /** Creates the request protoc would have sent for the files of the direct descriptor set. */
+  private static CodeGeneratorRequest createRequest(
+      GeneratorWorkerOptions options, Map<String, ByteString> inputDigests) throws IOException {
+    FileDescriptorSet directDescriptorSet =
+        readDescriptorSet(options.getDirectDescriptorSet(), inputDigests);
+
+    Map<String, FileDescriptorProto> filesByName = new LinkedHashMap<>();
+    for (String path : options.getDescriptorSets()) {
+      for (FileDescriptorProto file : readDescriptorSet(path, inputDigests).getFileList()) {
+        filesByName.putIfAbsent(file.getName(), file);
+      }
+    }
+    for (FileDescriptorProto file : directDescriptorSet.getFileList()) {
+      filesByName.putIfAbsent(file.getName(), file);
+    }
+
+    CodeGeneratorRequest.Builder request =
+        CodeGeneratorRequest.newBuilder().setParameter(options.getParameter());
+    for (FileDescriptorProto file : directDescriptorSet.getFileList()) {
+      request.addFileToGenerate(file.getName());
+    }
+    // The descriptor sets are not ordered with respect to each other, but the request has to list
+    // the files in topological order.
+    Set<String> addedFiles = new HashSet<>();
+    for (FileDescriptorProto file : filesByName.values()) {
+      addInTopologicalOrder(file, filesByName, addedFiles, request);
+    }
+    return request.build();
+  }
+
+  private static void addInTopologicalOrder(
+      FileDescriptorProto file,
+      Map<String, FileDescriptorProto> filesByName,
+      Set<String> addedFiles,
+      CodeGeneratorRequest.Builder request) {
+    if (!addedFiles.add(file.getName())) {
+      return;
+    }
+    for (String dependency : file.getDependencyList()) {
+      // Missing dependencies are reported when the descriptors are built.
+      FileDescriptorProto dependencyFile = filesByName.get(dependency);
+      if (dependencyFile != null) {
+        addInTopologicalOrder(dependencyFile, filesByName, addedFiles, request);
+      }
+    }
+    request.addProtoFile(file);
+  }
+
+  private static FileDescriptorSet readDescriptorSet(
+      String path, Map<String, ByteString> inputDigests) throws IOException {
+    ByteString digest = inputDigests.get(path);
+    if (digest == null || digest.isEmpty()) {
+      return FileDescriptorSet.parseFrom(Files.readAllBytes(Paths.get(path)));
+    }
+    FileDescriptorSet descriptorSet = descriptorSets.getIfPresent(digest);
+    if (descriptorSet == null) {
+      descriptorSet = FileDescriptorSet.parseFrom(Files.readAllBytes(Paths.get(path)));
+      descriptorSets.put(digest, descriptorSet);
+    }
+    return descriptorSet;
+  }
+
+  /** Replaces {@code @file} arguments with the lines of the file, as written by Bazel. */
+  private static List<String> expandParamFiles(List<String> args) throws IOException {
+    List<String> expandedArgs = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith("@") && !arg.startsWith("@@")) {
+        expandedArgs.addAll(Files.readAllLines(Paths.get(arg.substring(1)), UTF_8));
+      } else if (!arg.equals(PERSISTENT_WORKER_FLAG)) {
+        expandedArgs.add(arg);
+      }
+    }
+    return expandedArgs;
+  }
+
+  private static void writeResponse(OutputStream out, int requestId, int exitCode, String output)
+      throws IOException {
+    // WorkResponse: exit_code = 1, output = 2, request_id = 3.
+    int size =
+        CodedOutputStream.computeInt32Size(1, exitCode)
+            + CodedOutputStream.computeStringSize(2, output)
+            + CodedOutputStream.computeInt32Size(3, requestId);
+    // Responses of multiplexed requests must not interleave.
+    synchronized (out) {
+      CodedOutputStream codedOut = CodedOutputStream.newInstance(out);
+      codedOut.writeUInt32NoTag(size);
+      codedOut.writeInt32(1, exitCode);
+      codedOut.writeString(2, output);
+      codedOut.writeInt32(3, requestId);
+      codedOut.flush();
+      out.flush();
+    }
+  }
+
+  /**
+   * The parts of Bazel's {@code WorkRequest} (worker_protocol.proto) used by the generators. It is
+   * decoded by hand to avoid depending on Bazel's protos.
+   */
+  private static final class WorkRequest {
+    final List<String> arguments = new ArrayList<>();
+    final Map<String, ByteString> inputDigests = new HashMap<>();
+    int requestId;
+
+    /** Returns the next length delimited request, or null at the end of the stream. */
+    @Nullable
+    static WorkRequest parseDelimitedFrom(InputStream in) throws IOException {
+      int firstByte = in.read();
+      if (firstByte == -1) {
+        return null;
+      }
+      byte[] bytes = new byte[CodedInputStream.readRawVarint32(firstByte, in)];
+      ByteStreams.readFully(in, bytes);
+
+      WorkRequest request = new WorkRequest();
+      CodedInputStream input = CodedInputStream.newInstance(bytes);
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        switch (tag) {
+          case 10: // repeated string arguments = 1;
+            request.arguments.add(input.readString());
+            break;
+          case 18: // repeated Input inputs = 2;
+            request.readInput(input.readBytes());
+            break;
+          case 24: // int32 request_id = 3;
+            request.requestId = input.readInt32();
+            break;
+          default:
+            input.skipField(tag);
+        }
+      }
+      return request;
+    }
+
+    private void readInput(ByteString bytes) throws IOException {
+      String path = "";
+      ByteString digest = ByteString.EMPTY;
+      CodedInputStream input = bytes.newCodedInput();
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        switch (tag) {
+          case 10: // string path = 1;
+            path = input.readString();
+            break;
+          case 18: // bytes digest = 2;
+            digest = input.readBytes();
+            break;
+          default:
+            input.skipField(tag);
+        }
+      }
+      inputDigests.put(path, digest);
+    }
+  }
+
+  private GeneratorWorker() {}
+}
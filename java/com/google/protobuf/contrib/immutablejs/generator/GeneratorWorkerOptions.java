@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.immutablejs.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+final class GeneratorWorkerOptions {
+  @Option(
+      name = "-output",
+      required = true,
+      metaVar = "<output>",
+      usage = "Specifies the directory to write the generated files to.")
+  String output;
+
+  @Option(
+      name = "-parameter",
+      metaVar = "<parameter>",
+      usage = "The generator parameter, as it would be passed by protoc.")
+  String parameter = "";
+
+  @Option(
+      name = "-directDescriptorSet",
+      required = true,
+      metaVar = "<directDescriptorSet>",
+      usage = "The descriptor set of the files to generate code for.")
+  String directDescriptorSet;
+
+  @Option(
+      name = "-descriptorSet",
+      metaVar = "<descriptorSet>",
+      usage = "A descriptor set of the transitive dependencies. Can be repeated.")
+  List<String> descriptorSets = new ArrayList<>();
+
+  private GeneratorWorkerOptions() {}
+
+  public String getOutput() {
+    return output;
+  }
+
+  public String getParameter() {
+    return parameter;
+  }
+
+  public String getDirectDescriptorSet() {
+    return directDescriptorSet;
+  }
+
+  public List<String> getDescriptorSets() {
+    return descriptorSets;
+  }
+
+  static GeneratorWorkerOptions create(List<String> args) {
+    GeneratorWorkerOptions options = new GeneratorWorkerOptions();
+    try {
+      CmdLineParser parser = new CmdLineParser(options);
+      parser.parseArgument(args);
+    } catch (CmdLineException ex) {
+      throw new IllegalStateException("Failed to parse arguments", ex);
+    }
+    return options;
+  }
+}
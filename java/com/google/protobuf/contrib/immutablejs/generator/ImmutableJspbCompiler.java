@@ -13,57 +13,51 @@
  */
 package com.google.protobuf.contrib.immutablejs.generator;
 
-import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
-import com.google.common.collect.Maps;
-import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
 import com.google.protobuf.Descriptors.DescriptorValidationException;
 import com.google.protobuf.Descriptors.FileDescriptor;
-import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
 import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
-import java.io.IOException;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Stream;
 
-/** Protobuf compiler plugin that generates the Immutable JavaScript protobuf implementation. */
+/**
+ * Protobuf compiler plugin that generates the Immutable JavaScript protobuf implementation. It can
+ * also run as a persistent worker (see {@link GeneratorWorker}).
+ */
 public class ImmutableJspbCompiler {
 
-  public static void main(String[] args) throws IOException, DescriptorValidationException {
-    CodeGeneratorRequest request = CodeGeneratorRequest.parseFrom(System.in);
+  // Shared by all requests of a persistent worker.
+  private static final FileDescriptorPool fileDescriptorPool = new FileDescriptorPool();
+
+  public static void main(String[] args) throws Exception {
+    GeneratorWorker.run(args, ImmutableJspbCompiler::generate);
+  }
 
-    Map<String, FileDescriptor> fileDescriptors = Maps.newHashMap();
+  static CodeGeneratorResponse generate(CodeGeneratorRequest request, boolean renderInParallel)
+      throws DescriptorValidationException {
     CodeGeneratorResponse.Builder response = CodeGeneratorResponse.newBuilder();
     response.setSupportedFeatures(CodeGeneratorResponse.Feature.FEATURE_PROTO3_OPTIONAL_VALUE);
-    CodeWriter codeWriter = new CodeWriter(response);
-
-    List<String> fileToGenerateList = request.getFileToGenerateList();
-
-    for (FileDescriptorProto fileDescriptorProto : request.getProtoFileList()) {
-      // Look up the imported files from previous file descriptors.  It is sufficient to look at
-      // only previous file descriptors because CodeGeneratorRequest guarantees that the files
-      // are sorted in topological order.
-      FileDescriptor[] deps = new FileDescriptor[fileDescriptorProto.getDependencyCount()];
-      for (int i = 0; i < fileDescriptorProto.getDependencyCount(); i++) {
-        String name = fileDescriptorProto.getDependency(i);
-        FileDescriptor dependee = checkNotNull(fileDescriptors.get(name),
-            "Missing file descriptor for [%s]", name);
-        deps[i] = dependee;
-      }
 
-      // Build and cache the current file descriptor.
-      FileDescriptor fileDescriptor = FileDescriptor.buildFrom(fileDescriptorProto, deps);
-      fileDescriptors.put(fileDescriptor.getName(), fileDescriptor);
-
-      // We only generate output for protos that we see on the command line not their
-      // dependencies. This is necessary to make strict deps work.
-      if (!fileToGenerateList.contains(fileDescriptorProto.getName())) {
-        continue;
-      }
-
-      // Generate code based on the current file descriptor.
-      new TemplateRenderer(codeWriter, fileDescriptor).generateCode();
+    // Descriptors have to be built in topological order, but once built the files are rendered
+    // independently of each other. Each file gets its own writer and the writers are appended in
+    // their original order, so the response does not depend on the scheduling of the pool.
+    Stream<FileDescriptor> filesToGenerate =
+        fileDescriptorPool.buildFilesToGenerate(request).stream();
+    List<CodeWriter> codeWriters =
+        (renderInParallel ? filesToGenerate.parallel() : filesToGenerate)
+            .map(ImmutableJspbCompiler::generateCode)
+            .collect(toImmutableList());
+    for (CodeWriter codeWriter : codeWriters) {
+      codeWriter.writeTo(response);
     }
-    response.build().writeTo(System.out);
+    return response.build();
+  }
+
+  private static CodeWriter generateCode(FileDescriptor fileDescriptor) {
+    CodeWriter codeWriter = new CodeWriter();
+    new TemplateRenderer(codeWriter, fileDescriptor).generateCode();
+    return codeWriter;
   }
 }
@@ -17,17 +17,29 @@ package com.google.protobuf.contrib.immutablejs.generator;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.io.CharStreams;
 import com.google.escapevelocity.Template;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-/** Renders Apache Velocity templates using templates from the JAR resources. */
+/**
+ * Renders Apache Velocity templates using templates from the JAR resources.
+ *
+ * <p>Parsed templates and the sources of included templates are cached for the lifetime of the
+ * process and shared by all renderers.
+ */
 public final class VelocityRenderer {
 
+  // Both caches are keyed by the resource path of the template.
+  private static final Map<String, Template> parsedTemplates = new ConcurrentHashMap<>();
+  private static final Map<String, String> templateSources = new ConcurrentHashMap<>();
+
   private final Class<?> clz;
 
   public VelocityRenderer(Class<?> clz) {
@@ -35,15 +47,41 @@ public final class VelocityRenderer {
   }
 
   public String renderTemplate(String templateName, Map<String, ?> context) throws IOException {
-    Template template = Template.parseFrom(templateName, this::openResource);
-    return template.evaluate(context);
+    return getTemplate(templateName).evaluate(context);
+  }
+
+  Template getTemplate(String templateName) throws IOException {
+    String path = getResourcePath(templateName);
+    Template template = parsedTemplates.get(path);
+    if (template == null) {
+      template = Template.parseFrom(templateName, this::openResource);
+      // Another thread may have parsed it concurrently, both results are equivalent.
+      parsedTemplates.putIfAbsent(path, template);
+    }
+    return template;
   }
 
   private Reader openResource(String resourceName) throws IOException {
+    String path = getResourcePath(resourceName);
+    String source = templateSources.get(path);
+    if (source == null) {
+      source = readResource(resourceName);
+      templateSources.putIfAbsent(path, source);
+    }
+    return new StringReader(source);
+  }
+
+  private String readResource(String resourceName) throws IOException {
     InputStream in = clz.getResourceAsStream("templates/" + resourceName);
     if (in == null) {
       throw new FileNotFoundException("Could not find file: " + resourceName);
     }
-    return new InputStreamReader(in, UTF_8);
+    try (Reader reader = new InputStreamReader(in, UTF_8)) {
+      return CharStreams.toString(reader);
+    }
+  }
+
+  private String getResourcePath(String resourceName) {
+    return clz.getPackage().getName().replace('.', '/') + "/templates/" + resourceName;
   }
 }
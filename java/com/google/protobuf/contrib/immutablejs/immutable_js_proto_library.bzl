@@ -29,49 +29,61 @@ ImmutableJspbInfo = provider(
 )
 
 def _immutable_js_proto_library_aspect_impl(target, ctx):
-    srcs = target[ProtoInfo].direct_sources
-    transitive_srcs = target[ProtoInfo].transitive_sources
+    proto_info = target[ProtoInfo]
+    srcs = proto_info.direct_sources
     out_srcs = []
 
     if srcs:
         output = ctx.actions.declare_directory(ctx.label.name + "-improto")
+        generated_dir = ctx.actions.declare_directory(ctx.label.name + "-improto-gen")
         out_srcs = [output]
 
+        # The generator reads the descriptor sets of proto_library directly and runs as a
+        # persistent worker, so the JVM, parsed templates and shared descriptors are reused across
+        # targets.
+        args = ctx.actions.args()
+        args.add("-output", generated_dir.path)
+        args.add("-directDescriptorSet", proto_info.direct_descriptor_set)
+        args.add_all(proto_info.transitive_descriptor_sets, before_each = "-descriptorSet")
+        args.use_param_file("@%s", use_always = True)
+        args.set_param_file_format("multiline")
+
+        ctx.actions.run(
+            executable = ctx.executable._protoc_gen_immutable_js,
+            arguments = [args],
+            inputs = proto_info.transitive_descriptor_sets,
+            outputs = [generated_dir],
+            mnemonic = "ImmutableJsProtoGen",
+            execution_requirements = {
+                "requires-worker-protocol": "proto",
+                "supports-multiplex-workers": "1",
+                "supports-workers": "1",
+            },
+            progress_message = "Generating immutable_js_proto files",
+        )
+
         command = """
         set -e -o pipefail
 
         rm -rf {output}
         mkdir -p {output}
-        mkdir -p {genfiles}
-
-        {protoc} --plugin=protoc-gen-immutable_js_protobuf={protoc_plugin} \
-              --proto_path=. \
-              --proto_path={genfiles} \
-              --immutable_js_protobuf_out={output} \
-              {proto_sources}
+        cp -R {generated_dir}/. {output}
 
         js_files=$(find {output} -name '*.js')
         chmod -R 664 $js_files
         {clang_format} -style=Google -i $js_files
         """.format(
             clang_format = ctx.executable._clang_format.path,
+            generated_dir = generated_dir.path,
             output = output.path,
-            protoc = ctx.executable._protocol_compiler.path,
-            protoc_plugin = ctx.executable._protoc_gen_immutable_js.path,
-            genfiles = ctx.configuration.genfiles_dir.path,
-            proto_sources = " ".join([s.path for s in srcs]),
         )
 
         ctx.actions.run_shell(
             command = command,
-            inputs = transitive_srcs,
+            inputs = [generated_dir],
             outputs = [output],
-            tools = [
-                ctx.executable._protocol_compiler,
-                ctx.executable._protoc_gen_immutable_js,
-                ctx.executable._clang_format,
-            ],
-            progress_message = "Generating immutable_js_proto files",
+            tools = [ctx.executable._clang_format],
+            progress_message = "Formatting immutable_js_proto files",
         )
 
     transitive_runfiles = [dep[ImmutableJspbInfo]._private_.runfiles for dep in ctx.rule.attr.deps]
@@ -97,11 +109,6 @@ immutable_js_proto_library_aspect = aspect(
     implementation = _immutable_js_proto_library_aspect_impl,
     attr_aspects = ["deps", "exports"],
     attrs = dicts.add(js_attrs(), {
-        "_protocol_compiler": attr.label(
-            executable = True,
-            cfg = "exec",
-            default = Label("//third_party:protocol_compiler"),
-        ),
         "_protoc_gen_immutable_js": attr.label(
             executable = True,
             cfg = "exec",
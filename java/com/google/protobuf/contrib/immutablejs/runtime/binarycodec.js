@@ -0,0 +1,880 @@
+// Copyright 2022 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+/**
+ * @fileoverview Converts between the JSPB array representation of a message
+ * and the protobuf binary wire format.
+ *
+ * The codec is table driven: it interprets the message descriptor and does not
+ * need any generated per-field code.
+ *
+ * User code should never call any of the methods in this class, this should
+ * only be called from generated proto code.
+ */
+goog.module('proto.im.internal.BinaryCodec');
+
+const Long = goog.require('goog.math.Long');
+const base64 = goog.require('goog.crypt.base64');
+const {Descriptor, Field, FieldType} = goog.require('proto.im.descriptor');
+const {FIXED_GROUP_FLAG} = goog.require('proto.im.defines');
+
+/** @const {number} */
+const WIRETYPE_VARINT = 0;
+/** @const {number} */
+const WIRETYPE_FIXED64 = 1;
+/** @const {number} */
+const WIRETYPE_LENGTH_DELIMITED = 2;
+/** @const {number} */
+const WIRETYPE_START_GROUP = 3;
+/** @const {number} */
+const WIRETYPE_END_GROUP = 4;
+/** @const {number} */
+const WIRETYPE_FIXED32 = 5;
+
+/**
+ * Mirrors the default pivot of the generator (TemplateMessageDescriptor), so
+ * that parsed messages have the same layout as messages built in JavaScript.
+ * @const {number}
+ */
+const DEFAULT_PIVOT = 500;
+
+/** @const {number} */
+const TWO_TO_32 = 0x100000000;
+/** @const {number} */
+const TWO_TO_63 = TWO_TO_32 * 0x80000000;
+/** @const {number} */
+const TWO_TO_64 = TWO_TO_32 * TWO_TO_32;
+
+/** @const {!DataView} */
+const scratch = new DataView(new ArrayBuffer(8));
+
+/**
+ * Pivots of the message descriptors seen so far.
+ * @const {!WeakMap<!Descriptor, number>}
+ */
+const pivots = new WeakMap();
+
+/** @param {string} message */
+function fail(message) {
+  if (goog.DEBUG) {
+    throw new Error(message);
+  } else {
+    throw new Error();
+  }
+}
+
+/**
+ * @param {!FieldType} fieldType
+ * @return {number}
+ */
+function wireTypeOf(fieldType) {
+  switch (fieldType) {
+    case FieldType.DOUBLE:
+    case FieldType.FIXED64:
+    case FieldType.SFIXED64:
+      return WIRETYPE_FIXED64;
+    case FieldType.FLOAT:
+    case FieldType.FIXED32:
+    case FieldType.SFIXED32:
+      return WIRETYPE_FIXED32;
+    case FieldType.BYTES:
+    case FieldType.STRING:
+    case FieldType.MESSAGE:
+      return WIRETYPE_LENGTH_DELIMITED;
+    case FieldType.GROUP:
+      return WIRETYPE_START_GROUP;
+    default:
+      return WIRETYPE_VARINT;
+  }
+}
+
+/**
+ * @param {!FieldType} fieldType
+ * @return {boolean}
+ */
+function isPackable(fieldType) {
+  return wireTypeOf(fieldType) !== WIRETYPE_LENGTH_DELIMITED &&
+      fieldType !== FieldType.GROUP;
+}
+
+/**
+ * @param {!Descriptor} descriptor
+ * @return {number} The JSPB array index of field number zero.
+ */
+function messageOffsetOf(descriptor) {
+  return descriptor.messageId() ? 0 : -1;
+}
+
+/**
+ * Returns the field number from which on fields of a parsed message are placed
+ * in the sparse object.
+ * @param {!Descriptor} descriptor
+ * @return {number}
+ */
+function pivotOf(descriptor) {
+  let pivot = pivots.get(descriptor);
+  if (pivot === undefined) {
+    let maxField = 0;
+    descriptor.forEachField((field) => {
+      if (!field.extension) {
+        maxField = Math.max(maxField, field.fieldNumber);
+      }
+    });
+    pivot = descriptor.isExtendable() || maxField >= DEFAULT_PIVOT ?
+        Math.min(maxField + 1, DEFAULT_PIVOT) :
+        Number.MAX_VALUE;
+    pivots.set(descriptor, pivot);
+  }
+  return pivot;
+}
+
+/**
+ * @param {!Array<*>} data
+ * @return {?Object<number, *>} The sparse object of the message, if any.
+ */
+function sparseObjectOf(data) {
+  const last = data[data.length - 1];
+  if (last && typeof last === 'object' && !Array.isArray(last) &&
+      last.constructor === Object) {
+    return /** @type {!Object<number, *>} */ (last);
+  }
+  return null;
+}
+
+/**
+ * Buffers the encoded bytes of a message.
+ *
+ * Length prefixes of submessages are only known once the submessage has been
+ * written, so the bytes are kept in blocks and the prefixes are filled into
+ * blocks reserved upfront.
+ * @final
+ */
+class Writer {
+  constructor() {
+    /** @private {!Array<number>} */
+    this.bytes_ = [];
+    /** @private @const {!Array<!Array<number>>} */
+    this.blocks_ = [];
+    /** @private {number} */
+    this.blocksLength_ = 0;
+  }
+
+  /**
+   * @param {number} fieldNumber
+   * @param {number} wireType
+   */
+  writeTag(fieldNumber, wireType) {
+    this.writeVarint32((fieldNumber << 3 | wireType) >>> 0);
+  }
+
+  /** @param {number} value An unsigned 32 bit value. */
+  writeVarint32(value) {
+    while (value > 0x7f) {
+      this.bytes_.push((value & 0x7f) | 0x80);
+      value = value >>> 7;
+    }
+    this.bytes_.push(value);
+  }
+
+  /**
+   * @param {number} lowBits
+   * @param {number} highBits
+   */
+  writeVarint64(lowBits, highBits) {
+    lowBits = lowBits >>> 0;
+    highBits = highBits >>> 0;
+    while (highBits > 0 || lowBits > 0x7f) {
+      this.bytes_.push((lowBits & 0x7f) | 0x80);
+      lowBits = ((lowBits >>> 7) | (highBits << 25)) >>> 0;
+      highBits = highBits >>> 7;
+    }
+    this.bytes_.push(lowBits);
+  }
+
+  /** @param {number} value A signed 32 bit value. */
+  writeInt32(value) {
+    if (value >= 0) {
+      this.writeVarint32(value);
+    } else {
+      // Negative values are sign extended to 64 bits.
+      this.writeVarint64(value, -1);
+    }
+  }
+
+  /** @param {number} value */
+  writeFixed32(value) {
+    this.bytes_.push(
+        value & 0xff, (value >>> 8) & 0xff, (value >>> 16) & 0xff,
+        (value >>> 24) & 0xff);
+  }
+
+  /** @param {number} value */
+  writeFloat(value) {
+    scratch.setFloat32(0, value, true);
+    this.writeFixed32(scratch.getUint32(0, true));
+  }
+
+  /** @param {number} value */
+  writeDouble(value) {
+    scratch.setFloat64(0, value, true);
+    this.writeFixed32(scratch.getUint32(0, true));
+    this.writeFixed32(scratch.getUint32(4, true));
+  }
+
+  /** @param {!Uint8Array} bytes */
+  writeBytes(bytes) {
+    this.writeVarint32(bytes.length);
+    for (let i = 0; i < bytes.length; i++) {
+      this.bytes_.push(bytes[i]);
+    }
+  }
+
+  /** @param {string} value */
+  writeString(value) {
+    const utf8 = [];
+    for (let i = 0; i < value.length; i++) {
+      let c = value.charCodeAt(i);
+      if (c < 0x80) {
+        utf8.push(c);
+      } else if (c < 0x800) {
+        utf8.push(0xc0 | (c >> 6), 0x80 | (c & 0x3f));
+      } else {
+        if (c >= 0xd800 && c <= 0xdbff && i + 1 < value.length) {
+          const low = value.charCodeAt(i + 1);
+          if (low >= 0xdc00 && low <= 0xdfff) {
+            c = 0x10000 + ((c - 0xd800) << 10) + (low - 0xdc00);
+            i++;
+            utf8.push(
+                0xf0 | (c >> 18), 0x80 | ((c >> 12) & 0x3f),
+                0x80 | ((c >> 6) & 0x3f), 0x80 | (c & 0x3f));
+            continue;
+          }
+        }
+        if (c >= 0xd800 && c <= 0xdfff) {
+          // Unpaired surrogates can't be encoded and are replaced.
+          c = 0xfffd;
+        }
+        utf8.push(
+            0xe0 | (c >> 12), 0x80 | ((c >> 6) & 0x3f), 0x80 | (c & 0x3f));
+      }
+    }
+    this.writeVarint32(utf8.length);
+    for (let i = 0; i < utf8.length; i++) {
+      this.bytes_.push(utf8[i]);
+    }
+  }
+
+  /**
+   * Starts a length delimited value. Everything written until the matching
+   * call to endDelimited is part of the value.
+   * @return {!Array<number>} The block to write the length prefix into.
+   */
+  beginDelimited() {
+    this.flush_();
+    const lengthBlock = [];
+    this.blocks_.push(lengthBlock);
+    // The current length is remembered in the block until the length is known.
+    lengthBlock.push(this.blocksLength_);
+    return lengthBlock;
+  }
+
+  /** @param {!Array<number>} lengthBlock */
+  endDelimited(lengthBlock) {
+    this.flush_();
+    const length = this.blocksLength_ - lengthBlock.pop();
+    const bytes = this.bytes_;
+    this.bytes_ = lengthBlock;
+    this.writeVarint32(length);
+    this.bytes_ = bytes;
+    this.blocksLength_ += lengthBlock.length;
+  }
+
+  /** @private */
+  flush_() {
+    if (this.bytes_.length > 0) {
+      this.blocks_.push(this.bytes_);
+      this.blocksLength_ += this.bytes_.length;
+      this.bytes_ = [];
+    }
+  }
+
+  /** @return {!Uint8Array} */
+  finish() {
+    this.flush_();
+    const result = new Uint8Array(this.blocksLength_);
+    let offset = 0;
+    for (const block of this.blocks_) {
+      result.set(block, offset);
+      offset += block.length;
+    }
+    return result;
+  }
+}
+
+/**
+ * Reads the binary wire format.
+ * @final
+ */
+class Reader {
+  /** @param {!Uint8Array} bytes */
+  constructor(bytes) {
+    /** @private @const {!Uint8Array} */
+    this.bytes_ = bytes;
+    /** @type {number} */
+    this.position = 0;
+    /** @type {number} */
+    this.lowBits = 0;
+    /** @type {number} */
+    this.highBits = 0;
+  }
+
+  /**
+   * @param {number} length
+   * @return {number} The position after the given number of bytes.
+   */
+  checkRemaining(length) {
+    const end = this.position + length;
+    if (length < 0 || end > this.bytes_.length) {
+      fail('Truncated message.');
+    }
+    return end;
+  }
+
+  /**
+   * @return {number}
+   * @private
+   */
+  readByte_() {
+    if (this.position >= this.bytes_.length) {
+      fail('Truncated message.');
+    }
+    return this.bytes_[this.position++];
+  }
+
+  /**
+   * Reads a varint into lowBits and highBits.
+   */
+  readVarint64() {
+    let lowBits = 0;
+    let highBits = 0;
+    let b;
+    for (let shift = 0; shift < 28; shift += 7) {
+      b = this.readByte_();
+      lowBits |= (b & 0x7f) << shift;
+      if (b < 0x80) {
+        this.lowBits = lowBits >>> 0;
+        this.highBits = 0;
+        return;
+      }
+    }
+    // The fifth byte is shared between the low and the high bits.
+    b = this.readByte_();
+    lowBits |= (b & 0x7f) << 28;
+    highBits = (b & 0x7f) >> 4;
+    for (let shift = 3; b >= 0x80; shift += 7) {
+      if (shift > 31) {
+        fail('Malformed varint.');
+      }
+      b = this.readByte_();
+      highBits |= (b & 0x7f) << shift;
+    }
+    this.lowBits = lowBits >>> 0;
+    this.highBits = highBits >>> 0;
+  }
+
+  /** @return {number} The low 32 bits of a varint, unsigned. */
+  readVarint32() {
+    this.readVarint64();
+    return this.lowBits;
+  }
+
+  /** @return {number} */
+  readFixed32() {
+    this.checkRemaining(4);
+    const bytes = this.bytes_;
+    const position = this.position;
+    this.position += 4;
+    return (bytes[position] | (bytes[position + 1] << 8) |
+            (bytes[position + 2] << 16) | (bytes[position + 3] << 24)) >>>
+        0;
+  }
+
+  /** Reads a fixed 64 bit value into lowBits and highBits. */
+  readFixed64() {
+    this.lowBits = this.readFixed32();
+    this.highBits = this.readFixed32();
+  }
+
+  /** @return {number} */
+  readFloat() {
+    scratch.setUint32(0, this.readFixed32(), true);
+    return scratch.getFloat32(0, true);
+  }
+
+  /** @return {number} */
+  readDouble() {
+    scratch.setUint32(0, this.readFixed32(), true);
+    scratch.setUint32(4, this.readFixed32(), true);
+    return scratch.getFloat64(0, true);
+  }
+
+  /** @return {!Uint8Array} */
+  readBytes() {
+    const length = this.readVarint32();
+    const end = this.checkRemaining(length);
+    const bytes = this.bytes_.subarray(this.position, end);
+    this.position = end;
+    return bytes;
+  }
+
+  /** @return {string} */
+  readString() {
+    const bytes = this.readBytes();
+    let result = '';
+    let i = 0;
+    while (i < bytes.length) {
+      const b = bytes[i++];
+      let c;
+      if (b < 0x80) {
+        c = b;
+      } else if (b < 0xe0) {
+        c = ((b & 0x1f) << 6) | (bytes[i++] & 0x3f);
+      } else if (b < 0xf0) {
+        c = ((b & 0x0f) << 12) | ((bytes[i++] & 0x3f) << 6) |
+            (bytes[i++] & 0x3f);
+      } else {
+        c = ((b & 0x07) << 18) | ((bytes[i++] & 0x3f) << 12) |
+            ((bytes[i++] & 0x3f) << 6) | (bytes[i++] & 0x3f);
+        c -= 0x10000;
+        result += String.fromCharCode(0xd800 + (c >> 10));
+        c = 0xdc00 + (c & 0x3ff);
+      }
+      result += String.fromCharCode(c);
+    }
+    return result;
+  }
+
+  /**
+   * @param {number} end The position at which the input ends.
+   * @return {number} The next tag, or zero at the end of the input.
+   */
+  readTag(end) {
+    if (this.position >= end) {
+      return 0;
+    }
+    const tag = this.readVarint32();
+    if (tag >>> 3 === 0) {
+      fail('Invalid tag.');
+    }
+    return tag;
+  }
+
+  /** @param {number} tag */
+  skipField(tag) {
+    switch (tag & 0x7) {
+      case WIRETYPE_VARINT:
+        this.readVarint64();
+        break;
+      case WIRETYPE_FIXED64:
+        this.position = this.checkRemaining(8);
+        break;
+      case WIRETYPE_LENGTH_DELIMITED:
+        this.position = this.checkRemaining(this.readVarint32());
+        break;
+      case WIRETYPE_START_GROUP: {
+        const endTag = (tag & ~0x7 | WIRETYPE_END_GROUP) >>> 0;
+        let nestedTag;
+        while ((nestedTag = this.readTag(this.bytes_.length)) !== endTag) {
+          if (nestedTag === 0) {
+            fail('Unterminated group.');
+          }
+          this.skipField(nestedTag);
+        }
+        break;
+      }
+      case WIRETYPE_END_GROUP:
+        fail('Unexpected end group tag.');
+        break;
+      case WIRETYPE_FIXED32:
+        this.position = this.checkRemaining(4);
+        break;
+      default:
+        fail('Unexpected wire type.');
+    }
+  }
+}
+
+/**
+ * @param {*} value
+ * @return {!Long}
+ */
+function toLong(value) {
+  if (typeof value !== 'number') {
+    return Long.fromString(String(value));
+  }
+  // Unsigned values from 2^63 on wrap around to the same bits as a signed
+  // value; the subtraction is exact for any double in that range.
+  return Long.fromNumber(value >= TWO_TO_63 ? value - TWO_TO_64 : value);
+}
+
+/**
+ * @param {!Writer} writer
+ * @param {!Field} field
+ * @param {*} value The JSPB representation of the value.
+ */
+function writeValue(writer, field, value) {
+  switch (field.fieldType) {
+    case FieldType.DOUBLE:
+      writer.writeDouble(+value);
+      break;
+    case FieldType.FLOAT:
+      writer.writeFloat(+value);
+      break;
+    case FieldType.FIXED32:
+    case FieldType.SFIXED32:
+      writer.writeFixed32(+value);
+      break;
+    case FieldType.INT32:
+    case FieldType.ENUM:
+      writer.writeInt32(+value | 0);
+      break;
+    case FieldType.UINT32:
+      writer.writeVarint32(+value >>> 0);
+      break;
+    case FieldType.SINT32: {
+      const int = +value | 0;
+      writer.writeVarint32(((int << 1) ^ (int >> 31)) >>> 0);
+      break;
+    }
+    case FieldType.INT64:
+    case FieldType.UINT64: {
+      const long = toLong(value);
+      writer.writeVarint64(long.getLowBits(), long.getHighBits());
+      break;
+    }
+    case FieldType.SINT64: {
+      const long = toLong(value);
+      const lowBits = long.getLowBits();
+      const highBits = long.getHighBits();
+      const sign = highBits >> 31;
+      writer.writeVarint64(
+          (lowBits << 1) ^ sign, ((highBits << 1) | (lowBits >>> 31)) ^ sign);
+      break;
+    }
+    case FieldType.FIXED64:
+    case FieldType.SFIXED64: {
+      const long = toLong(value);
+      writer.writeFixed32(long.getLowBits());
+      writer.writeFixed32(long.getHighBits());
+      break;
+    }
+    case FieldType.BOOL:
+      writer.writeVarint32(value ? 1 : 0);
+      break;
+    case FieldType.STRING:
+      writer.writeString(String(value));
+      break;
+    case FieldType.BYTES:
+      writer.writeBytes(
+          value instanceof Uint8Array ?
+              value :
+              base64.decodeStringToUint8Array(String(value)));
+      break;
+    case FieldType.MESSAGE: {
+      const lengthBlock = writer.beginDelimited();
+      writeMessage(
+          writer, /** @type {!Array<*>} */ (value),
+          field.submessageDescriptorProvider(), /* isGroup= */ false);
+      writer.endDelimited(lengthBlock);
+      break;
+    }
+    case FieldType.GROUP:
+      writeMessage(
+          writer, /** @type {!Array<*>} */ (value),
+          field.submessageDescriptorProvider(), /* isGroup= */ true);
+      writer.writeTag(field.fieldNumber, WIRETYPE_END_GROUP);
+      break;
+  }
+}
+
+/**
+ * @param {!Writer} writer
+ * @param {!Array<*>} data
+ * @param {!Descriptor} descriptor
+ * @param {boolean} isGroup Whether the message is a group type.
+ */
+function writeMessage(writer, data, descriptor, isGroup) {
+  // Must match the layout readMessage produces.
+  const messageOffset = isGroup ? -1 : messageOffsetOf(descriptor);
+  const sparseObject = sparseObjectOf(data);
+  const sparseIndex = sparseObject ? data.length - 1 : data.length;
+  const fields = descriptor.fields();
+  // Integer keys are enumerated in ascending order, which gives the canonical
+  // field order on the wire.
+  for (const key in fields) {
+    const field = fields[+key];
+    const fieldNumber = field.fieldNumber;
+    const index = fieldNumber + messageOffset;
+    const value = index < sparseIndex ?
+        data[index] :
+        sparseObject ? sparseObject[fieldNumber] : undefined;
+    if (value == null) {
+      continue;
+    }
+
+    const wireType = wireTypeOf(field.fieldType);
+    if (!field.repeated) {
+      writer.writeTag(fieldNumber, wireType);
+      writeValue(writer, field, value);
+      continue;
+    }
+
+    const values = /** @type {!Array<*>} */ (value);
+    if (values.length === 0) {
+      continue;
+    }
+    if (!field.unpacked && isPackable(field.fieldType)) {
+      writer.writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+      const lengthBlock = writer.beginDelimited();
+      for (let i = 0; i < values.length; i++) {
+        writeValue(writer, field, values[i]);
+      }
+      writer.endDelimited(lengthBlock);
+    } else {
+      for (let i = 0; i < values.length; i++) {
+        writer.writeTag(fieldNumber, wireType);
+        writeValue(writer, field, values[i]);
+      }
+    }
+  }
+}
+
+/**
+ * @param {!Reader} reader
+ * @param {!Field} field
+ * @param {*} existingValue The value to merge a submessage into.
+ * @param {number} end The position at which the enclosing message ends.
+ * @return {*} The JSPB representation of the value.
+ */
+function readValue(reader, field, existingValue, end) {
+  switch (field.fieldType) {
+    case FieldType.DOUBLE:
+      return toJspbDouble(reader.readDouble());
+    case FieldType.FLOAT:
+      return toJspbDouble(reader.readFloat());
+    case FieldType.FIXED32:
+      return reader.readFixed32();
+    case FieldType.SFIXED32:
+      return reader.readFixed32() | 0;
+    case FieldType.INT32:
+    case FieldType.ENUM:
+      return reader.readVarint32() | 0;
+    case FieldType.UINT32:
+      return reader.readVarint32();
+    case FieldType.SINT32: {
+      const value = reader.readVarint32();
+      return (value >>> 1) ^ -(value & 1);
+    }
+    case FieldType.INT64:
+    case FieldType.UINT64:
+      reader.readVarint64();
+      return toJspbLong(field, reader.lowBits, reader.highBits);
+    case FieldType.SINT64: {
+      reader.readVarint64();
+      const lowBits = reader.lowBits;
+      const highBits = reader.highBits;
+      const sign = -(lowBits & 1);
+      return toJspbLong(
+          field, ((lowBits >>> 1) | (highBits << 31)) ^ sign,
+          (highBits >>> 1) ^ sign);
+    }
+    case FieldType.FIXED64:
+    case FieldType.SFIXED64:
+      reader.readFixed64();
+      return toJspbLong(field, reader.lowBits, reader.highBits);
+    case FieldType.BOOL:
+      reader.readVarint64();
+      return reader.lowBits || reader.highBits ? 1 : 0;
+    case FieldType.STRING:
+      return reader.readString();
+    case FieldType.BYTES:
+      return base64.encodeByteArray(reader.readBytes());
+    case FieldType.MESSAGE: {
+      const messageEnd = reader.checkRemaining(reader.readVarint32());
+      const data = Array.isArray(existingValue) ? existingValue : [];
+      readMessage(
+          reader, messageEnd, data, field.submessageDescriptorProvider(),
+          /* isGroup= */ false, /* endGroupTag= */ 0);
+      if (reader.position !== messageEnd) {
+        fail('Malformed submessage.');
+      }
+      return data;
+    }
+    case FieldType.GROUP: {
+      const data = Array.isArray(existingValue) ? existingValue : [];
+      readMessage(
+          reader, end, data, field.submessageDescriptorProvider(),
+          /* isGroup= */ true,
+          (field.fieldNumber << 3 | WIRETYPE_END_GROUP) >>> 0);
+      return data;
+    }
+  }
+  return undefined;
+}
+
+/**
+ * @param {number} value
+ * @return {number|string}
+ */
+function toJspbDouble(value) {
+  return isFinite(value) ? value : String(value);
+}
+
+/**
+ * @param {!Field} field
+ * @param {number} lowBits
+ * @param {number} highBits
+ * @return {number|string}
+ */
+function toJspbLong(field, lowBits, highBits) {
+  const unsigned = field.fieldType === FieldType.UINT64 ||
+      field.fieldType === FieldType.FIXED64;
+  if (!field.jspbInt64String) {
+    return unsigned ? (highBits >>> 0) * TWO_TO_32 + (lowBits >>> 0) :
+                      Long.fromBits(lowBits, highBits).toNumber();
+  }
+  const long = Long.fromBits(lowBits, highBits);
+  return unsigned ? long.toUnsignedString() : long.toString();
+}
+
+/**
+ * Reads the fields of a message up to the given end position, or up to the end
+ * group tag, and merges them into data.
+ * @param {!Reader} reader
+ * @param {number} end
+ * @param {!Array<*>} data
+ * @param {!Descriptor} descriptor
+ * @param {boolean} isGroup Whether the message is a group type.
+ * @param {number} endGroupTag The tag that ends the group, or zero if the
+ *     message is not read from a group field.
+ */
+function readMessage(reader, end, data, descriptor, isGroup, endGroupTag) {
+  const messageOffset = isGroup ? -1 : messageOffsetOf(descriptor);
+  const pivot = isGroup ? Number.MAX_VALUE : pivotOf(descriptor);
+  const messageId = descriptor.messageId();
+  if (messageId && !isGroup && !data[0]) {
+    data[0] = messageId;
+  }
+  // The sparse object is detached while reading so that array fields can be
+  // appended freely, and put back in place afterwards.
+  let sparseObject = sparseObjectOf(data);
+  if (sparseObject) {
+    data.pop();
+  }
+
+  let tag;
+  while ((tag = reader.readTag(end)) !== 0 && tag !== endGroupTag) {
+    const fieldNumber = tag >>> 3;
+    const wireType = tag & 0x7;
+    const field = descriptor.findFieldByNumber(fieldNumber);
+    if (!field) {
+      reader.skipField(tag);
+      continue;
+    }
+
+    let storage;
+    let key;
+    if (fieldNumber < pivot) {
+      storage = data;
+      key = fieldNumber + messageOffset;
+    } else {
+      storage = sparseObject || (sparseObject = {});
+      key = fieldNumber;
+    }
+
+    const expectedWireType = wireTypeOf(field.fieldType);
+    if (!field.repeated) {
+      if (wireType !== expectedWireType) {
+        reader.skipField(tag);
+        continue;
+      }
+      storage[key] = readValue(reader, field, storage[key], end);
+      continue;
+    }
+
+    const values =
+        /** @type {!Array<*>} */ (storage[key] || (storage[key] = []));
+    if (wireType === WIRETYPE_LENGTH_DELIMITED &&
+        isPackable(field.fieldType)) {
+      // Packed and unpacked encodings are accepted for any packable field.
+      const packedEnd = reader.checkRemaining(reader.readVarint32());
+      while (reader.position < packedEnd) {
+        values.push(readValue(reader, field, undefined, packedEnd));
+      }
+      if (reader.position !== packedEnd) {
+        fail('Malformed packed field.');
+      }
+    } else if (wireType === expectedWireType) {
+      values.push(readValue(reader, field, undefined, end));
+    } else {
+      reader.skipField(tag);
+    }
+  }
+
+  if (tag !== endGroupTag) {
+    fail('Unterminated group.');
+  }
+  if (isGroup) {
+    sparseObject = sparseObject || {};
+    sparseObject[FIXED_GROUP_FLAG] = 1;
+    data.push(sparseObject);
+  } else if (sparseObject) {
+    data[pivot + messageOffset] = sparseObject;
+  }
+}
+
+/**
+ * Converts messages between their JSPB array representation and the protobuf
+ * binary wire format.
+ * @final
+ */
+class BinaryCodec {
+  /**
+   * @param {!Array<*>} data The message in JSPB wire format.
+   * @param {!Descriptor} descriptor The descriptor of the message.
+   * @param {boolean=} isGroup Whether the message is a group type.
+   * @return {!Uint8Array} The message in binary wire format.
+   */
+  static serialize(data, descriptor, isGroup = false) {
+    const writer = new Writer();
+    writeMessage(writer, data, descriptor, isGroup);
+    return writer.finish();
+  }
+
+  /**
+   * @param {!Uint8Array} bytes The message in binary wire format.
+   * @param {!Descriptor} descriptor The descriptor of the message.
+   * @param {boolean=} isGroup Whether the message is a group type.
+   * @return {!Array<*>} The message in JSPB wire format.
+   */
+  static parse(bytes, descriptor, isGroup = false) {
+    const data = [];
+    readMessage(
+        new Reader(bytes), bytes.length, data, descriptor, isGroup,
+        /* endGroupTag= */ 0);
+    return data;
+  }
+}
+
+exports = BinaryCodec;
@@ -62,6 +62,21 @@ class ByteString {
     return new ByteString(new Int8Array(bytes), /* base 64 */ null);
   }
 
+  /**
+   * Constructs a ByteString that shares the given bytes instead of copying
+   * them.
+   *
+   * The ownership of the bytes is transferred to the ByteString, the caller
+   * must not modify the array or its underlying buffer afterwards.
+   * @param {!Uint8Array|!Int8Array} bytes
+   * @returns {!ByteString}
+   */
+  static wrapUnsafe(bytes) {
+    return new ByteString(
+        new Int8Array(bytes.buffer, bytes.byteOffset, bytes.length),
+        /* base 64 */ null);
+  }
+
   /**
    * Returns this ByteString as a Int8 byte array.
    * @return {!Int8Array}
@@ -78,6 +93,18 @@ class ByteString {
     return new Uint8Array(this.ensureBytes_());
   }
 
+  /**
+   * Returns a Uint8 view of the bytes of this ByteString without copying them.
+   *
+   * The returned array shares its buffer with this ByteString and must not be
+   * modified.
+   * @return {!Uint8Array}
+   */
+  toUint8ArrayUnsafe() {
+    const bytes = this.ensureBytes_();
+    return new Uint8Array(bytes.buffer, bytes.byteOffset, bytes.length);
+  }
+
 
   /**
    * Returns the number of bytes in the string.
@@ -167,8 +194,10 @@ class ByteString {
    */
   ensureBase64String_() {
     if (this.base64_ == null) {
+      // Wrapped bytes might only be a view on part of their buffer.
+      const bytes = /** @type {!Int8Array} */ (this.bytes_);
       this.base64_ = base64.encodeByteArray(
-          new Uint8Array(/** @type {!Int8Array} */ (this.bytes_).buffer));
+          new Uint8Array(bytes.buffer, bytes.byteOffset, bytes.length));
     }
 
     return /** @type {string} */ (this.base64_);
@@ -19,6 +19,7 @@ class Descriptor {
   /**
    * @return {!Object<number, !Field>} An object of all Fields keyed on the
    *     field number. This will include all known extension fields as well.
+   *     The object may be shared and must not be modified.
    */
   fields() {}
 
@@ -30,6 +31,13 @@ class Descriptor {
    */
   forEachField(callback) {}
 
+  /**
+   * @param {number} fieldNumber
+   * @return {?Field} The field with the given number, including known extension
+   *     fields, or null if there is no such field.
+   */
+  findFieldByNumber(fieldNumber) {}
+
   /** @return {boolean} Whether the message has a defined extensions range. */
   isExtendable() {}
 
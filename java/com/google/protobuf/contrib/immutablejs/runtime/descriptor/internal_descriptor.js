@@ -27,12 +27,14 @@ class DescriptorImpl {
    * @param {function():!Array<!ExtensionFieldInfo>=} extensionsProvider
    * @param {string=} messageId
    * @param {boolean=} isMessageSet
+   * @param {!ExtensionRegistry=} extensionRegistry The registry the extensions
+   *     are provided from, if any.
    * @private
    */
   constructor(
       fullEncodedDescriptor, submessageDescriptorProviders = undefined,
       extensionsProvider = undefined, messageId = undefined,
-      isMessageSet = false) {
+      isMessageSet = false, extensionRegistry = undefined) {
     /** @private @const {string} */
     this.fullEncodedDescriptor_ = fullEncodedDescriptor;
 
@@ -46,11 +48,50 @@ class DescriptorImpl {
     /** @private @const {function():!Array<!ExtensionFieldInfo>|undefined} */
     this.extensionsProvider_ = extensionsProvider;
 
+    /**
+     * Lets single field numbers be looked up without unpacking the registry.
+     * @private @const {?ExtensionRegistry}
+     */
+    this.extensionRegistry_ = extensionRegistry || null;
+
     /** @private @const {?string} */
     this.messageId_ = messageId != null ? messageId : null;
 
     /** @private @const {boolean} */
     this.isMessageSet_ = isMessageSet;
+
+    /**
+     * The decoded fields declared by the message, excluding extensions, in
+     * field number order. Decoded on first use.
+     * @private {?Array<!Field>}
+     */
+    this.declaredFields_ = null;
+
+    /**
+     * The same fields as `declaredFields_`, keyed on the field number.
+     * @private {?Object<number, !Field>}
+     */
+    this.declaredFieldsByNumber_ = null;
+
+    /**
+     * The decoded extension fields keyed on the field number. Decoded on first
+     * use, and again whenever the number of extensions changed.
+     * @private {?Object<number, !Field>}
+     */
+    this.extensionFieldsByNumber_ = null;
+
+    /**
+     * The number of extensions `extensionFieldsByNumber_` was decoded from.
+     * @private {number}
+     */
+    this.extensionCount_ = 0;
+
+    /**
+     * The declared and the extension fields keyed on the field number, reset
+     * when the extension fields are decoded again.
+     * @private {?Object<number, !Field>}
+     */
+    this.allFieldsByNumber_ = null;
   }
 
   /**
@@ -69,7 +110,8 @@ class DescriptorImpl {
     }
     return new DescriptorImpl(
         args.encodedDescriptor, args.submessageDescriptorProviders,
-        args.extensionsProvider, args.messageId, args.isMessageSet);
+        args.extensionsProvider, args.messageId, args.isMessageSet,
+        args.extensionRegistry);
   }
 
   /**
@@ -85,11 +127,17 @@ class DescriptorImpl {
    * @override
    */
   fields() {
-    const fields = Object.create(null);
-    this.forEachField((field) => {
-      fields[field.fieldNumber] = field;
-    });
-    return fields;
+    const declaredFieldsByNumber = this.getDeclaredFieldsByNumber_();
+    if (!this.extensionsProvider_) {
+      return declaredFieldsByNumber;
+    }
+    const extensionFieldsByNumber = this.getExtensionFieldsByNumber_();
+    if (!this.allFieldsByNumber_) {
+      this.allFieldsByNumber_ = Object.freeze(Object.assign(
+          Object.create(null), declaredFieldsByNumber,
+          extensionFieldsByNumber));
+    }
+    return this.allFieldsByNumber_;
   }
 
   /**
@@ -97,6 +145,67 @@ class DescriptorImpl {
    * @override
    */
   forEachField(callback) {
+    const declaredFields = this.getDeclaredFields_();
+    for (let i = 0; i < declaredFields.length; i++) {
+      callback(declaredFields[i]);
+    }
+    this.forEachExtensionField_(callback);
+  }
+
+  /**
+   * @param {number} fieldNumber
+   * @return {?Field}
+   * @override
+   */
+  findFieldByNumber(fieldNumber) {
+    const field = this.getDeclaredFieldsByNumber_()[fieldNumber];
+    if (field || !this.extensionsProvider_) {
+      return field || null;
+    }
+    // This is called for every tag while parsing, so extensions and unknown
+    // fields are looked up in the registry without unpacking it.
+    if (this.extensionRegistry_) {
+      if (this.extensionRegistry_[fieldNumber] == null) {
+        return null;
+      }
+      const extensionField = this.extensionFieldsByNumber_ &&
+          this.extensionFieldsByNumber_[fieldNumber];
+      if (extensionField) {
+        return extensionField;
+      }
+    }
+    return this.getExtensionFieldsByNumber_()[fieldNumber] || null;
+  }
+
+  /**
+   * @return {!Array<!Field>}
+   * @private
+   */
+  getDeclaredFields_() {
+    if (!this.declaredFields_) {
+      this.decodeDeclaredFields_();
+    }
+    return /** @type {!Array<!Field>} */ (this.declaredFields_);
+  }
+
+  /**
+   * @return {!Object<number, !Field>}
+   * @private
+   */
+  getDeclaredFieldsByNumber_() {
+    if (!this.declaredFieldsByNumber_) {
+      this.decodeDeclaredFields_();
+    }
+    return /** @type {!Object<number, !Field>} */ (
+        this.declaredFieldsByNumber_);
+  }
+
+  /**
+   * Decodes the declared fields once. The results are frozen as they are
+   * shared by all callers.
+   * @private
+   */
+  decodeDeclaredFields_() {
     const fieldDescriptorReader = new Base92Reader(
         this.fullEncodedDescriptor_, /* offset= */ 0,
         /* limit= */ this.fieldDescriptorEnd_);
@@ -109,29 +218,66 @@ class DescriptorImpl {
         return undefined;
       }
     };
+    const fields = [];
+    const fieldsByNumber = Object.create(null);
     while (!isNaN(fieldDescriptorReader.peekValue())) {
       lastFieldNumber =
           getNextFieldNumber(fieldDescriptorReader, lastFieldNumber);
-      callback(parseField(
+      const field = Object.freeze(parseField(
           fieldDescriptorReader, lastFieldNumber, /* extension= */ false,
           submessageDescriptorSupplier));
+      fields.push(field);
+      fieldsByNumber[lastFieldNumber] = field;
     }
+    this.declaredFields_ = Object.freeze(fields);
+    this.declaredFieldsByNumber_ = Object.freeze(fieldsByNumber);
+  }
 
+  /**
+   * @param {function(!Field):void} callback
+   * @private
+   */
+  forEachExtensionField_(callback) {
     if (!this.extensionsProvider_) {
       return;
     }
 
-    const extensions = this.extensionsProvider_();
+    const extensionFieldsByNumber = this.getExtensionFieldsByNumber_();
+    for (const key in extensionFieldsByNumber) {
+      callback(extensionFieldsByNumber[+key]);
+    }
+  }
+
+  /**
+   * Returns the decoded extension fields. The registry keeps growing as the
+   * modules defining extensions are loaded, so they are decoded again when the
+   * number of extensions changed.
+   * @return {!Object<number, !Field>}
+   * @private
+   */
+  getExtensionFieldsByNumber_() {
+    const extensions =
+        /** @type {function():!Array<!ExtensionFieldInfo>} */ (
+            this.extensionsProvider_)();
+    if (this.extensionFieldsByNumber_ &&
+        extensions.length === this.extensionCount_) {
+      return this.extensionFieldsByNumber_;
+    }
+
+    const fieldsByNumber = Object.create(null);
     for (let i = 0; i < extensions.length; i++) {
       const extension = extensions[i];
       const hasSubmessage = extension.submessageDescriptorProvider != null;
-      const field = parseField(
+      fieldsByNumber[extension.fieldNumber] = Object.freeze(parseField(
           Base92Reader.readEntireString(extension.encodedDescriptor),
           extension.fieldNumber, /* extension= */ true,
           hasSubmessage ? () => extension.submessageDescriptorProvider :
-                          undefined);
-      callback(field);
+                          undefined));
     }
+    this.extensionFieldsByNumber_ = Object.freeze(fieldsByNumber);
+    this.extensionCount_ = extensions.length;
+    this.allFieldsByNumber_ = null;
+    return this.extensionFieldsByNumber_;
   }
 
   /**
@@ -13,7 +13,9 @@
 // limitations under the License.
 goog.module('proto.im.internal.InternalMap');
 
+const FieldAccessor = goog.require('proto.im.internal.FieldAccessor');
 const InternalMutableMapView = goog.require('proto.im.internal.InternalMutableMapView');
+const Long = goog.require('goog.math.Long');
 const {checkIndex, checkTypeArray, checkTypeMapEntry, checkTypeMapKey} = goog.require('proto.im.internal.internalChecks');
 
 /**
@@ -53,6 +55,14 @@ class InternalMap {
     this.valueSetterFn_ = (mapEntry, value) =>
         valueSetterFn(mapEntry, VALUE_INDEX, value);
 
+    /**
+     * Whether the keys are stored as they are, so that they can be used as
+     * keys in the index map without serializing them first.
+     * @private @const {boolean}
+     */
+    this.keysAreCacheKeys_ = keySetterFn === FieldAccessor.setString ||
+        keySetterFn === FieldAccessor.setInt;
+
     this.initialIndex_();
   }
 
@@ -133,7 +143,8 @@ class InternalMap {
     this.jsonArray_[index] = lastEntry;
 
     // Update the index map with the updated position.
-    this.indexMap_.set(checkTypeMapKey(lastEntry[KEY_INDEX]), index);
+    this.indexMap_.set(
+        this.toCacheKey_(this.keyAccessorFn_(lastEntry)), index);
   }
 
   /** @override */
@@ -148,8 +159,13 @@ class InternalMap {
 
   /** @override */
   forEach(callback, thisArg = undefined) {
-    for (const [key, value] of this.entries()) {
-      callback.call(thisArg, value, key, this);
+    // Read the entries in place rather than through entries(), which allocates
+    // a [key, value] pair for each of them.
+    for (const index of this.indexMap_.values()) {
+      const entry = this.getMapEntryByIndex_(index);
+      callback.call(
+          thisArg, this.valueAccessorFn_(entry), this.keyAccessorFn_(entry),
+          this);
     }
   }
 
@@ -231,6 +247,14 @@ class InternalMap {
    * @private
    */
   toCacheKey_(key) {
+    if (this.keysAreCacheKeys_) {
+      return checkTypeMapKey(key);
+    }
+    if (key instanceof Long) {
+      // Converting a Long to its decimal string is slow. Its bits identify it
+      // just as well, whichever 64 bit type the map keys are.
+      return key.getHighBits() + ':' + key.getLowBits();
+    }
     // Reuse the keySetterFn to serialize the key into a temporary array that we
     // can read back out. This ensures that the key we use in the map is
     // consistent with the key that would be in the resulting JSPB payload.
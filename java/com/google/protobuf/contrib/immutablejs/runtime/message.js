@@ -33,6 +33,13 @@ class Message {
    */
   serialize() {}
 
+  /**
+   * Returns the message in protobuf binary wire format.
+   * @return {!Uint8Array}
+   * @abstract
+   */
+  serializeBinary() {}
+
   /**
    * Returns a parser that takes a JSPB wire format string and returns a new
    * message of the same type as this message.
@@ -14,23 +14,23 @@
 package com.google.protobuf.contrib.j2cl.generator;
 
 import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Writer that is able to handle multiple file in a common base directory or zip file and provides
  * support for indenting lines.
+ *
+ * <p>A writer is not thread-safe; files that are rendered concurrently each use their own writer,
+ * which are then appended to the response in a fixed order to keep the output deterministic.
  */
 class CodeWriter {
 
-  private final CodeGeneratorResponse.Builder response;
+  private final List<CodeGeneratorResponse.File> files = new ArrayList<>();
 
   private StringBuilder writer;
   private String currentFileName;
 
-  /** Write generated files to the given base directory */
-  public CodeWriter(CodeGeneratorResponse.Builder response) {
-    this.response = response;
-  }
-
   /**
    * Start a new entry (file).
    *
@@ -42,10 +42,19 @@ class CodeWriter {
   }
 
   public void closeEntry() {
-    response.addFileBuilder().setName(currentFileName).setContent(writer.toString());
+    files.add(
+        CodeGeneratorResponse.File.newBuilder()
+            .setName(currentFileName)
+            .setContent(writer.toString())
+            .build());
   }
 
   public void print(String s) {
     writer.append(s);
   }
+
+  /** Appends the completed entries to the response in the order they were written. */
+  public void writeTo(CodeGeneratorResponse.Builder response) {
+    response.addAllFile(files);
+  }
 }
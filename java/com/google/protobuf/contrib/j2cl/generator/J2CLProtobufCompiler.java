@@ -13,65 +13,65 @@
  */
 package com.google.protobuf.contrib.j2cl.generator;
 
-import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.base.Ascii;
-import com.google.common.collect.Maps;
-import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
 import com.google.protobuf.Descriptors.DescriptorValidationException;
 import com.google.protobuf.Descriptors.FileDescriptor;
-import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
 import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
+import com.google.protobuf.contrib.immutablejs.generator.FileDescriptorPool;
+import com.google.protobuf.contrib.immutablejs.generator.GeneratorWorker;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Protobuf compiler plugin that generates J2CL protobuf emulations. It reads a {@link
- * CodeGeneratorRequest} from stdin and writes a {@link CodeGeneratorResponse} to stdout.
+ * CodeGeneratorRequest} from stdin and writes a {@link CodeGeneratorResponse} to stdout, or runs as
+ * a persistent worker (see {@link GeneratorWorker}).
  */
 public class J2CLProtobufCompiler {
 
-  public static void main(String[] args) throws IOException, DescriptorValidationException {
-    CodeGeneratorRequest request =
-        CodeGeneratorRequest.parseFrom(System.in);
+  // Shared by all requests of a persistent worker.
+  private static final FileDescriptorPool fileDescriptorPool = new FileDescriptorPool();
 
-    Map<String, FileDescriptor> fileDescriptors = Maps.newHashMap();
+  public static void main(String[] args) throws Exception {
+    GeneratorWorker.run(args, J2CLProtobufCompiler::generate);
+  }
+
+  static CodeGeneratorResponse generate(CodeGeneratorRequest request, boolean renderInParallel)
+      throws DescriptorValidationException {
     CodeGeneratorResponse.Builder response = CodeGeneratorResponse.newBuilder();
     response.setSupportedFeatures(CodeGeneratorResponse.Feature.FEATURE_PROTO3_OPTIONAL_VALUE);
-    CodeWriter codeWriter = new CodeWriter(response);
-
-    List<String> fileToGenerateList = request.getFileToGenerateList();
     ProtoImplementation implementation =
         ProtoImplementation.fromRequestParameter(request.getParameter());
 
-    for (FileDescriptorProto fileDescriptorProto : request.getProtoFileList()) {
-      // Look up the imported files from previous file descriptors.  It is sufficient to look at
-      // only previous file descriptors because CodeGeneratorRequest guarantees that the files
-      // are sorted in topological order.
-      FileDescriptor[] deps = new FileDescriptor[fileDescriptorProto.getDependencyCount()];
-      for (int i = 0; i < fileDescriptorProto.getDependencyCount(); i++) {
-        String name = fileDescriptorProto.getDependency(i);
-        FileDescriptor dependee = checkNotNull(fileDescriptors.get(name),
-            "Missing file descriptor for [%s]", name);
-        deps[i] = dependee;
-      }
-
-      // Build and cache the current file descriptor.
-      FileDescriptor fileDescriptor = FileDescriptor.buildFrom(fileDescriptorProto, deps);
-      fileDescriptors.put(fileDescriptor.getName(), fileDescriptor);
-
-      // In J2cl we only generate output for protos that we see on the command line not their
-      // dependencies. This is necessary to make strict deps work.
-      if (!fileToGenerateList.contains(fileDescriptorProto.getName())) {
-        continue;
-      }
+    // Descriptors have to be built in topological order, but once built the files are rendered
+    // independently of each other. Each file gets its own writer and the writers are appended in
+    // their original order, so the response does not depend on the scheduling of the pool.
+    Stream<FileDescriptor> filesToGenerate =
+        fileDescriptorPool.buildFilesToGenerate(request).stream();
+    List<CodeWriter> codeWriters =
+        (renderInParallel ? filesToGenerate.parallel() : filesToGenerate)
+            .map(fileDescriptor -> generateCode(fileDescriptor, implementation))
+            .collect(toImmutableList());
+    for (CodeWriter codeWriter : codeWriters) {
+      codeWriter.writeTo(response);
+    }
+    return response.build();
+  }
 
-      // Generate code based on the current file descriptor.
+  private static CodeWriter generateCode(
+      FileDescriptor fileDescriptor, ProtoImplementation implementation) {
+    CodeWriter codeWriter = new CodeWriter();
+    try {
       new TemplateRenderer(codeWriter, fileDescriptor, implementation).generateCode();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    response.build().writeTo(System.out);
+    return codeWriter;
   }
 
   /** Proto implementation options. */
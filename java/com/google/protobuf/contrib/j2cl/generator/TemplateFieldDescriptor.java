@@ -15,6 +15,7 @@ package com.google.protobuf.contrib.j2cl.generator;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.protobuf.contrib.immutablejs.generator.SourceCodeEscapers.javaCharEscaper;
+import static java.util.stream.Collectors.joining;
 
 import com.google.auto.value.AutoValue;
 import com.google.protobuf.ByteString;
@@ -25,6 +26,8 @@ import com.google.protobuf.Descriptors.FileDescriptor.Syntax;
 import com.google.protobuf.contrib.immutablejs.generator.Descriptors;
 import com.google.protobuf.contrib.immutablejs.generator.JavaQualifiedNames;
 import com.google.protobuf.contrib.immutablejs.generator.NameResolver;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Describes a protobuf field type. */
 @AutoValue
@@ -175,6 +178,48 @@ public abstract class TemplateFieldDescriptor {
     return getBoxedType().equals(getUnboxedType());
   }
 
+  /** Whether the J2Wasm runtime stores the values of this field without boxing. */
+  public boolean hasUnboxedStorage() {
+    return !isMap() && !isNullable();
+  }
+
+  /** The J2Wasm {@code MessageSchema} type constant of this field. */
+  public String getSchemaType() {
+    return "com.google.protobuf.MessageSchema.TYPE_" + fieldDescriptor().getType().name();
+  }
+
+  /** The J2Wasm {@code MessageSchema} modifiers of this field. */
+  public String getSchemaModifiers() {
+    List<String> modifiers = new ArrayList<>();
+    if (isRepeated()) {
+      modifiers.add("REPEATED");
+    }
+    if (fieldDescriptor().isPacked()) {
+      modifiers.add("PACKED");
+    }
+    if (!isRepeated() && !isMap() && !hasHasser()) {
+      modifiers.add("IMPLICIT_PRESENCE");
+    }
+    if (isEnum() && !isOpenEnum()) {
+      modifiers.add("CLOSED_ENUM");
+    }
+    if (isMessage() && !isRepeated() && fieldDescriptor().getOptions().getLazy()) {
+      modifiers.add("LAZY");
+    }
+    if (modifiers.isEmpty()) {
+      return "0";
+    }
+    return modifiers.stream()
+        .map(m -> "com.google.protobuf.MessageSchema." + m)
+        .collect(joining(" | "));
+  }
+
+  /** Whether unknown values of the enum are kept, as opposed to being treated as unknown fields. */
+  private boolean isOpenEnum() {
+    return Descriptors.isProto3(fieldDescriptor())
+        && Descriptors.isProto3(fieldDescriptor().getEnumType());
+  }
+
   public String getUnrecognizedEnumValue() {
     EnumValueDescriptor defaultValue =
         isRepeated()
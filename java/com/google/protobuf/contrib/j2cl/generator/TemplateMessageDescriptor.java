@@ -15,7 +15,6 @@ package com.google.protobuf.contrib.j2cl.generator;
 
 import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static java.lang.Math.min;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
@@ -28,6 +27,8 @@ import java.util.stream.Stream;
 /** Represents a protocol message */
 @AutoValue
 public abstract class TemplateMessageDescriptor extends AbstractTemplateTypeDescriptor {
+  private static final int MAX_SLOTTED_FIELD_NUMBER = 1024;
+
   public static TemplateMessageDescriptor create(Descriptor descriptor) {
     return new AutoValue_TemplateMessageDescriptor(descriptor);
   }
@@ -91,16 +92,14 @@ public abstract class TemplateMessageDescriptor extends AbstractTemplateTypeDesc
         .collect(toImmutableList());
   }
 
-  public int getPivot() {
-    int defaultPivot = 100;
-
-    // Find max field number, or 0 if there is none.
-    int maxField =
-        descriptor().getFields().stream()
-            .map(FieldDescriptor::getNumber)
-            .max(Integer::compare)
-            .orElse(0);
-
-    return min(maxField + 1, defaultPivot);
+  /**
+   * The numbers of the fields that the J2Wasm runtime keeps in slots, in declaration order. Larger
+   * field numbers would make the lookup table of the message type too large.
+   */
+  public ImmutableList<Integer> getSlottedFieldNumbers() {
+    return descriptor().getFields().stream()
+        .map(FieldDescriptor::getNumber)
+        .filter(number -> number <= MAX_SLOTTED_FIELD_NUMBER)
+        .collect(toImmutableList());
   }
 }
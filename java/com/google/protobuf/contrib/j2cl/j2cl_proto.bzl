@@ -42,6 +42,13 @@ load(
 )
 load(":j2cl_proto_provider.bzl", "J2clProtoInfo")
 
+# Lets Bazel run the generator as a (multiplex) persistent worker when workers are enabled.
+_WORKER_EXECUTION_REQUIREMENTS = {
+    "requires-worker-protocol": "proto",
+    "supports-multiplex-workers": "1",
+    "supports-workers": "1",
+}
+
 def _unarchived_jar_path(path):
     """Get the path of the unarchived directory.
 
@@ -57,13 +64,12 @@ def _unarchived_jar_path(path):
 
 def _j2cl_proto_library_aspect_impl(target, ctx):
     srcs = target[ProtoInfo].direct_sources
-    transitive_srcs = target[ProtoInfo].transitive_sources
 
     # generate jsinterop implementation of j2cl proto
-    (j2cl, js) = _generate_jsinterop_j2cl_proto(ctx, target, srcs, transitive_srcs)
+    (j2cl, js) = _generate_jsinterop_j2cl_proto(ctx, target, srcs)
 
     # generate java implementation of j2cl proto for j2wasm
-    j2wasm = _generate_j2wasm_proto(ctx, target, srcs, transitive_srcs)
+    j2wasm = _generate_j2wasm_proto(ctx, target, srcs)
 
     return J2clProtoInfo(
         _private_ = struct(
@@ -73,7 +79,7 @@ def _j2cl_proto_library_aspect_impl(target, ctx):
         js = js,
     )
 
-def _generate_j2wasm_proto(ctx, target, srcs, transitive_srcs):
+def _generate_j2wasm_proto(ctx, target, srcs):
     artifact_suffix = "-j2wasm"
     name = ctx.label.name + artifact_suffix
     deps = [dep[J2clProtoInfo]._private_.j2wasm.j2wasm_info for dep in ctx.rule.attr.deps]
@@ -81,7 +87,7 @@ def _generate_j2wasm_proto(ctx, target, srcs, transitive_srcs):
     exports = [dep[J2clProtoInfo]._private_.j2wasm.j2wasm_info for dep in ctx.rule.attr.exports]
 
     if srcs:
-        src_jar = _generate_proto_srcjar(ctx, srcs, "java", artifact_suffix, transitive_srcs)
+        src_jar = _generate_proto_srcjar(ctx, target[ProtoInfo], "java", artifact_suffix)
         runtime_deps = [d[J2wasmInfo] for d in ctx.attr._j2wasm_proto_implicit_deps]
         j2wasm_provider = j2wasm_common.compile(
             ctx = ctx,
@@ -100,7 +106,7 @@ def _generate_j2wasm_proto(ctx, target, srcs, transitive_srcs):
 
     return struct(j2wasm_info = j2wasm_provider)
 
-def _generate_jsinterop_j2cl_proto(ctx, target, srcs, transitive_srcs):
+def _generate_jsinterop_j2cl_proto(ctx, target, srcs):
     artifact_suffix = "-j2cl"
     deps = [target[ImmutableJspbInfo].js]
     deps += [dep[J2clProtoInfo]._private_.j2cl.j2cl_info for dep in ctx.rule.attr.deps]
@@ -109,7 +115,7 @@ def _generate_jsinterop_j2cl_proto(ctx, target, srcs, transitive_srcs):
     transitive_runfiles += [dep[J2clProtoInfo]._private_.j2cl.runfiles for dep in ctx.rule.attr.deps]
 
     if srcs:
-        src_jar = _generate_proto_srcjar(ctx, srcs, "jsinterop", artifact_suffix, transitive_srcs)
+        src_jar = _generate_proto_srcjar(ctx, target[ProtoInfo], "jsinterop", artifact_suffix)
 
         runtime_deps = [d[J2clInfo] for d in ctx.attr._j2cl_proto_implicit_deps]
         transitive_runfiles += [
@@ -141,48 +147,59 @@ def _generate_jsinterop_j2cl_proto(ctx, target, srcs, transitive_srcs):
         runfiles = depset(js.srcs, transitive = transitive_runfiles),
     ), js)
 
-def _generate_proto_srcjar(ctx, srcs, protobuf_implementation, artifact_suffix, transitive_srcs):
-    jar_archive = ctx.actions.declare_file(ctx.label.name + artifact_suffix + ".srcjar")
-    protoc_command_template = """
+def _generate_proto_srcjar(ctx, proto_info, protobuf_implementation, artifact_suffix):
+    name = ctx.label.name + artifact_suffix
+    jar_archive = ctx.actions.declare_file(name + ".srcjar")
+    generated_dir = ctx.actions.declare_directory(name + "-gen")
+
+    # The generator reads the descriptor sets of proto_library directly and runs as a persistent
+    # worker, so the JVM, parsed templates and shared descriptors are reused across targets.
+    args = ctx.actions.args()
+    args.add("-output", generated_dir.path)
+    args.add("-parameter", protobuf_implementation)
+    args.add("-directDescriptorSet", proto_info.direct_descriptor_set)
+    args.add_all(proto_info.transitive_descriptor_sets, before_each = "-descriptorSet")
+    args.use_param_file("@%s", use_always = True)
+    args.set_param_file_format("multiline")
+
+    ctx.actions.run(
+        executable = ctx.executable._protoc_gen_j2cl,
+        arguments = [args],
+        inputs = proto_info.transitive_descriptor_sets,
+        outputs = [generated_dir],
+        mnemonic = "J2clProtoGen",
+        execution_requirements = _WORKER_EXECUTION_REQUIREMENTS,
+        progress_message = "Generating J2CL proto files",
+    )
+
+    format_command_template = """
       set -e -o pipefail
 
       rm -rf {dir}
       mkdir -p {dir}
-      mkdir -p {genfiles}
-
-      {protoc} --plugin=protoc-gen-j2cl_protobuf={protoc_plugin} \
-                    --proto_path=. \
-                    --proto_path={genfiles} \
-                    --j2cl_protobuf_out={protobuf_implementation}:{dir} \
-                    {proto_sources}
+      cp -R {generated_dir}/. {dir}
       java_files=$(find {dir} -name '*.java')
       chmod -R 664 $java_files
       {java_format} -i $java_files
       {jar} -cf {jar_file} -C {dir} .
       """
-    protoc_command = protoc_command_template.format(
+    format_command = format_command_template.format(
         dir = _unarchived_jar_path(jar_archive.path),
-        protoc = ctx.executable._protocol_compiler.path,
-        protoc_plugin = ctx.executable._protoc_gen_j2cl.path,
-        genfiles = ctx.configuration.genfiles_dir.path,
-        proto_sources = " ".join([s.path for s in srcs]),
+        generated_dir = generated_dir.path,
         jar = ctx.executable._jar.path,
         jar_file = jar_archive.path,
         java_format = ctx.executable._google_java_formatter.path,
-        protobuf_implementation = protobuf_implementation,
     )
 
     ctx.actions.run_shell(
-        command = protoc_command,
-        inputs = transitive_srcs,
+        command = format_command,
+        inputs = [generated_dir],
         tools = [
-            ctx.executable._protocol_compiler,
-            ctx.executable._protoc_gen_j2cl,
             ctx.executable._jar,
             ctx.executable._google_java_formatter,
         ],
         outputs = [jar_archive],
-        progress_message = "Generating J2CL proto files",
+        progress_message = "Formatting J2CL proto files",
     )
 
     return jar_archive
@@ -208,11 +225,6 @@ _j2cl_proto_library_aspect = aspect(
                 Label("//third_party:j2cl_proto_runtime-j2wasm"),
             ],
         ),
-        "_protocol_compiler": attr.label(
-            executable = True,
-            cfg = "exec",
-            default = Label("//third_party:protocol_compiler"),
-        ),
         "_protoc_gen_j2cl": attr.label(
             executable = True,
             cfg = "exec",
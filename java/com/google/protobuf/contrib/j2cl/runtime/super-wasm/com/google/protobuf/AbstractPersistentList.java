@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The trie shared by {@link PersistentList} and {@link PrimitiveList}, which only differ in the
+ * arrays of type {@code L} that hold their elements in the leaves.
+ *
+ * <p>The leaves are kept in a trie of 32 element wide nodes followed by a tail, so deriving a list
+ * with an element added or replaced only copies the path to that element. The nodes created on
+ * behalf of an owner are updated in place by later operations of the same owner, which makes
+ * repeatedly adding to the list of a builder as cheap as adding to an {@code ArrayList}.
+ */
+@SuppressWarnings("unchecked")
+abstract class AbstractPersistentList<E, L> extends AbstractList<E> implements RandomAccess {
+
+  static final int BITS = 5;
+  static final int WIDTH = 1 << BITS;
+  static final int MASK = WIDTH - 1;
+
+  /** A node of the trie, the array holds the child nodes of a branch or the elements of a leaf. */
+  static final class Node {
+    final Object owner;
+    final Object array;
+
+    Node(Object owner, Object array) {
+      this.owner = owner;
+      this.array = array;
+    }
+
+    static Node branch(Object owner) {
+      return new Node(owner, new Node[WIDTH]);
+    }
+  }
+
+  // Only modified by operations of the owner.
+  private final Object owner;
+  private int size;
+  private int shift;
+  private Node root;
+  private L tail;
+
+  /** Creates an empty list. */
+  AbstractPersistentList(L tail) {
+    this.owner = null;
+    this.shift = BITS;
+    this.root = Node.branch(null);
+    this.tail = tail;
+  }
+
+  /** Creates a list with the elements of the other one, its nodes are shared until updated. */
+  AbstractPersistentList(AbstractPersistentList<E, L> other, Object owner) {
+    this.owner = owner;
+    this.size = other.size;
+    this.shift = other.shift;
+    this.root = other.root;
+    // The tail is always updated in place, so it is never shared.
+    this.tail = other.copyLeaf(other.tail);
+  }
+
+  /** Returns a new empty leaf. */
+  abstract L newLeaf();
+
+  /** Returns a copy of the leaf. */
+  abstract L copyLeaf(L leaf);
+
+  @Override
+  public final int size() {
+    return size;
+  }
+
+  final Object owner() {
+    return owner;
+  }
+
+  final void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  /** Returns the leaf holding the element at the index, at {@code index & MASK}. */
+  final L leafFor(int index) {
+    if (index >= tailOffset()) {
+      return tail;
+    }
+    Node node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = ((Node[]) node.array)[(index >>> level) & MASK];
+    }
+    return (L) node.array;
+  }
+
+  /**
+   * Returns the leaf holding the element at the index for updating it, copying the path to it first
+   * if it was not created by the owner of this list.
+   */
+  final L editableLeafFor(int index) {
+    if (index >= tailOffset()) {
+      return tail;
+    }
+    Node node = root = editableBranch(root);
+    for (int level = shift; level > 0; level -= BITS) {
+      Node[] children = (Node[]) node.array;
+      int subIndex = (index >>> level) & MASK;
+      Node child = children[subIndex];
+      node = children[subIndex] = level == BITS ? editableLeaf(child) : editableBranch(child);
+    }
+    return (L) node.array;
+  }
+
+  /**
+   * Adds room for an element at the end and returns the leaf it goes in, at {@code (size() - 1) &
+   * MASK}.
+   */
+  final L grow() {
+    if (size - tailOffset() == WIDTH) {
+      // The tail is full, move it into the trie.
+      Node tailNode = new Node(owner, tail);
+      tail = newLeaf();
+      if ((size >>> BITS) > (1 << shift)) {
+        // The trie is full, add a level on top.
+        Node newRoot = Node.branch(owner);
+        ((Node[]) newRoot.array)[0] = root;
+        ((Node[]) newRoot.array)[1] = newPath(shift, tailNode);
+        root = newRoot;
+        shift += BITS;
+      } else {
+        root = pushTail(shift, root, tailNode);
+      }
+    }
+    size++;
+    return tail;
+  }
+
+  private int tailOffset() {
+    return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+  }
+
+  private Node editableBranch(Node node) {
+    return node.owner == owner ? node : new Node(owner, ((Node[]) node.array).clone());
+  }
+
+  private Node editableLeaf(Node node) {
+    return node.owner == owner ? node : new Node(owner, copyLeaf((L) node.array));
+  }
+
+  private Node pushTail(int level, Node parent, Node tailNode) {
+    Node node = editableBranch(parent);
+    Node[] children = (Node[]) node.array;
+    int subIndex = ((size - 1) >>> level) & MASK;
+    if (level == BITS) {
+      children[subIndex] = tailNode;
+    } else {
+      Node child = children[subIndex];
+      children[subIndex] =
+          child != null
+              ? pushTail(level - BITS, child, tailNode)
+              : newPath(level - BITS, tailNode);
+    }
+    return node;
+  }
+
+  private Node newPath(int level, Node node) {
+    if (level == 0) {
+      return node;
+    }
+    Node path = Node.branch(owner);
+    ((Node[]) path.array)[0] = newPath(level - BITS, node);
+    return path;
+  }
+}
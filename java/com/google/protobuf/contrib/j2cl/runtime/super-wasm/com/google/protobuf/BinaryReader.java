@@ -0,0 +1,205 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.nio.charset.StandardCharsets;
+
+/** Reads protobuf wire format values directly from a byte array without intermediate copies. */
+final class BinaryReader {
+  private static final int RECURSION_LIMIT = 100;
+
+  private final byte[] buffer;
+  private int pos;
+  private int limit;
+  private int lastTag;
+  private int depth;
+
+  BinaryReader(byte[] buffer, int offset, int length) {
+    this.buffer = buffer;
+    this.pos = offset;
+    this.limit = offset + length;
+  }
+
+  /** Returns the next tag, or 0 if the current limit has been reached. */
+  int readTag() throws InvalidProtocolBufferException {
+    if (pos == limit) {
+      lastTag = 0;
+      return 0;
+    }
+    lastTag = readRawVarint32();
+    if (WireFormat.getTagFieldNumber(lastTag) == 0) {
+      throw InvalidProtocolBufferException.invalidTag();
+    }
+    return lastTag;
+  }
+
+  int getPosition() {
+    return pos;
+  }
+
+  /** Returns a copy of the bytes between the given positions. */
+  ByteString getRawBytes(int start, int end) {
+    return ByteString.copyFrom(buffer, start, end - start);
+  }
+
+  int getLastTag() {
+    return lastTag;
+  }
+
+  void checkLastTagWas(int value) throws InvalidProtocolBufferException {
+    if (lastTag != value) {
+      throw InvalidProtocolBufferException.invalidEndTag();
+    }
+  }
+
+  /** Skips the field with the given tag. Returns false if the tag is an end group tag. */
+  boolean skipField(int tag) throws InvalidProtocolBufferException {
+    switch (WireFormat.getTagWireType(tag)) {
+      case WireFormat.WIRETYPE_VARINT:
+        readRawVarint64();
+        return true;
+      case WireFormat.WIRETYPE_FIXED64:
+        skipRawBytes(8);
+        return true;
+      case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+        skipRawBytes(readLength());
+        return true;
+      case WireFormat.WIRETYPE_START_GROUP:
+        skipGroup(WireFormat.getTagFieldNumber(tag));
+        return true;
+      case WireFormat.WIRETYPE_END_GROUP:
+        return false;
+      case WireFormat.WIRETYPE_FIXED32:
+        skipRawBytes(4);
+        return true;
+      default:
+        throw InvalidProtocolBufferException.invalidWireType();
+    }
+  }
+
+  private void skipGroup(int fieldNumber) throws InvalidProtocolBufferException {
+    enterMessage();
+    while (true) {
+      int tag = readTag();
+      if (tag == 0 || !skipField(tag)) {
+        break;
+      }
+    }
+    checkLastTagWas(WireFormat.makeTag(fieldNumber, WireFormat.WIRETYPE_END_GROUP));
+    exitMessage();
+  }
+
+  /** Records entering a nested message or group, failing on excessive nesting. */
+  void enterMessage() throws InvalidProtocolBufferException {
+    if (++depth > RECURSION_LIMIT) {
+      throw InvalidProtocolBufferException.recursionLimitExceeded();
+    }
+  }
+
+  void exitMessage() {
+    depth--;
+  }
+
+  /** Restricts reading to the next {@code length} bytes and returns the previous limit. */
+  int pushLimit(int length) throws InvalidProtocolBufferException {
+    if (length > limit - pos) {
+      throw InvalidProtocolBufferException.truncatedMessage();
+    }
+    int oldLimit = limit;
+    limit = pos + length;
+    return oldLimit;
+  }
+
+  void popLimit(int oldLimit) {
+    limit = oldLimit;
+  }
+
+  boolean isAtLimit() {
+    return pos == limit;
+  }
+
+  int readLength() throws InvalidProtocolBufferException {
+    int length = readRawVarint32();
+    if (length < 0) {
+      throw InvalidProtocolBufferException.negativeSize();
+    }
+    return length;
+  }
+
+  String readString() throws InvalidProtocolBufferException {
+    int length = readLength();
+    checkAvailable(length);
+    String value = new String(buffer, pos, length, StandardCharsets.UTF_8);
+    pos += length;
+    return value;
+  }
+
+  ByteString readBytes() throws InvalidProtocolBufferException {
+    int length = readLength();
+    if (length == 0) {
+      return ByteString.EMPTY;
+    }
+    checkAvailable(length);
+    ByteString value = ByteString.copyFrom(buffer, pos, length);
+    pos += length;
+    return value;
+  }
+
+  int readRawVarint32() throws InvalidProtocolBufferException {
+    // Values that do not fit are truncated, as required for int32 fields encoded as 64-bit.
+    return (int) readRawVarint64();
+  }
+
+  long readRawVarint64() throws InvalidProtocolBufferException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (pos == limit) {
+        throw InvalidProtocolBufferException.truncatedMessage();
+      }
+      byte b = buffer[pos++];
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw InvalidProtocolBufferException.malformedVarint();
+  }
+
+  int readRawLittleEndian32() throws InvalidProtocolBufferException {
+    checkAvailable(4);
+    int p = pos;
+    pos += 4;
+    return (buffer[p] & 0xFF)
+        | ((buffer[p + 1] & 0xFF) << 8)
+        | ((buffer[p + 2] & 0xFF) << 16)
+        | ((buffer[p + 3] & 0xFF) << 24);
+  }
+
+  long readRawLittleEndian64() throws InvalidProtocolBufferException {
+    long low = readRawLittleEndian32() & 0xFFFFFFFFL;
+    long high = readRawLittleEndian32() & 0xFFFFFFFFL;
+    return low | (high << 32);
+  }
+
+  private void skipRawBytes(int length) throws InvalidProtocolBufferException {
+    checkAvailable(length);
+    pos += length;
+  }
+
+  private void checkAvailable(int length) throws InvalidProtocolBufferException {
+    if (length > limit - pos) {
+      throw InvalidProtocolBufferException.truncatedMessage();
+    }
+  }
+}
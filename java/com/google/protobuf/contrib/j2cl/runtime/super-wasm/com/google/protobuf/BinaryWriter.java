@@ -0,0 +1,176 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+/**
+ * Writes protobuf wire format values into a byte array that has been sized upfront using the
+ * {@code compute*Size} methods.
+ */
+final class BinaryWriter {
+  private final byte[] buffer;
+  private int pos;
+
+  BinaryWriter(byte[] buffer) {
+    this.buffer = buffer;
+  }
+
+  void checkNoSpaceLeft() {
+    if (pos != buffer.length) {
+      throw new IllegalStateException("Did not write as much data as expected.");
+    }
+  }
+
+  void writeTag(int fieldNumber, int wireType) {
+    writeRawVarint32(WireFormat.makeTag(fieldNumber, wireType));
+  }
+
+  /** Writes an unsigned 32-bit varint. */
+  void writeRawVarint32(int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+  }
+
+  void writeRawVarint64(long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+  }
+
+  void writeRawLittleEndian32(int value) {
+    buffer[pos++] = (byte) value;
+    buffer[pos++] = (byte) (value >> 8);
+    buffer[pos++] = (byte) (value >> 16);
+    buffer[pos++] = (byte) (value >> 24);
+  }
+
+  void writeRawLittleEndian64(long value) {
+    writeRawLittleEndian32((int) value);
+    writeRawLittleEndian32((int) (value >> 32));
+  }
+
+  /** Writes the length prefixed UTF-8 encoding of the string. */
+  void writeString(String value) {
+    writeRawVarint32(computeUtf8Size(value));
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[pos++] = (byte) (0xC0 | (c >>> 6));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (!Character.isSurrogate(c)) {
+        buffer[pos++] = (byte) (0xE0 | (c >>> 12));
+        buffer[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (isSurrogatePairAt(value, i)) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer[pos++] = (byte) (0xF0 | (codePoint >>> 18));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+        buffer[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else {
+        // Unpaired surrogates are replaced the same way String.getBytes does.
+        buffer[pos++] = (byte) '?';
+      }
+    }
+  }
+
+  /** Writes the length prefixed bytes. */
+  void writeBytes(ByteString value) {
+    byte[] bytes = value.bytes;
+    writeRawVarint32(bytes.length);
+    System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+    pos += bytes.length;
+  }
+
+  /** Writes the bytes as is, without a length prefix. */
+  void writeRawBytes(ByteString value) {
+    byte[] bytes = value.bytes;
+    System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+    pos += bytes.length;
+  }
+
+  static int computeTagSize(int fieldNumber) {
+    return computeRawVarint32Size(WireFormat.makeTag(fieldNumber, 0));
+  }
+
+  static int computeRawVarint32Size(int value) {
+    if ((value & (~0 << 7)) == 0) {
+      return 1;
+    }
+    if ((value & (~0 << 14)) == 0) {
+      return 2;
+    }
+    if ((value & (~0 << 21)) == 0) {
+      return 3;
+    }
+    if ((value & (~0 << 28)) == 0) {
+      return 4;
+    }
+    return 5;
+  }
+
+  static int computeRawVarint64Size(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+
+  /** Returns the size of the string including its length prefix. */
+  static int computeStringSize(String value) {
+    int utf8Size = computeUtf8Size(value);
+    return computeRawVarint32Size(utf8Size) + utf8Size;
+  }
+
+  /** Returns the size of the bytes including its length prefix. */
+  static int computeBytesSize(ByteString value) {
+    int size = value.size();
+    return computeRawVarint32Size(size) + size;
+  }
+
+  private static int computeUtf8Size(String value) {
+    int length = value.length();
+    int size = length;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        continue;
+      } else if (c < 0x800) {
+        size += 1;
+      } else if (!Character.isSurrogate(c)) {
+        size += 2;
+      } else if (isSurrogatePairAt(value, i)) {
+        // Four bytes for the two chars of the pair.
+        size += 2;
+        i++;
+      }
+    }
+    return size;
+  }
+
+  private static boolean isSurrogatePairAt(String value, int index) {
+    return Character.isHighSurrogate(value.charAt(index))
+        && index + 1 < value.length()
+        && Character.isLowSurrogate(value.charAt(index + 1));
+  }
+}
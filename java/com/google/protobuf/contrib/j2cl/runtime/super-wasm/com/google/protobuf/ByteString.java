@@ -23,11 +23,20 @@ public class ByteString {
     return new ByteString(cloneByteArray(bytes));
   }
 
+  public static ByteString copyFrom(byte[] bytes, int offset, int size) {
+    return new ByteString(Arrays.copyOfRange(bytes, offset, offset + size));
+  }
+
+  /** Wraps the given array without copying, the caller must not modify it afterwards. */
+  static ByteString wrap(byte[] bytes) {
+    return new ByteString(bytes);
+  }
+
   public static ByteString copyFromUtf8(String s) {
     return copyFrom(s.getBytes());
   }
 
-  private final byte[] bytes;
+  final byte[] bytes;
 
   private ByteString(byte[] bytes) {
     this.bytes = bytes;
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Maps field numbers to values, keeping the numbers sorted in an array parallel to the values.
+ *
+ * <p>Messages only have a handful of fields without a slot (mostly extensions), so a binary
+ * search is as fast as hashing while lookups don't box the field number and copies are two array
+ * copies.
+ */
+final class FieldNumberMap {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private int[] numbers;
+  private Object[] values;
+  private int size;
+
+  FieldNumberMap() {
+    this.numbers = new int[INITIAL_CAPACITY];
+    this.values = new Object[INITIAL_CAPACITY];
+  }
+
+  private FieldNumberMap(int[] numbers, Object[] values, int size) {
+    this.numbers = numbers;
+    this.values = values;
+    this.size = size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  boolean containsKey(int fieldNumber) {
+    return indexOf(fieldNumber) >= 0;
+  }
+
+  Object get(int fieldNumber) {
+    return getOrDefault(fieldNumber, null);
+  }
+
+  Object getOrDefault(int fieldNumber, Object defaultValue) {
+    int index = indexOf(fieldNumber);
+    return index >= 0 ? values[index] : defaultValue;
+  }
+
+  void put(int fieldNumber, Object value) {
+    int index = indexOf(fieldNumber);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+
+    index = -index - 1;
+    if (size == numbers.length) {
+      int newCapacity = size + (size >> 1) + 1;
+      numbers = Arrays.copyOf(numbers, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+    }
+    System.arraycopy(numbers, index, numbers, index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    numbers[index] = fieldNumber;
+    values[index] = value;
+    size++;
+  }
+
+  void remove(int fieldNumber) {
+    int index = indexOf(fieldNumber);
+    if (index < 0) {
+      return;
+    }
+    size--;
+    System.arraycopy(numbers, index + 1, numbers, index, size - index);
+    System.arraycopy(values, index + 1, values, index, size - index);
+    values[size] = null;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Returns the field number of the entry at the index, entries are ordered by field number. */
+  int getNumberAt(int index) {
+    return numbers[index];
+  }
+
+  Object getValueAt(int index) {
+    return values[index];
+  }
+
+  FieldNumberMap copy() {
+    return new FieldNumberMap(
+        Arrays.copyOf(numbers, numbers.length), Arrays.copyOf(values, values.length), size);
+  }
+
+  boolean equals(FieldNumberMap other) {
+    if (size != other.size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (numbers[i] != other.numbers[i]
+          || !Objects.equals(
+              LazyMessage.resolve(values[i]), LazyMessage.resolve(other.values[i]))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hashCode = 0;
+    for (int i = 0; i < size; i++) {
+      hashCode += numbers[i] ^ Objects.hashCode(LazyMessage.resolve(values[i]));
+    }
+    return hashCode;
+  }
+
+  private int indexOf(int fieldNumber) {
+    return Arrays.binarySearch(numbers, 0, size, fieldNumber);
+  }
+}
@@ -13,185 +13,463 @@
  */
 package com.google.protobuf;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 
 /** A collection that efficiently stores proto fields indexed by number. */
 final class FieldStorage {
 
-  static FieldStorage create(int pivot) {
-    return new FieldStorage(pivot);
+  /**
+   * Creates the storage for a message type, giving the fields with the given numbers a slot in
+   * that order. Fields without a slot (e.g. extensions) are kept in the expansion.
+   */
+  static FieldStorage create(int[] fieldNumbers) {
+    int maxFieldNumber = 0;
+    for (int fieldNumber : fieldNumbers) {
+      maxFieldNumber = Math.max(maxFieldNumber, fieldNumber);
+    }
+    int[] slots = new int[maxFieldNumber + 1];
+    Arrays.fill(slots, -1);
+    int slotCount = Math.min(fieldNumbers.length, MAX_SLOTS);
+    for (int slot = 0; slot < slotCount; slot++) {
+      slots[fieldNumbers[slot]] = slot;
+    }
+    return new FieldStorage(slots, slotCount);
+  }
+
+  // The slots are split in chunks that are copied on the first write
+  // after they were shared with another storage, so copying a storage does not depend on the
+  // number of fields.
+  private static final int CHUNK_BITS = 4;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  // Fields that would not fit in the shared chunks mask are kept in the expansion.
+  private static final int MAX_SLOTS = Long.SIZE * CHUNK_SIZE;
+
+  // Maps field numbers to their slot, or -1 for fields kept in the expansion. Slots are assigned
+  // densely, so gaps in the field numbers don't take space in every message. Shared by all the
+  // storages of a message type.
+  private final int[] slots;
+  private final int slotCount;
+  // Identifies the repeated and map fields this storage may update in place. Storages that share
+  // fields never have the same owner.
+  private Object owner;
+  // Allocated on first write, as are the chunks themselves. Slots of values kept unboxed in
+  // primitives hold their PrimitiveKind, which is needed to box them for the generic accessors.
+  private Object[][] chunks;
+  // Raw bits of the unboxed values, parallel to chunks. Allocated on first primitive write.
+  private long[][] primitives;
+  // Bit i is set if chunk i is shared with another storage.
+  private long sharedChunks;
+  private FieldNumberMap expansion;
+  private boolean sharedExpansion;
+  // The wire format of the parsed fields that are not in the schema of the message, e.g. fields
+  // of a newer version of it or extensions. They are written back as is on serialization.
+  private ByteString unknownFields = ByteString.EMPTY;
+
+  private FieldStorage(int[] slots, int slotCount) {
+    this.slots = slots;
+    this.slotCount = slotCount;
+  }
+
+  private FieldStorage(FieldStorage other) {
+    this.slots = other.slots;
+    this.slotCount = other.slotCount;
+    this.chunks = other.chunks == null ? null : other.chunks.clone();
+    this.primitives = other.primitives == null ? null : other.primitives.clone();
+    this.sharedChunks = other.sharedChunks;
+    this.expansion = other.expansion;
+    this.sharedExpansion = other.sharedExpansion;
+    this.unknownFields = other.unknownFields;
   }
 
-  private static final Object[] EMPTY = new Object[0];
+  private int chunkCount() {
+    return (slotCount + CHUNK_MASK) >>> CHUNK_BITS;
+  }
 
-  private final int pivot;
-  private int size;
-  private Object[] array;
-  private HashMap<Integer, Object> expansion;
+  /** Returns the number of slots in the chunk, the last one only has room for the last slot. */
+  private int chunkLength(int chunkIndex) {
+    return Math.min(CHUNK_SIZE, slotCount - (chunkIndex << CHUNK_BITS));
+  }
 
-  private FieldStorage(int pivot) {
-    this.pivot = pivot;
-    this.array = EMPTY;
+  private int slotOf(int fieldNumber) {
+    return fieldNumber < slots.length ? slots[fieldNumber] : -1;
   }
 
-  private FieldStorage(Object[] array, HashMap<Integer, Object> expansion, int pivot, int size) {
-    this.pivot = pivot;
-    this.size = size;
-    this.array = array;
-    this.expansion = expansion;
+  private FieldNumberMap writableExpansion() {
+    if (expansion == null) {
+      expansion = new FieldNumberMap();
+    } else if (sharedExpansion) {
+      expansion = expansion.copy();
+    }
+    sharedExpansion = false;
+    return expansion;
   }
 
-  private HashMap<Integer, Object> ensureExpension() {
-    return expansion == null ? expansion = new HashMap<>() : expansion;
+  private Object getSlot(int index) {
+    Object[] chunk = chunks == null ? null : chunks[index >>> CHUNK_BITS];
+    return chunk == null ? null : chunk[index & CHUNK_MASK];
   }
 
-  private Object getFromArray(int fieldNumber) {
-    int index = fieldNumber - 1;
-    return index < size ? array[index] : null;
+  private long getPrimitiveBits(int index) {
+    return primitives[index >>> CHUNK_BITS][index & CHUNK_MASK];
   }
 
-  private void setInArray(int fieldNumber, Object value) {
-    ensureArrayCapacity(fieldNumber)[fieldNumber - 1] = value;
-    size = Math.max(size, fieldNumber);
+  /** Returns the value in the slot, boxing or decoding it if it is stored unboxed or lazily. */
+  private Object getBoxedSlot(int index) {
+    Object value = getSlot(index);
+    if (value instanceof PrimitiveKind) {
+      return ((PrimitiveKind) value).box(getPrimitiveBits(index));
+    }
+    return resolve(value);
   }
 
-  private Object[] ensureArrayCapacity(int capacity) {
-    int oldCapacity = array.length;
-    if (capacity > oldCapacity) {
-      // Limit growth since we never use the array for fields larger than pivot.
-      int newCapacity = Math.min(pivot, Math.max(capacity, oldCapacity + (oldCapacity >> 1)) + 1);
-      Object[] newArray = new Object[newCapacity];
-      System.arraycopy(array, 0, newArray, 0, size);
-      array = newArray;
+  /** Returns the message for a lazily parsed message or a child builder, the value otherwise. */
+  private static Object resolve(Object value) {
+    if (value instanceof GeneratedMessageLite.Builder) {
+      return ((GeneratedMessageLite.Builder<?, ?>) value).build();
     }
-    return array;
+    return LazyMessage.resolve(value);
+  }
+
+  private void setPrimitiveSlot(int index, PrimitiveKind kind, long bits) {
+    int chunkIndex = index >>> CHUNK_BITS;
+    writableChunk(chunkIndex)[index & CHUNK_MASK] = kind;
+    if (primitives == null) {
+      primitives = new long[chunkCount()][];
+    }
+    long[] primitiveChunk = primitives[chunkIndex];
+    if (primitiveChunk == null) {
+      primitiveChunk = primitives[chunkIndex] = new long[chunkLength(chunkIndex)];
+    }
+    primitiveChunk[index & CHUNK_MASK] = bits;
+  }
+
+  private void setSlot(int index, Object value) {
+    writableChunk(index >>> CHUNK_BITS)[index & CHUNK_MASK] = value;
+  }
+
+  /** Returns the chunk for writing, copying it (and its primitives) first if it is shared. */
+  private Object[] writableChunk(int chunkIndex) {
+    if (chunks == null) {
+      chunks = new Object[chunkCount()][];
+    }
+    Object[] chunk = chunks[chunkIndex];
+    long bit = 1L << chunkIndex;
+    if (chunk == null) {
+      chunk = chunks[chunkIndex] = new Object[chunkLength(chunkIndex)];
+    } else if ((sharedChunks & bit) != 0) {
+      chunk = chunks[chunkIndex] = chunk.clone();
+      if (primitives != null && primitives[chunkIndex] != null) {
+        primitives[chunkIndex] = primitives[chunkIndex].clone();
+      }
+    }
+    sharedChunks &= ~bit;
+    return chunk;
   }
 
   <E> E get(int fieldNumber, E defaultValue) {
-    if (fieldNumber < pivot) {
-      E value = (E) getFromArray(fieldNumber);
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      E value = (E) getBoxedSlot(slot);
       return value != null ? value : defaultValue;
     }
 
-    return expansion == null ? defaultValue : (E) expansion.getOrDefault(fieldNumber, defaultValue);
+    return expansion == null
+        ? defaultValue
+        : (E) resolve(expansion.getOrDefault(fieldNumber, defaultValue));
+  }
+
+  /**
+   * Returns the value of a message field without resolving it if it is a {@link LazyMessage} or a
+   * child builder.
+   */
+  Object getUnresolved(int fieldNumber) {
+    int slot = slotOf(fieldNumber);
+    return slot >= 0 ? getSlot(slot) : getFromExpansion(fieldNumber);
+  }
+
+  int getInt(int fieldNumber, int defaultValue) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      Object value = getSlot(slot);
+      if (value == PrimitiveKind.INT) {
+        return (int) getPrimitiveBits(slot);
+      }
+      return value != null ? (Integer) value : defaultValue;
+    }
+
+    Object value = getFromExpansion(fieldNumber);
+    return value != null ? (Integer) value : defaultValue;
   }
 
-  <E> ArrayList<E> ensureRepeated(int fieldNumber) {
-    if (fieldNumber < pivot) {
-      ArrayList<E> value = (ArrayList<E>) getFromArray(fieldNumber);
-      if (value == null) {
-        value = new ArrayList<>();
-        setInArray(fieldNumber, value);
+  long getLong(int fieldNumber, long defaultValue) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      Object value = getSlot(slot);
+      if (value == PrimitiveKind.LONG) {
+        return getPrimitiveBits(slot);
       }
-      return value;
+      return value != null ? (Long) value : defaultValue;
     }
 
-    return (ArrayList<E>) ensureExpension().computeIfAbsent(fieldNumber, k -> new ArrayList<>());
+    Object value = getFromExpansion(fieldNumber);
+    return value != null ? (Long) value : defaultValue;
   }
 
-  <K, V> HashMap<K, V> ensureMap(int fieldNumber) {
-    if (fieldNumber < pivot) {
-      HashMap<K, V> value = (HashMap<K, V>) getFromArray(fieldNumber);
-      if (value == null) {
-        value = new HashMap<>();
-        setInArray(fieldNumber, value);
+  float getFloat(int fieldNumber, float defaultValue) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      Object value = getSlot(slot);
+      if (value == PrimitiveKind.FLOAT) {
+        return Float.intBitsToFloat((int) getPrimitiveBits(slot));
       }
-      return value;
+      return value != null ? (Float) value : defaultValue;
+    }
+
+    Object value = getFromExpansion(fieldNumber);
+    return value != null ? (Float) value : defaultValue;
+  }
+
+  double getDouble(int fieldNumber, double defaultValue) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      Object value = getSlot(slot);
+      if (value == PrimitiveKind.DOUBLE) {
+        return Double.longBitsToDouble(getPrimitiveBits(slot));
+      }
+      return value != null ? (Double) value : defaultValue;
+    }
+
+    Object value = getFromExpansion(fieldNumber);
+    return value != null ? (Double) value : defaultValue;
+  }
+
+  boolean getBoolean(int fieldNumber, boolean defaultValue) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      Object value = getSlot(slot);
+      if (value == PrimitiveKind.BOOLEAN) {
+        return getPrimitiveBits(slot) != 0;
+      }
+      return value != null ? (Boolean) value : defaultValue;
+    }
+
+    Object value = getFromExpansion(fieldNumber);
+    return value != null ? (Boolean) value : defaultValue;
+  }
+
+  private Object getFromExpansion(int fieldNumber) {
+    return expansion == null ? null : expansion.get(fieldNumber);
+  }
+
+  void addRepeated(int fieldNumber, Object value) {
+    Object list = get(fieldNumber, PersistentList.empty());
+    if (list instanceof PrimitiveList) {
+      PrimitiveList primitiveList = (PrimitiveList) list;
+      put(fieldNumber, primitiveList.plus(owner(), primitiveList.getKind().unbox(value)));
+      return;
+    }
+    put(fieldNumber, ((PersistentList<Object>) list).plus(owner(), value));
+  }
+
+  void setRepeated(int fieldNumber, int index, Object value) {
+    Object list = get(fieldNumber, PersistentList.empty());
+    if (list instanceof PrimitiveList) {
+      PrimitiveList primitiveList = (PrimitiveList) list;
+      put(fieldNumber, primitiveList.with(owner(), index, primitiveList.getKind().unbox(value)));
+      return;
+    }
+    put(fieldNumber, ((PersistentList<Object>) list).with(owner(), index, value));
+  }
+
+  long getRepeatedBits(int fieldNumber, PrimitiveKind kind, int index) {
+    Object list = get(fieldNumber, PrimitiveList.empty(kind));
+    if (list instanceof PrimitiveList) {
+      return ((PrimitiveList) list).getBits(index);
+    }
+    return kind.unbox(((List<?>) list).get(index));
+  }
+
+  void addRepeatedBits(int fieldNumber, PrimitiveKind kind, long bits) {
+    Object list = get(fieldNumber, PrimitiveList.empty(kind));
+    if (list instanceof PrimitiveList) {
+      put(fieldNumber, ((PrimitiveList) list).plus(owner(), bits));
+      return;
+    }
+    // The field was set through the generic list accessors, keep it boxed.
+    addRepeated(fieldNumber, kind.box(bits));
+  }
+
+  void setRepeatedBits(int fieldNumber, PrimitiveKind kind, int index, long bits) {
+    Object list = get(fieldNumber, PrimitiveList.empty(kind));
+    if (list instanceof PrimitiveList) {
+      put(fieldNumber, ((PrimitiveList) list).with(owner(), index, bits));
+      return;
+    }
+    setRepeated(fieldNumber, index, kind.box(bits));
+  }
+
+  void putRepeated(int fieldNumber, Iterable<?> values) {
+    PersistentList<Object> list = PersistentList.empty();
+    for (Object value : values) {
+      list = list.plus(owner(), value);
     }
+    put(fieldNumber, list);
+  }
+
+  void putMapEntry(int fieldNumber, Object key, Object value) {
+    PersistentMap<Object, Object> map = get(fieldNumber, PersistentMap.empty());
+    put(fieldNumber, map.with(owner(), key, value));
+  }
+
+  void removeMapEntry(int fieldNumber, Object key) {
+    PersistentMap<Object, Object> map = get(fieldNumber, PersistentMap.empty());
+    put(fieldNumber, map.without(owner(), key));
+  }
+
+  /** Returns the number of fields kept in the expansion. */
+  int getExpansionSize() {
+    return expansion == null ? 0 : expansion.size();
+  }
+
+  /** Returns the number of the field at the index of the expansion, ordered by field number. */
+  int getExpansionFieldNumberAt(int index) {
+    return expansion.getNumberAt(index);
+  }
 
-    return (HashMap<K, V>) ensureExpension().computeIfAbsent(fieldNumber, k -> new HashMap<>());
+  ByteString getUnknownFields() {
+    return unknownFields;
+  }
+
+  /** Appends the wire format of fields that are not in the schema of the message. */
+  void addUnknownFields(ByteString fields) {
+    if (unknownFields.size() == 0) {
+      unknownFields = fields;
+      return;
+    }
+    byte[] bytes = Arrays.copyOf(unknownFields.bytes, unknownFields.size() + fields.size());
+    System.arraycopy(fields.bytes, 0, bytes, unknownFields.size(), fields.size());
+    unknownFields = ByteString.wrap(bytes);
+  }
+
+  private Object owner() {
+    return owner == null ? owner = new Object() : owner;
   }
 
   boolean has(int fieldNumber) {
-    if (fieldNumber < pivot) {
-      return getFromArray(fieldNumber) != null;
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      return getSlot(slot) != null;
     }
 
     return expansion != null && expansion.containsKey(fieldNumber);
   }
 
   void put(int fieldNumber, Object value) {
-    if (fieldNumber < pivot) {
-      setInArray(fieldNumber, value);
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      setSlot(slot, value);
       return;
     }
 
-    ensureExpension().put(fieldNumber, value);
+    writableExpansion().put(fieldNumber, value);
   }
 
-  void remove(int fieldNumber) {
-    if (fieldNumber < pivot) {
-      int index = fieldNumber - 1;
-      if (index < size) {
-        array[index] = null;
-      }
+  void putInt(int fieldNumber, int value) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      setPrimitiveSlot(slot, PrimitiveKind.INT, value);
       return;
     }
 
-    if (expansion != null) {
-      expansion.remove(fieldNumber);
+    writableExpansion().put(fieldNumber, value);
+  }
+
+  void putLong(int fieldNumber, long value) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      setPrimitiveSlot(slot, PrimitiveKind.LONG, value);
+      return;
     }
+
+    writableExpansion().put(fieldNumber, value);
   }
 
-  FieldStorage copy() {
-    int copySize = size;
-    Object[] copy;
-    if (copySize == 0) {
-      copy = new Object[5]; // Create with an inital size to avoid immediate resizing.
-    } else {
-      copy = Arrays.copyOf(array, copySize);
-      for (int i = 0; i < copySize; i++) {
-        Object field = array[i];
-        if (field instanceof HashMap) {
-          array[i] = (new HashMap<>((HashMap<?, ?>) field));
-        } else if (field instanceof ArrayList) {
-          array[i] = (new ArrayList<>((ArrayList<?>) field));
-        }
-        // other fields are immutable
-      }
+  void putFloat(int fieldNumber, float value) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      // Canonical bits so that storage equality matches Float.equals.
+      setPrimitiveSlot(slot, PrimitiveKind.FLOAT, Float.floatToIntBits(value));
+      return;
     }
-    return new FieldStorage(copy, copyOfExpension(), pivot, copySize);
+
+    writableExpansion().put(fieldNumber, value);
   }
 
-  private HashMap<Integer, Object> copyOfExpension() {
-    if (expansion == null) {
-      return expansion;
-    }
-    HashMap<Integer, Object> copy = new HashMap<>(expansion);
-    for (Map.Entry<Integer, Object> entry : copy.entrySet()) {
-      Object field = entry.getValue();
-      if (field instanceof HashMap) {
-        entry.setValue(new HashMap<>((HashMap<?, ?>) field));
-      } else if (field instanceof ArrayList) {
-        entry.setValue(new ArrayList<>((ArrayList<?>) field));
+  void putDouble(int fieldNumber, double value) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      // Canonical bits so that storage equality matches Double.equals.
+      setPrimitiveSlot(slot, PrimitiveKind.DOUBLE, Double.doubleToLongBits(value));
+      return;
+    }
+
+    writableExpansion().put(fieldNumber, value);
+  }
+
+  void putBoolean(int fieldNumber, boolean value) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      setPrimitiveSlot(slot, PrimitiveKind.BOOLEAN, value ? 1 : 0);
+      return;
+    }
+
+    writableExpansion().put(fieldNumber, value);
+  }
+
+  void remove(int fieldNumber) {
+    int slot = slotOf(fieldNumber);
+    if (slot >= 0) {
+      if (getSlot(slot) != null) {
+        setSlot(slot, null);
       }
-      // other fields are immutable
+      return;
+    }
+
+    if (expansion != null && expansion.containsKey(fieldNumber)) {
+      writableExpansion().remove(fieldNumber);
     }
-    return copy;
+  }
+
+  FieldStorage copy() {
+    // Repeated and map fields are persistent collections that stay shared between both storages.
+    // Dropping the owner makes sure that neither of them updates the shared ones in place anymore.
+    owner = null;
+    // Both storages copy the chunks and the expansion before their next write to them.
+    sharedChunks = -1L;
+    sharedExpansion = expansion != null;
+    return new FieldStorage(this);
   }
 
   public boolean equals(FieldStorage other) {
-    int thisSize = size;
-    int otherSize = other.size;
-    int minArraySize = Math.min(thisSize, otherSize);
-    for (int i = 0; i < minArraySize; i++) {
-      if (!Objects.equals(array[i], other.array[i])) {
-        return false;
+    for (int chunkIndex = 0; chunkIndex < chunkCount(); chunkIndex++) {
+      Object[] chunk = getChunk(chunkIndex);
+      Object[] otherChunk = other.getChunk(chunkIndex);
+      // Chunks are shared until either storage writes to them.
+      if (chunk == otherChunk) {
+        continue;
       }
-    }
-    for (int i = minArraySize; i < thisSize; i++) {
-      if (array[i] != null) {
-        return false;
+      int start = chunkIndex << CHUNK_BITS;
+      for (int index = start; index < start + chunkLength(chunkIndex); index++) {
+        if (!slotEquals(index, other)) {
+          return false;
+        }
       }
     }
-    for (int i = minArraySize; i < otherSize; i++) {
-      if (other.array[i] != null) {
-        return false;
-      }
+    if (!unknownFields.equals(other.unknownFields)) {
+      return false;
     }
     if (expansion == null || expansion.isEmpty()) {
       return other.expansion == null || other.expansion.isEmpty();
@@ -202,14 +480,45 @@ final class FieldStorage {
 
   public int hashCode() {
     int hashCode = 1;
-    for (int i = 0; i < size; i++) {
-      Object e = array[i];
-      // We don't want nulls to contribute hashCode since trailing null doesn't effect equality.
-      if (e != null) {
-        hashCode = 31 * hashCode + e.hashCode();
+    for (int chunkIndex = 0; chunkIndex < chunkCount(); chunkIndex++) {
+      Object[] chunk = getChunk(chunkIndex);
+      if (chunk == null) {
+        continue;
+      }
+      int start = chunkIndex << CHUNK_BITS;
+      for (int index = start; index < start + chunkLength(chunkIndex); index++) {
+        // We don't want nulls to contribute hashCode since trailing null doesn't effect equality.
+        if (chunk[index & CHUNK_MASK] != null) {
+          hashCode = 31 * hashCode + slotHashCode(index);
+        }
       }
     }
+    if (unknownFields.size() != 0) {
+      hashCode = 31 * hashCode + unknownFields.hashCode();
+    }
     int expensionHashCode = (expansion == null || expansion.isEmpty()) ? 0 : expansion.hashCode();
     return 31 * hashCode + expensionHashCode;
   }
+
+  private Object[] getChunk(int chunkIndex) {
+    return chunks == null ? null : chunks[chunkIndex];
+  }
+
+  private boolean slotEquals(int index, FieldStorage other) {
+    Object value = getSlot(index);
+    Object otherValue = other.getSlot(index);
+    if (value instanceof PrimitiveKind && value == otherValue) {
+      return getPrimitiveBits(index) == other.getPrimitiveBits(index);
+    }
+    return Objects.equals(getBoxedSlot(index), other.getBoxedSlot(index));
+  }
+
+  /** Returns the same hash code as the boxed value would, without boxing. */
+  private int slotHashCode(int index) {
+    Object value = getSlot(index);
+    if (!(value instanceof PrimitiveKind)) {
+      return resolve(value).hashCode();
+    }
+    return ((PrimitiveKind) value).hashCode(getPrimitiveBits(index));
+  }
 }
@@ -13,8 +13,8 @@
  */
 package com.google.protobuf;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -39,43 +39,122 @@ public abstract class GeneratedMessageLite<
      */
     boolean immutable;
 
+    /**
+     * The builders returned for message fields, which are stored in the fields in place of the
+     * message until it is built. Entries are stale once their field was set to something else.
+     */
+    private FieldNumberMap childBuilders;
+
     protected Builder(M message) {
       super(message.fields);
       immutable = true;
     }
 
     protected Builder(B builder) {
-      super(builder.fields.copy());
+      super(builder.copyFields());
     }
 
-    protected final B removeField(int fieldNumber) {
+    /** Returns the fields for a message built from this builder. */
+    FieldStorage fieldsForBuild() {
+      if (childBuilders == null) {
+        immutable = true;
+        return fields;
+      }
+      // The child builders stay attached to this builder, so the message gets its own copy.
+      return copyFields();
+    }
+
+    /** Returns a copy of the fields where the child builders are replaced by their messages. */
+    FieldStorage copyFields() {
+      FieldStorage copy = fields.copy();
+      if (childBuilders != null) {
+        for (int i = 0; i < childBuilders.size(); i++) {
+          int fieldNumber = childBuilders.getNumberAt(i);
+          Object childBuilder = childBuilders.getValueAt(i);
+          if (fields.getUnresolved(fieldNumber) == childBuilder) {
+            copy.put(fieldNumber, ((Builder<?, ?>) childBuilder).build());
+          }
+        }
+      }
+      return copy;
+    }
+
+    private void ensureMutable() {
       if (immutable) {
         immutable = false;
         fields = fields.copy();
       }
+    }
+
+    /**
+     * Returns the builder for a message field, which stays attached to this builder until the field
+     * is set to something else. Child builders are built when this builder is.
+     */
+    protected final <T extends GeneratedMessageLite<T, TB>, TB extends Builder<T, TB>>
+        TB getFieldBuilder(int fieldNumber, T defaultValue) {
+      Object value = fields.getUnresolved(fieldNumber);
+      if (value instanceof Builder) {
+        return (TB) value;
+      }
+      ensureMutable();
+      TB childBuilder = fields.get(fieldNumber, defaultValue).toBuilder();
+      fields.put(fieldNumber, childBuilder);
+      if (childBuilders == null) {
+        childBuilders = new FieldNumberMap();
+      }
+      childBuilders.put(fieldNumber, childBuilder);
+      return childBuilder;
+    }
+
+    protected final B removeField(int fieldNumber) {
+      ensureMutable();
       fields.remove(fieldNumber);
       return (B) this;
     }
 
     protected final <E> B setField(int fieldNumber, E value) {
-      if (immutable) {
-        immutable = false;
-        fields = fields.copy();
-      }
+      ensureMutable();
       fields.put(fieldNumber, checkNotNull(value));
       return (B) this;
     }
 
+    protected final B setIntField(int fieldNumber, int value) {
+      ensureMutable();
+      fields.putInt(fieldNumber, value);
+      return (B) this;
+    }
+
+    protected final B setLongField(int fieldNumber, long value) {
+      ensureMutable();
+      fields.putLong(fieldNumber, value);
+      return (B) this;
+    }
+
+    protected final B setFloatField(int fieldNumber, float value) {
+      ensureMutable();
+      fields.putFloat(fieldNumber, value);
+      return (B) this;
+    }
+
+    protected final B setDoubleField(int fieldNumber, double value) {
+      ensureMutable();
+      fields.putDouble(fieldNumber, value);
+      return (B) this;
+    }
+
+    protected final B setBooleanField(int fieldNumber, boolean value) {
+      ensureMutable();
+      fields.putBoolean(fieldNumber, value);
+      return (B) this;
+    }
+
     protected final <E> B setFieldForEnumValue(int fieldNumber, E value, int intValue) {
       return setField(fieldNumber, value == null ? intValue : value);
     }
 
     protected final <E> B addRepeatedField(int fieldNumber, E value) {
-      if (immutable) {
-        immutable = false;
-        fields = fields.copy();
-      }
-      fields.ensureRepeated(fieldNumber).add(checkNotNull(value));
+      ensureMutable();
+      fields.addRepeated(fieldNumber, checkNotNull(value));
       return (B) this;
     }
 
@@ -84,11 +163,69 @@ public abstract class GeneratedMessageLite<
     }
 
     protected final <E> B setRepeatedField(int fieldNumber, int index, E value) {
-      if (immutable) {
-        immutable = false;
-        fields = fields.copy();
-      }
-      fields.ensureRepeated(fieldNumber).set(index, checkNotNull(value));
+      ensureMutable();
+      fields.setRepeated(fieldNumber, index, checkNotNull(value));
+      return (B) this;
+    }
+
+    protected final B addRepeatedIntField(int fieldNumber, int value) {
+      ensureMutable();
+      fields.addRepeatedBits(fieldNumber, PrimitiveKind.INT, value);
+      return (B) this;
+    }
+
+    protected final B setRepeatedIntField(int fieldNumber, int index, int value) {
+      ensureMutable();
+      fields.setRepeatedBits(fieldNumber, PrimitiveKind.INT, index, value);
+      return (B) this;
+    }
+
+    protected final B addRepeatedLongField(int fieldNumber, long value) {
+      ensureMutable();
+      fields.addRepeatedBits(fieldNumber, PrimitiveKind.LONG, value);
+      return (B) this;
+    }
+
+    protected final B setRepeatedLongField(int fieldNumber, int index, long value) {
+      ensureMutable();
+      fields.setRepeatedBits(fieldNumber, PrimitiveKind.LONG, index, value);
+      return (B) this;
+    }
+
+    protected final B addRepeatedFloatField(int fieldNumber, float value) {
+      ensureMutable();
+      fields.addRepeatedBits(fieldNumber, PrimitiveKind.FLOAT, Float.floatToIntBits(value));
+      return (B) this;
+    }
+
+    protected final B setRepeatedFloatField(int fieldNumber, int index, float value) {
+      ensureMutable();
+      fields.setRepeatedBits(fieldNumber, PrimitiveKind.FLOAT, index, Float.floatToIntBits(value));
+      return (B) this;
+    }
+
+    protected final B addRepeatedDoubleField(int fieldNumber, double value) {
+      ensureMutable();
+      fields.addRepeatedBits(fieldNumber, PrimitiveKind.DOUBLE, Double.doubleToLongBits(value));
+      return (B) this;
+    }
+
+    protected final B setRepeatedDoubleField(int fieldNumber, int index, double value) {
+      ensureMutable();
+      fields.setRepeatedBits(
+          fieldNumber, PrimitiveKind.DOUBLE, index, Double.doubleToLongBits(value));
+      return (B) this;
+    }
+
+    protected final B addRepeatedBooleanField(int fieldNumber, boolean value) {
+      ensureMutable();
+      fields.addRepeatedBits(fieldNumber, PrimitiveKind.BOOLEAN, value ? 1 : 0);
+      return (B) this;
+    }
+
+    protected final B setRepeatedBooleanField(int fieldNumber, int index, boolean value) {
+      ensureMutable();
+      fields.setRepeatedBits(fieldNumber, PrimitiveKind.BOOLEAN, index, value ? 1 : 0);
       return (B) this;
     }
 
@@ -98,48 +235,31 @@ public abstract class GeneratedMessageLite<
     }
 
     protected final <E> B addAllRepeatedField(int fieldNumber, Iterable<E> values) {
-      if (immutable) {
-        immutable = false;
-        fields = fields.copy();
-      }
-      ArrayList<E> list = fields.ensureRepeated(fieldNumber);
+      ensureMutable();
       for (E v : values) {
-        list.add(checkNotNull(v));
+        fields.addRepeated(fieldNumber, checkNotNull(v));
       }
       return (B) this;
     }
 
     protected final <K, V> B putMapField(int fieldNumber, K key, V value) {
-      if (immutable) {
-        immutable = false;
-        fields = fields.copy();
-      }
-      fields.ensureMap(fieldNumber).put(checkNotNull(key), checkNotNull(value));
+      ensureMutable();
+      fields.putMapEntry(fieldNumber, checkNotNull(key), checkNotNull(value));
       return (B) this;
     }
 
     protected final <K, V> B putAllMapField(int fieldNumber, Map<K, V> values) {
-      if (immutable) {
-        immutable = false;
-        fields = fields.copy();
-      }
-      HashMap<K, V> map = fields.ensureMap(fieldNumber);
-      if (CHECKS_ENABLED) {
-        for (Map.Entry<K, V> entry : values.entrySet()) {
-          map.put(checkNotNull(entry.getKey()), checkNotNull(entry.getValue()));
-        }
-      } else {
-        map.putAll(values);
+      ensureMutable();
+      for (Map.Entry<K, V> entry : values.entrySet()) {
+        fields.putMapEntry(
+            fieldNumber, checkNotNull(entry.getKey()), checkNotNull(entry.getValue()));
       }
       return (B) this;
     }
 
     protected final <K, V> B removeMapField(int fieldNumber, K key) {
-      if (immutable) {
-        immutable = false;
-        fields = fields.copy();
-      }
-      fields.ensureMap(fieldNumber).remove(checkNotNull(key));
+      ensureMutable();
+      fields.removeMapEntry(fieldNumber, checkNotNull(key));
       return (B) this;
     }
 
@@ -159,7 +279,8 @@ public abstract class GeneratedMessageLite<
     }
 
     public final <E> B setExtension(ExtensionLite<M, List<E>> generatedExtension, List<E> values) {
-      setField(generatedExtension.getNumber(), new ArrayList<>(values));
+      ensureMutable();
+      fields.putRepeated(generatedExtension.getNumber(), checkNotNull(values));
       return (B) this;
     }
 
@@ -170,13 +291,13 @@ public abstract class GeneratedMessageLite<
     }
   }
 
-  protected GeneratedMessageLite(int pivot) {
-    super(FieldStorage.create(pivot));
+  /** Creates the default instance, the fields with the given numbers are stored in slots. */
+  protected GeneratedMessageLite(int[] fieldNumbers) {
+    super(FieldStorage.create(fieldNumbers));
   }
 
   protected GeneratedMessageLite(B builder) {
-    super(builder.fields);
-    builder.immutable = true;
+    super(builder.fieldsForBuild());
   }
 
   @Override
@@ -185,6 +306,65 @@ public abstract class GeneratedMessageLite<
   @Override
   public abstract M getDefaultInstanceForType();
 
+  /** Returns the schema used to parse and serialize the message. */
+  protected abstract MessageSchema internalGetSchema();
+
+  private int memoizedSerializedSize = -1;
+
+  @Override
+  public int getSerializedSize() {
+    if (memoizedSerializedSize == -1) {
+      memoizedSerializedSize = internalGetSchema().getSerializedSize(fields);
+    }
+    return memoizedSerializedSize;
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    byte[] result = new byte[getSerializedSize()];
+    BinaryWriter writer = new BinaryWriter(result);
+    internalGetSchema().writeTo(fields, writer);
+    writer.checkNoSpaceLeft();
+    return result;
+  }
+
+  @Override
+  public ByteString toByteString() {
+    return ByteString.wrap(toByteArray());
+  }
+
+  @Override
+  public void writeTo(OutputStream output) throws IOException {
+    output.write(toByteArray());
+  }
+
+  protected static <M extends GeneratedMessageLite<M, ?>> M parseFrom(
+      M defaultInstance, byte[] data) throws InvalidProtocolBufferException {
+    return parseFrom(defaultInstance, data, 0, data.length);
+  }
+
+  protected static <M extends GeneratedMessageLite<M, ?>> M parseFrom(
+      M defaultInstance, ByteString data) throws InvalidProtocolBufferException {
+    // The reader never exposes the underlying array, so there is no need for a copy.
+    return parseFrom(defaultInstance, data.bytes, 0, data.bytes.length);
+  }
+
+  private static <M extends GeneratedMessageLite<M, ?>> M parseFrom(
+      M defaultInstance, byte[] data, int offset, int length)
+      throws InvalidProtocolBufferException {
+    return (M) mergeFrom(defaultInstance, new BinaryReader(data, offset, length), 0);
+  }
+
+  /** Returns a new message with the fields read from the reader merged into the given message. */
+  static GeneratedMessageLite<?, ?> mergeFrom(
+      GeneratedMessageLite<?, ?> message, BinaryReader reader, int endGroupTag)
+      throws InvalidProtocolBufferException {
+    Builder<?, ?> builder = message.toBuilder();
+    builder.ensureMutable();
+    message.internalGetSchema().mergeFrom(builder.fields, reader, endGroupTag);
+    return builder.build();
+  }
+
   @Override
   public boolean equals(final Object other) {
     if (other == this) {
@@ -197,6 +377,11 @@ public abstract class GeneratedMessageLite<
       return false;
     }
     final GeneratedMessageLite otherMessage = (GeneratedMessageLite) other;
+    // Hash codes are memoized, including those of nested messages, so this rejects most unequal
+    // messages without looking at their fields.
+    if (hashCode != 0 && otherMessage.hashCode != 0 && hashCode != otherMessage.hashCode) {
+      return false;
+    }
 
     return fields.equals(otherMessage.fields);
   }
@@ -25,6 +25,8 @@ import java.util.Set;
 public abstract class GeneratedMessageLiteOrBuilder<M extends MessageLite> {
 
   protected FieldStorage fields;
+  // The views returned by getFieldMap for builders.
+  private FieldNumberMap mapViews;
 
   protected GeneratedMessageLiteOrBuilder(FieldStorage fields) {
     this.fields = fields;
@@ -34,6 +36,26 @@ public abstract class GeneratedMessageLiteOrBuilder<M extends MessageLite> {
     return fields.get(fieldNumber, defaultValue);
   }
 
+  protected final int getIntField(int fieldNumber, int defaultValue) {
+    return fields.getInt(fieldNumber, defaultValue);
+  }
+
+  protected final long getLongField(int fieldNumber, long defaultValue) {
+    return fields.getLong(fieldNumber, defaultValue);
+  }
+
+  protected final float getFloatField(int fieldNumber, float defaultValue) {
+    return fields.getFloat(fieldNumber, defaultValue);
+  }
+
+  protected final double getDoubleField(int fieldNumber, double defaultValue) {
+    return fields.getDouble(fieldNumber, defaultValue);
+  }
+
+  protected final boolean getBooleanField(int fieldNumber, boolean defaultValue) {
+    return fields.getBoolean(fieldNumber, defaultValue);
+  }
+
   protected final <E> E getFieldForEnum(int fieldNumber, E defaultValue, E unrecognizedValue) {
     return getEnumOrUnrecognized(getField(fieldNumber, defaultValue), unrecognizedValue);
   }
@@ -47,8 +69,8 @@ public abstract class GeneratedMessageLiteOrBuilder<M extends MessageLite> {
   }
 
   protected final <E> List<E> getFieldList(int fieldNumber) {
-    List<E> list = getField(fieldNumber, null);
-    return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    // Repeated fields are stored in lists that can't be modified through the List interface.
+    return getField(fieldNumber, Collections.emptyList());
   }
 
   protected final <E> List<E> getFieldListForEnum(int fieldNumber, E unrecognizedValue) {
@@ -63,6 +85,80 @@ public abstract class GeneratedMessageLiteOrBuilder<M extends MessageLite> {
     return fields.get(index);
   }
 
+  protected final int getRepeatedIntField(int fieldNumber, int index) {
+    return (int) fields.getRepeatedBits(fieldNumber, PrimitiveKind.INT, index);
+  }
+
+  protected final long getRepeatedLongField(int fieldNumber, int index) {
+    return fields.getRepeatedBits(fieldNumber, PrimitiveKind.LONG, index);
+  }
+
+  protected final float getRepeatedFloatField(int fieldNumber, int index) {
+    return Float.intBitsToFloat(
+        (int) fields.getRepeatedBits(fieldNumber, PrimitiveKind.FLOAT, index));
+  }
+
+  protected final double getRepeatedDoubleField(int fieldNumber, int index) {
+    return Double.longBitsToDouble(
+        fields.getRepeatedBits(fieldNumber, PrimitiveKind.DOUBLE, index));
+  }
+
+  protected final boolean getRepeatedBooleanField(int fieldNumber, int index) {
+    return fields.getRepeatedBits(fieldNumber, PrimitiveKind.BOOLEAN, index) != 0;
+  }
+
+  protected final int[] getIntArray(int fieldNumber) {
+    List<?> list = fields.get(fieldNumber, PrimitiveList.empty(PrimitiveKind.INT));
+    int[] values = new int[list.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (int) getBits(list, PrimitiveKind.INT, i);
+    }
+    return values;
+  }
+
+  protected final long[] getLongArray(int fieldNumber) {
+    List<?> list = fields.get(fieldNumber, PrimitiveList.empty(PrimitiveKind.LONG));
+    long[] values = new long[list.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getBits(list, PrimitiveKind.LONG, i);
+    }
+    return values;
+  }
+
+  protected final float[] getFloatArray(int fieldNumber) {
+    List<?> list = fields.get(fieldNumber, PrimitiveList.empty(PrimitiveKind.FLOAT));
+    float[] values = new float[list.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Float.intBitsToFloat((int) getBits(list, PrimitiveKind.FLOAT, i));
+    }
+    return values;
+  }
+
+  protected final double[] getDoubleArray(int fieldNumber) {
+    List<?> list = fields.get(fieldNumber, PrimitiveList.empty(PrimitiveKind.DOUBLE));
+    double[] values = new double[list.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Double.longBitsToDouble(getBits(list, PrimitiveKind.DOUBLE, i));
+    }
+    return values;
+  }
+
+  protected final boolean[] getBooleanArray(int fieldNumber) {
+    List<?> list = fields.get(fieldNumber, PrimitiveList.empty(PrimitiveKind.BOOLEAN));
+    boolean[] values = new boolean[list.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getBits(list, PrimitiveKind.BOOLEAN, i) != 0;
+    }
+    return values;
+  }
+
+  // Lists that were set through the generic accessors hold boxed values.
+  private static long getBits(List<?> list, PrimitiveKind kind, int index) {
+    return list instanceof PrimitiveList
+        ? ((PrimitiveList) list).getBits(index)
+        : kind.unbox(list.get(index));
+  }
+
   protected final <E> E getRepeatedFieldForEnum(int fieldNumber, int index, E unrecognizedValue) {
     List<E> fields = getField(fieldNumber, Collections.EMPTY_LIST);
     return getEnumOrUnrecognized(fields.get(index), unrecognizedValue);
@@ -78,24 +174,75 @@ public abstract class GeneratedMessageLiteOrBuilder<M extends MessageLite> {
   }
 
   protected final <K, V> Map<K, V> getFieldMap(int fieldNumber) {
-    return Collections.unmodifiableMap(new InternalMapView<>(fieldNumber));
+    if (this instanceof GeneratedMessageLite) {
+      // The fields of a message never change, so the (immutable) map itself can be returned.
+      return getMapField(fieldNumber);
+    }
+    // The views read through to the current fields, so one per field is enough.
+    if (mapViews == null) {
+      mapViews = new FieldNumberMap();
+    }
+    Map<K, V> mapView = (Map<K, V>) mapViews.get(fieldNumber);
+    if (mapView == null) {
+      mapView = Collections.unmodifiableMap(new InternalMapView<>(fieldNumber));
+      mapViews.put(fieldNumber, mapView);
+    }
+    return mapView;
   }
 
-  protected final <K, V> V getOrThrow(int fieldNumber, K key) {
-    Map<K, V> map = getField(fieldNumber, Collections.EMPTY_MAP);
-    V value = map.get(key);
-    if (value == null) {
-      throw new IllegalArgumentException("Unknown key");
-    }
-    return value;
+  protected final int getMapFieldCount(int fieldNumber) {
+    return getMapField(fieldNumber).size();
+  }
+
+  protected final boolean containsMapKey(int fieldNumber, Object key) {
+    return getMapField(fieldNumber).get(key) != null;
+  }
+
+  protected final boolean containsMapKey(int fieldNumber, int key) {
+    return getMapField(fieldNumber).getForIntKey(key) != null;
+  }
+
+  protected final boolean containsMapKey(int fieldNumber, long key) {
+    return getMapField(fieldNumber).getForLongKey(key) != null;
   }
 
-  protected final <K, V> V getOrDefault(int fieldNumber, K key, V defaultValue) {
+  /** Returns the value for the key, or null if there is none. */
+  protected final <V> V getMapValue(int fieldNumber, Object key) {
     if (key == null) {
       throw new NullPointerException();
     }
-    Map<K, V> map = getField(fieldNumber, Collections.EMPTY_MAP);
-    return map.getOrDefault(key, defaultValue);
+    return this.<Object, V>getMapField(fieldNumber).get(key);
+  }
+
+  protected final <V> V getMapValue(int fieldNumber, int key) {
+    return this.<Object, V>getMapField(fieldNumber).getForIntKey(key);
+  }
+
+  protected final <V> V getMapValue(int fieldNumber, long key) {
+    return this.<Object, V>getMapField(fieldNumber).getForLongKey(key);
+  }
+
+  protected final <V> V getOrThrow(int fieldNumber, Object key) {
+    return checkKnownKey(this.<Object, V>getMapField(fieldNumber).get(key));
+  }
+
+  protected final <V> V getOrThrow(int fieldNumber, int key) {
+    return checkKnownKey(this.<Object, V>getMapField(fieldNumber).getForIntKey(key));
+  }
+
+  protected final <V> V getOrThrow(int fieldNumber, long key) {
+    return checkKnownKey(this.<Object, V>getMapField(fieldNumber).getForLongKey(key));
+  }
+
+  private <K, V> PersistentMap<K, V> getMapField(int fieldNumber) {
+    return getField(fieldNumber, PersistentMap.empty());
+  }
+
+  private static <V> V checkKnownKey(V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Unknown key");
+    }
+    return value;
   }
 
   public final <E> E getExtension(ExtensionLite<M, E> generatedExtension) {
@@ -20,6 +20,10 @@ import java.io.IOException;
  * malformed varint or a negative byte length.
  */
 public class InvalidProtocolBufferException extends IOException {
+  public InvalidProtocolBufferException(String message) {
+    super(message);
+  }
+
   public InvalidProtocolBufferException(String message, Throwable cause) {
     super(message, cause);
   }
@@ -27,4 +31,36 @@ public class InvalidProtocolBufferException extends IOException {
   public static InvalidProtocolBufferException conversionError(Throwable cause) {
     return new InvalidProtocolBufferException("Failed to convert protobuf to binary", cause);
   }
+
+  static InvalidProtocolBufferException truncatedMessage() {
+    return new InvalidProtocolBufferException(
+        "While parsing a protocol message, the input ended unexpectedly in the middle of a field.");
+  }
+
+  static InvalidProtocolBufferException negativeSize() {
+    return new InvalidProtocolBufferException(
+        "Protocol message contained an embedded message or string with negative length.");
+  }
+
+  static InvalidProtocolBufferException malformedVarint() {
+    return new InvalidProtocolBufferException("Protocol message contained a malformed varint.");
+  }
+
+  static InvalidProtocolBufferException invalidTag() {
+    return new InvalidProtocolBufferException("Protocol message contained an invalid tag (zero).");
+  }
+
+  static InvalidProtocolBufferException invalidEndTag() {
+    return new InvalidProtocolBufferException(
+        "Protocol message end-group tag did not match expected tag.");
+  }
+
+  static InvalidProtocolBufferException invalidWireType() {
+    return new InvalidProtocolBufferException("Protocol message tag had invalid wire type.");
+  }
+
+  static InvalidProtocolBufferException recursionLimitExceeded() {
+    return new InvalidProtocolBufferException(
+        "Protocol message had too many levels of nesting.");
+  }
 }
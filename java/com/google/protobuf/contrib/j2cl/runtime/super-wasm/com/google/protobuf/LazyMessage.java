@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * A parsed {@code [lazy = true]} message field that is kept in its serialized form until it is
+ * first read, in the style of {@code LazyFieldLite}.
+ *
+ * <p>Messages that are only passed along are written back from the bytes without ever being
+ * decoded. As with {@code LazyFieldLite}, bytes that turn out to be invalid when they are decoded
+ * read as the default instance. They are still written back as they were parsed, so that the size
+ * of the field doesn't change once it was computed.
+ */
+final class LazyMessage {
+
+  /** Returns the value, decoding it first if it is a lazy message. */
+  static Object resolve(Object value) {
+    return value instanceof LazyMessage ? ((LazyMessage) value).getValue() : value;
+  }
+
+  private final Supplier<? extends GeneratedMessageLite<?, ?>> defaultInstance;
+  private final ByteString bytes;
+  // Decoded on first access. The bytes are immutable so this is the same for every reader.
+  private GeneratedMessageLite<?, ?> value;
+
+  LazyMessage(Supplier<? extends GeneratedMessageLite<?, ?>> defaultInstance, ByteString bytes) {
+    this.defaultInstance = defaultInstance;
+    this.bytes = bytes;
+  }
+
+  GeneratedMessageLite<?, ?> getValue() {
+    if (value == null) {
+      GeneratedMessageLite<?, ?> defaultValue = defaultInstance.get();
+      try {
+        value =
+            GeneratedMessageLite.mergeFrom(
+                defaultValue, new BinaryReader(bytes.bytes, 0, bytes.size()), 0);
+      } catch (InvalidProtocolBufferException e) {
+        value = defaultValue;
+      }
+    }
+    return value;
+  }
+
+  /** Returns the serialized message, without the length prefix. */
+  ByteString toByteString() {
+    return bytes;
+  }
+
+  /**
+   * Returns the lazy message for another occurrence of the field, which is merged into this one.
+   * Concatenating the bytes is all that is needed to merge serialized messages.
+   */
+  LazyMessage merge(ByteString other) {
+    if (bytes.size() == 0) {
+      return new LazyMessage(defaultInstance, other);
+    }
+    byte[] merged = Arrays.copyOf(bytes.bytes, bytes.size() + other.size());
+    System.arraycopy(other.bytes, 0, merged, bytes.size(), other.size());
+    return new LazyMessage(defaultInstance, ByteString.wrap(merged));
+  }
+}
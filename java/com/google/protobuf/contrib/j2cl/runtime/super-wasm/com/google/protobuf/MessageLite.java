@@ -13,6 +13,9 @@
  */
 package com.google.protobuf;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /** J2Wasm emulation of MessageLite. */
 public interface MessageLite {
 
@@ -27,4 +30,12 @@ public interface MessageLite {
   Builder toBuilder();
 
   MessageLite getDefaultInstanceForType();
+
+  int getSerializedSize();
+
+  byte[] toByteArray();
+
+  ByteString toByteString();
+
+  void writeTo(OutputStream output) throws IOException;
 }
@@ -0,0 +1,909 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Describes the fields of a J2Wasm message and implements the binary wire format on top of its
+ * {@link FieldStorage}.
+ *
+ * <p>Singular numeric fields are read and written as raw bits so that decoding them does not
+ * allocate. Fields that are not in the schema, including extensions and unknown values of closed
+ * enums, are kept in their wire format and written back after the known fields. Extensions set
+ * through the builder can't be serialized.
+ *
+ * <p>DO NOT USE OUTSIDE OF PROTO CODE GENERATION!
+ */
+@SuppressWarnings("unchecked")
+public final class MessageSchema {
+
+  // Field types, numbered as in FieldDescriptorProto.Type.
+  public static final int TYPE_DOUBLE = 1;
+  public static final int TYPE_FLOAT = 2;
+  public static final int TYPE_INT64 = 3;
+  public static final int TYPE_UINT64 = 4;
+  public static final int TYPE_INT32 = 5;
+  public static final int TYPE_FIXED64 = 6;
+  public static final int TYPE_FIXED32 = 7;
+  public static final int TYPE_BOOL = 8;
+  public static final int TYPE_STRING = 9;
+  public static final int TYPE_GROUP = 10;
+  public static final int TYPE_MESSAGE = 11;
+  public static final int TYPE_BYTES = 12;
+  public static final int TYPE_UINT32 = 13;
+  public static final int TYPE_ENUM = 14;
+  public static final int TYPE_SFIXED32 = 15;
+  public static final int TYPE_SFIXED64 = 16;
+  public static final int TYPE_SINT32 = 17;
+  public static final int TYPE_SINT64 = 18;
+
+  // Field modifiers.
+  public static final int REPEATED = 1;
+  public static final int PACKED = 1 << 1;
+  /** The field has no hasser, default values are not serialized. */
+  public static final int IMPLICIT_PRESENCE = 1 << 2;
+  /** Unknown values of the enum are dropped rather than kept as numbers. */
+  public static final int CLOSED_ENUM = 1 << 3;
+  /** The message field is marked {@code [lazy = true]}, it is decoded when it is first read. */
+  public static final int LAZY = 1 << 4;
+
+  private static final int MAP = 1 << 5;
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Builder for the schema of a message. Fields can be added in any order. */
+  public static final class Builder {
+    private final ArrayList<FieldInfo> fields = new ArrayList<>();
+
+    private Builder() {}
+
+    public Builder addField(int number, int type, int modifiers) {
+      return add(new FieldInfo(number, type, modifiers, 0, null));
+    }
+
+    public Builder addMessageField(
+        int number,
+        int type,
+        int modifiers,
+        Supplier<? extends GeneratedMessageLite<?, ?>> defaultInstance) {
+      return add(new FieldInfo(number, type, modifiers, 0, defaultInstance));
+    }
+
+    public Builder addEnumField(
+        int number, int modifiers, IntFunction<? extends ProtocolMessageEnum> forNumber) {
+      return add(new FieldInfo(number, TYPE_ENUM, modifiers, 0, forNumber));
+    }
+
+    public Builder addMapField(int number, int keyType, int valueType) {
+      return add(new FieldInfo(number, keyType, MAP, valueType, null));
+    }
+
+    public Builder addMapMessageField(
+        int number, int keyType, Supplier<? extends GeneratedMessageLite<?, ?>> defaultInstance) {
+      return add(new FieldInfo(number, keyType, MAP, TYPE_MESSAGE, defaultInstance));
+    }
+
+    public Builder addMapEnumField(
+        int number,
+        int keyType,
+        int valueModifiers,
+        IntFunction<? extends ProtocolMessageEnum> forNumber) {
+      int modifiers = MAP | (valueModifiers & CLOSED_ENUM);
+      return add(new FieldInfo(number, keyType, modifiers, TYPE_ENUM, forNumber));
+    }
+
+    /** Groups the given fields into a oneof, setting one of them clears the others. */
+    public Builder addOneof(int... fieldNumbers) {
+      for (FieldInfo field : fields) {
+        for (int fieldNumber : fieldNumbers) {
+          if (field.number == fieldNumber) {
+            field.oneof = fieldNumbers;
+          }
+        }
+      }
+      return this;
+    }
+
+    private Builder add(FieldInfo field) {
+      fields.add(field);
+      return this;
+    }
+
+    public MessageSchema build() {
+      FieldInfo[] sorted = fields.toArray(new FieldInfo[0]);
+      Arrays.sort(sorted, (a, b) -> Integer.compare(a.number, b.number));
+      return new MessageSchema(sorted);
+    }
+  }
+
+  private static final class FieldInfo {
+    final int number;
+    // The type of the field or the key type for map fields.
+    final int type;
+    final int modifiers;
+    final int valueType;
+    // Supplier of the default instance for messages, forNumber function for enums.
+    final Object helper;
+    int[] oneof;
+
+    FieldInfo(int number, int type, int modifiers, int valueType, Object helper) {
+      this.number = number;
+      this.type = type;
+      this.modifiers = modifiers;
+      this.valueType = valueType;
+      this.helper = helper;
+    }
+
+    boolean is(int modifier) {
+      return (modifiers & modifier) != 0;
+    }
+  }
+
+  // Sorted by field number.
+  private final FieldInfo[] fields;
+
+  private MessageSchema(FieldInfo[] fields) {
+    this.fields = fields;
+  }
+
+  /** Returns the index of the field with the given number, or -1 if there is none. */
+  private int findField(int fieldNumber, int previous) {
+    // Fields usually arrive in order, so try the previous field and the one following it first.
+    if (previous < fields.length && fields[previous].number == fieldNumber) {
+      return previous;
+    }
+    int next = previous + 1;
+    if (next < fields.length && fields[next].number == fieldNumber) {
+      return next;
+    }
+    int low = 0;
+    int high = fields.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midNumber = fields[mid].number;
+      if (midNumber < fieldNumber) {
+        low = mid + 1;
+      } else if (midNumber > fieldNumber) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads fields until the end of the current limit, or until the end group tag if {@code
+   * endGroupTag} is not 0, and merges them into the storage.
+   */
+  void mergeFrom(FieldStorage storage, BinaryReader reader, int endGroupTag)
+      throws InvalidProtocolBufferException {
+    int previous = 0;
+    // Consecutive unknown fields are kept as a single range of the input.
+    int unknownStart = -1;
+    int tagStart;
+    while (true) {
+      tagStart = reader.getPosition();
+      int tag = reader.readTag();
+      if (tag == 0 || WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_END_GROUP) {
+        break;
+      }
+      int index = findField(WireFormat.getTagFieldNumber(tag), previous);
+      if (index == -1
+          || !mergeField(storage, reader, fields[index], WireFormat.getTagWireType(tag))) {
+        if (unknownStart == -1) {
+          unknownStart = tagStart;
+        }
+        reader.skipField(tag);
+        continue;
+      }
+      if (unknownStart != -1) {
+        storage.addUnknownFields(reader.getRawBytes(unknownStart, tagStart));
+        unknownStart = -1;
+      }
+      previous = index;
+    }
+    if (unknownStart != -1) {
+      storage.addUnknownFields(reader.getRawBytes(unknownStart, tagStart));
+    }
+    reader.checkLastTagWas(endGroupTag);
+  }
+
+  /** Returns false if the wire type does not match the field, in which case it is skipped. */
+  private static boolean mergeField(
+      FieldStorage storage, BinaryReader reader, FieldInfo field, int wireType)
+      throws InvalidProtocolBufferException {
+    int number = field.number;
+    int type = field.type;
+
+    if (field.is(MAP)) {
+      if (wireType != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+        return false;
+      }
+      mergeMapEntry(storage, number, reader, field);
+      return true;
+    }
+
+    if (field.is(REPEATED)) {
+      boolean packed = wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED && isPackable(type);
+      if (!packed && wireType != getWireType(type)) {
+        return false;
+      }
+      if (packed) {
+        int oldLimit = reader.pushLimit(reader.readLength());
+        while (!reader.isAtLimit()) {
+          addRepeatedScalar(storage, field, readBits(reader, type));
+        }
+        reader.popLimit(oldLimit);
+      } else if (isPackable(type)) {
+        addRepeatedScalar(storage, field, readBits(reader, type));
+      } else {
+        storage.addRepeated(number, readValue(reader, field, type, number, null));
+      }
+      return true;
+    }
+
+    if (wireType != getWireType(type)) {
+      return false;
+    }
+    if (field.oneof != null) {
+      for (int other : field.oneof) {
+        if (other != number) {
+          storage.remove(other);
+        }
+      }
+    }
+    switch (type) {
+      case TYPE_MESSAGE:
+        {
+          if (!field.is(LAZY)) {
+            storage.put(number, readValue(reader, field, type, number, storage.get(number, null)));
+            return true;
+          }
+          Object existing = storage.getUnresolved(number);
+          if (existing == null) {
+            storage.put(number, new LazyMessage(getDefaultInstance(field), reader.readBytes()));
+          } else if (existing instanceof LazyMessage) {
+            storage.put(number, ((LazyMessage) existing).merge(reader.readBytes()));
+          } else {
+            storage.put(number, readValue(reader, field, type, number, existing));
+          }
+          return true;
+        }
+      case TYPE_STRING:
+      case TYPE_BYTES:
+      case TYPE_GROUP:
+        storage.put(number, readValue(reader, field, type, number, storage.get(number, null)));
+        return true;
+      case TYPE_ENUM:
+        int enumNumber = (int) readBits(reader, type);
+        Object value = toEnum(field, enumNumber);
+        if (value != null) {
+          storage.put(number, value);
+        } else {
+          addUnknownEnumValue(storage, number, enumNumber);
+        }
+        return true;
+      default:
+        putScalar(storage, number, type, readBits(reader, type));
+        return true;
+    }
+  }
+
+  private static void addRepeatedScalar(FieldStorage storage, FieldInfo field, long bits) {
+    if (field.type == TYPE_ENUM) {
+      Object value = toEnum(field, (int) bits);
+      if (value != null) {
+        storage.addRepeated(field.number, value);
+      } else {
+        addUnknownEnumValue(storage, field.number, (int) bits);
+      }
+    } else {
+      PrimitiveKind kind = getPrimitiveKind(field.type);
+      storage.addRepeatedBits(field.number, kind, kind.canonicalize(bits));
+    }
+  }
+
+  /** Returns how repeated fields of the scalar type are stored unboxed. */
+  private static PrimitiveKind getPrimitiveKind(int type) {
+    switch (type) {
+      case TYPE_DOUBLE:
+        return PrimitiveKind.DOUBLE;
+      case TYPE_FLOAT:
+        return PrimitiveKind.FLOAT;
+      case TYPE_INT64:
+      case TYPE_UINT64:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+      case TYPE_SINT64:
+        return PrimitiveKind.LONG;
+      case TYPE_BOOL:
+        return PrimitiveKind.BOOLEAN;
+      default:
+        return PrimitiveKind.INT;
+    }
+  }
+
+  /** Returns the enum for the number, the number itself for unknown values of open enums. */
+  private static Object toEnum(FieldInfo field, int number) {
+    Object value = ((IntFunction<?>) field.helper).apply(number);
+    if (value == null && !field.is(CLOSED_ENUM)) {
+      return number;
+    }
+    return value;
+  }
+
+  /** Keeps an unknown value of a closed enum as an unknown varint field, as lite does. */
+  private static void addUnknownEnumValue(FieldStorage storage, int number, int value) {
+    byte[] bytes =
+        new byte[BinaryWriter.computeTagSize(number) + BinaryWriter.computeRawVarint64Size(value)];
+    BinaryWriter writer = new BinaryWriter(bytes);
+    writer.writeTag(number, WireFormat.WIRETYPE_VARINT);
+    // Negative values are sign extended like those of int32 fields.
+    writer.writeRawVarint64(value);
+    storage.addUnknownFields(ByteString.wrap(bytes));
+  }
+
+  private static void mergeMapEntry(
+      FieldStorage storage, int number, BinaryReader reader, FieldInfo field)
+      throws InvalidProtocolBufferException {
+    int keyType = field.type;
+    int valueType = field.valueType;
+    Object key = getDefaultValue(keyType, field);
+    Object value = null;
+
+    int oldLimit = reader.pushLimit(reader.readLength());
+    while (true) {
+      int tag = reader.readTag();
+      if (tag == 0) {
+        break;
+      }
+      if (tag == WireFormat.makeTag(1, getWireType(keyType))) {
+        key = readValue(reader, field, keyType, 1, null);
+      } else if (tag == WireFormat.makeTag(2, getWireType(valueType))) {
+        value = readValue(reader, field, valueType, 2, value);
+      } else if (!reader.skipField(tag)) {
+        throw InvalidProtocolBufferException.invalidEndTag();
+      }
+    }
+    reader.popLimit(oldLimit);
+
+    if (value == null) {
+      value = getDefaultValue(valueType, field);
+    }
+    if (valueType == TYPE_ENUM) {
+      // Map views can't represent unknown enum values, so their entries are dropped.
+      if (value instanceof Integer) {
+        value = ((IntFunction<?>) field.helper).apply((Integer) value);
+      }
+      if (value == null) {
+        return;
+      }
+    }
+    storage.putMapEntry(number, key, value);
+  }
+
+  private static Object getDefaultValue(int type, FieldInfo field) {
+    switch (type) {
+      case TYPE_STRING:
+        return "";
+      case TYPE_BYTES:
+        return ByteString.EMPTY;
+      case TYPE_MESSAGE:
+        return ((Supplier<?>) field.helper).get();
+      case TYPE_ENUM:
+        return 0;
+      default:
+        return box(type, 0);
+    }
+  }
+
+  /**
+   * Reads a single value of the given type in its boxed form. Messages are merged into {@code
+   * existing} if it is not null. Enums are returned as their number.
+   */
+  private static Object readValue(
+      BinaryReader reader, FieldInfo field, int type, int number, Object existing)
+      throws InvalidProtocolBufferException {
+    switch (type) {
+      case TYPE_STRING:
+        return reader.readString();
+      case TYPE_BYTES:
+        return reader.readBytes();
+      case TYPE_MESSAGE:
+        {
+          int oldLimit = reader.pushLimit(reader.readLength());
+          Object message = readMessage(reader, field, existing, 0);
+          reader.popLimit(oldLimit);
+          return message;
+        }
+      case TYPE_GROUP:
+        return readMessage(
+            reader, field, existing, WireFormat.makeTag(number, WireFormat.WIRETYPE_END_GROUP));
+      case TYPE_ENUM:
+        return (int) readBits(reader, type);
+      default:
+        return box(type, readBits(reader, type));
+    }
+  }
+
+  private static Object readMessage(
+      BinaryReader reader, FieldInfo field, Object existing, int endGroupTag)
+      throws InvalidProtocolBufferException {
+    GeneratedMessageLite<?, ?> message =
+        existing != null ? (GeneratedMessageLite<?, ?>) existing : getDefaultInstance(field).get();
+    reader.enterMessage();
+    message = GeneratedMessageLite.mergeFrom(message, reader, endGroupTag);
+    reader.exitMessage();
+    return message;
+  }
+
+  private static Supplier<? extends GeneratedMessageLite<?, ?>> getDefaultInstance(
+      FieldInfo field) {
+    return (Supplier<? extends GeneratedMessageLite<?, ?>>) field.helper;
+  }
+
+  private static long readBits(BinaryReader reader, int type)
+      throws InvalidProtocolBufferException {
+    switch (type) {
+      case TYPE_DOUBLE:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+        return reader.readRawLittleEndian64();
+      case TYPE_FLOAT:
+      case TYPE_FIXED32:
+      case TYPE_SFIXED32:
+        return reader.readRawLittleEndian32();
+      case TYPE_INT64:
+      case TYPE_UINT64:
+        return reader.readRawVarint64();
+      case TYPE_INT32:
+      case TYPE_UINT32:
+      case TYPE_ENUM:
+        return reader.readRawVarint32();
+      case TYPE_BOOL:
+        return reader.readRawVarint64() != 0 ? 1 : 0;
+      case TYPE_SINT32:
+        return WireFormat.decodeZigZag32(reader.readRawVarint32());
+      case TYPE_SINT64:
+        return WireFormat.decodeZigZag64(reader.readRawVarint64());
+      default:
+        throw new AssertionError("Not a scalar type: " + type);
+    }
+  }
+
+  private static void putScalar(FieldStorage storage, int number, int type, long bits) {
+    switch (type) {
+      case TYPE_DOUBLE:
+        storage.putDouble(number, Double.longBitsToDouble(bits));
+        return;
+      case TYPE_FLOAT:
+        storage.putFloat(number, Float.intBitsToFloat((int) bits));
+        return;
+      case TYPE_INT64:
+      case TYPE_UINT64:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+      case TYPE_SINT64:
+        storage.putLong(number, bits);
+        return;
+      case TYPE_BOOL:
+        storage.putBoolean(number, bits != 0);
+        return;
+      default:
+        storage.putInt(number, (int) bits);
+    }
+  }
+
+  private static long getScalar(FieldStorage storage, int number, int type) {
+    switch (type) {
+      case TYPE_DOUBLE:
+        return Double.doubleToRawLongBits(storage.getDouble(number, 0));
+      case TYPE_FLOAT:
+        return Float.floatToRawIntBits(storage.getFloat(number, 0));
+      case TYPE_INT64:
+      case TYPE_UINT64:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+      case TYPE_SINT64:
+        return storage.getLong(number, 0);
+      case TYPE_BOOL:
+        return storage.getBoolean(number, false) ? 1 : 0;
+      default:
+        return storage.getInt(number, 0);
+    }
+  }
+
+  private static Object box(int type, long bits) {
+    switch (type) {
+      case TYPE_DOUBLE:
+        return Double.longBitsToDouble(bits);
+      case TYPE_FLOAT:
+        return Float.intBitsToFloat((int) bits);
+      case TYPE_INT64:
+      case TYPE_UINT64:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+      case TYPE_SINT64:
+        return bits;
+      case TYPE_BOOL:
+        return bits != 0;
+      default:
+        return (int) bits;
+    }
+  }
+
+  private static long unbox(int type, Object value) {
+    switch (type) {
+      case TYPE_DOUBLE:
+        return Double.doubleToRawLongBits((Double) value);
+      case TYPE_FLOAT:
+        return Float.floatToRawIntBits((Float) value);
+      case TYPE_INT64:
+      case TYPE_UINT64:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+      case TYPE_SINT64:
+        return (Long) value;
+      case TYPE_BOOL:
+        return ((Boolean) value) ? 1 : 0;
+      case TYPE_ENUM:
+        return getEnumNumber(value);
+      default:
+        return (Integer) value;
+    }
+  }
+
+  private static int getEnumNumber(Object enumOrIntValue) {
+    if (enumOrIntValue instanceof Integer) {
+      return (Integer) enumOrIntValue;
+    }
+    return ((ProtocolMessageEnum) enumOrIntValue).getNumber();
+  }
+
+  private static boolean isPackable(int type) {
+    return getWireType(type) != WireFormat.WIRETYPE_LENGTH_DELIMITED
+        && type != TYPE_GROUP;
+  }
+
+  private static int getWireType(int type) {
+    switch (type) {
+      case TYPE_DOUBLE:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+        return WireFormat.WIRETYPE_FIXED64;
+      case TYPE_FLOAT:
+      case TYPE_FIXED32:
+      case TYPE_SFIXED32:
+        return WireFormat.WIRETYPE_FIXED32;
+      case TYPE_STRING:
+      case TYPE_BYTES:
+      case TYPE_MESSAGE:
+        return WireFormat.WIRETYPE_LENGTH_DELIMITED;
+      case TYPE_GROUP:
+        return WireFormat.WIRETYPE_START_GROUP;
+      default:
+        return WireFormat.WIRETYPE_VARINT;
+    }
+  }
+
+  int getSerializedSize(FieldStorage storage) {
+    checkNoExtensions(storage);
+    int size = storage.getUnknownFields().size();
+    for (FieldInfo field : fields) {
+      size += computeFieldSize(storage, field);
+    }
+    return size;
+  }
+
+  /**
+   * Fails if an extension was set through the builder. Their type isn't known, so they can't be
+   * serialized, and leaving them out would silently lose data.
+   */
+  private void checkNoExtensions(FieldStorage storage) {
+    // Fields in the schema are only in the expansion if they don't fit in the slots.
+    for (int i = 0; i < storage.getExpansionSize(); i++) {
+      int fieldNumber = storage.getExpansionFieldNumberAt(i);
+      if (findField(fieldNumber, 0) == -1) {
+        throw new UnsupportedOperationException(
+            "Extension " + fieldNumber + " is set, J2Wasm can't serialize extensions.");
+      }
+    }
+  }
+
+  private static int computeFieldSize(FieldStorage storage, FieldInfo field) {
+    int number = field.number;
+    if (!storage.has(number)) {
+      return 0;
+    }
+    int type = field.type;
+    int tagSize = BinaryWriter.computeTagSize(number);
+
+    if (field.is(MAP)) {
+      int size = 0;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) storage.get(number, null)).entrySet()) {
+        int entrySize = computeMapEntrySize(field, entry);
+        size += tagSize + BinaryWriter.computeRawVarint32Size(entrySize) + entrySize;
+      }
+      return size;
+    }
+
+    if (field.is(REPEATED)) {
+      List<?> list = storage.get(number, null);
+      if (list.isEmpty()) {
+        return 0;
+      }
+      if (field.is(PACKED)) {
+        int dataSize = computePackedDataSize(list, type);
+        return tagSize + BinaryWriter.computeRawVarint32Size(dataSize) + dataSize;
+      }
+      if (list instanceof PrimitiveList) {
+        PrimitiveList primitiveList = (PrimitiveList) list;
+        int size = 0;
+        for (int i = 0; i < primitiveList.size(); i++) {
+          size += tagSize + computeScalarSize(type, primitiveList.getBits(i));
+        }
+        return size;
+      }
+      int size = 0;
+      for (Object value : list) {
+        size += computeTaggedValueSize(tagSize, type, value);
+      }
+      return size;
+    }
+
+    if (isPackable(type) && type != TYPE_ENUM) {
+      long bits = getScalar(storage, number, type);
+      if (bits == 0 && field.is(IMPLICIT_PRESENCE)) {
+        return 0;
+      }
+      return tagSize + computeScalarSize(type, bits);
+    }
+    Object value = storage.getUnresolved(number);
+    if (value instanceof LazyMessage) {
+      // Serialized messages are length delimited just like bytes.
+      return computeTaggedValueSize(tagSize, TYPE_BYTES, ((LazyMessage) value).toByteString());
+    }
+    value = storage.get(number, null);
+    if (field.is(IMPLICIT_PRESENCE) && isDefaultValue(type, value)) {
+      return 0;
+    }
+    return computeTaggedValueSize(tagSize, type, value);
+  }
+
+  private static int computeMapEntrySize(FieldInfo field, Map.Entry<?, ?> entry) {
+    // Key and value have field numbers 1 and 2, so their tags are a single byte.
+    return computeTaggedValueSize(1, field.type, entry.getKey())
+        + computeTaggedValueSize(1, field.valueType, entry.getValue());
+  }
+
+  private static int computePackedDataSize(List<?> list, int type) {
+    int size = 0;
+    for (int i = 0; i < list.size(); i++) {
+      size += computeScalarSize(type, getBits(list, i, type));
+    }
+    return size;
+  }
+
+  /** Returns the bits of the element, without boxing it if the list stores bits. */
+  private static long getBits(List<?> list, int index, int type) {
+    return list instanceof PrimitiveList
+        ? ((PrimitiveList) list).getBits(index)
+        : unbox(type, list.get(index));
+  }
+
+  private static int computeTaggedValueSize(int tagSize, int type, Object value) {
+    switch (type) {
+      case TYPE_STRING:
+        return tagSize + BinaryWriter.computeStringSize((String) value);
+      case TYPE_BYTES:
+        return tagSize + BinaryWriter.computeBytesSize((ByteString) value);
+      case TYPE_MESSAGE:
+        {
+          int size = ((GeneratedMessageLite<?, ?>) value).getSerializedSize();
+          return tagSize + BinaryWriter.computeRawVarint32Size(size) + size;
+        }
+      case TYPE_GROUP:
+        return 2 * tagSize + ((GeneratedMessageLite<?, ?>) value).getSerializedSize();
+      default:
+        return tagSize + computeScalarSize(type, unbox(type, value));
+    }
+  }
+
+  private static int computeScalarSize(int type, long bits) {
+    switch (type) {
+      case TYPE_DOUBLE:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+        return 8;
+      case TYPE_FLOAT:
+      case TYPE_FIXED32:
+      case TYPE_SFIXED32:
+        return 4;
+      case TYPE_BOOL:
+        return 1;
+      case TYPE_INT64:
+      case TYPE_UINT64:
+        return BinaryWriter.computeRawVarint64Size(bits);
+      case TYPE_UINT32:
+        return BinaryWriter.computeRawVarint32Size((int) bits);
+      case TYPE_SINT32:
+        return BinaryWriter.computeRawVarint32Size(WireFormat.encodeZigZag32((int) bits));
+      case TYPE_SINT64:
+        return BinaryWriter.computeRawVarint64Size(WireFormat.encodeZigZag64(bits));
+      default:
+        // Negative int32 and enum values are sign extended to 10 bytes.
+        return BinaryWriter.computeRawVarint64Size((int) bits);
+    }
+  }
+
+  private static boolean isDefaultValue(int type, Object value) {
+    switch (type) {
+      case TYPE_STRING:
+        return ((String) value).isEmpty();
+      case TYPE_BYTES:
+        return ((ByteString) value).size() == 0;
+      case TYPE_ENUM:
+        return getEnumNumber(value) == 0;
+      default:
+        return false;
+    }
+  }
+
+  void writeTo(FieldStorage storage, BinaryWriter writer) {
+    checkNoExtensions(storage);
+    for (FieldInfo field : fields) {
+      writeField(storage, field, writer);
+    }
+    writer.writeRawBytes(storage.getUnknownFields());
+  }
+
+  private static void writeField(FieldStorage storage, FieldInfo field, BinaryWriter writer) {
+    int number = field.number;
+    if (!storage.has(number)) {
+      return;
+    }
+    int type = field.type;
+
+    if (field.is(MAP)) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) storage.get(number, null)).entrySet()) {
+        writer.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writer.writeRawVarint32(computeMapEntrySize(field, entry));
+        writeValue(writer, 1, field.type, entry.getKey());
+        writeValue(writer, 2, field.valueType, entry.getValue());
+      }
+      return;
+    }
+
+    if (field.is(REPEATED)) {
+      List<?> list = storage.get(number, null);
+      if (list.isEmpty()) {
+        return;
+      }
+      if (field.is(PACKED)) {
+        writer.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writer.writeRawVarint32(computePackedDataSize(list, type));
+        for (int i = 0; i < list.size(); i++) {
+          writeScalar(writer, type, getBits(list, i, type));
+        }
+        return;
+      }
+      if (list instanceof PrimitiveList) {
+        PrimitiveList primitiveList = (PrimitiveList) list;
+        for (int i = 0; i < primitiveList.size(); i++) {
+          writer.writeTag(number, getWireType(type));
+          writeScalar(writer, type, primitiveList.getBits(i));
+        }
+        return;
+      }
+      for (Object value : list) {
+        writeValue(writer, number, type, value);
+      }
+      return;
+    }
+
+    if (isPackable(type) && type != TYPE_ENUM) {
+      long bits = getScalar(storage, number, type);
+      if (bits == 0 && field.is(IMPLICIT_PRESENCE)) {
+        return;
+      }
+      writer.writeTag(number, getWireType(type));
+      writeScalar(writer, type, bits);
+      return;
+    }
+    Object value = storage.getUnresolved(number);
+    if (value instanceof LazyMessage) {
+      writeValue(writer, number, TYPE_BYTES, ((LazyMessage) value).toByteString());
+      return;
+    }
+    value = storage.get(number, null);
+    if (field.is(IMPLICIT_PRESENCE) && isDefaultValue(type, value)) {
+      return;
+    }
+    writeValue(writer, number, type, value);
+  }
+
+  private static void writeValue(BinaryWriter writer, int number, int type, Object value) {
+    switch (type) {
+      case TYPE_STRING:
+        writer.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writer.writeString((String) value);
+        return;
+      case TYPE_BYTES:
+        writer.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writer.writeBytes((ByteString) value);
+        return;
+      case TYPE_MESSAGE:
+        {
+          GeneratedMessageLite<?, ?> message = (GeneratedMessageLite<?, ?>) value;
+          writer.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+          writer.writeRawVarint32(message.getSerializedSize());
+          message.internalGetSchema().writeTo(message.fields, writer);
+          return;
+        }
+      case TYPE_GROUP:
+        {
+          GeneratedMessageLite<?, ?> message = (GeneratedMessageLite<?, ?>) value;
+          writer.writeTag(number, WireFormat.WIRETYPE_START_GROUP);
+          message.internalGetSchema().writeTo(message.fields, writer);
+          writer.writeTag(number, WireFormat.WIRETYPE_END_GROUP);
+          return;
+        }
+      default:
+        writer.writeTag(number, getWireType(type));
+        writeScalar(writer, type, unbox(type, value));
+    }
+  }
+
+  private static void writeScalar(BinaryWriter writer, int type, long bits) {
+    switch (type) {
+      case TYPE_DOUBLE:
+      case TYPE_FIXED64:
+      case TYPE_SFIXED64:
+        writer.writeRawLittleEndian64(bits);
+        return;
+      case TYPE_FLOAT:
+      case TYPE_FIXED32:
+      case TYPE_SFIXED32:
+        writer.writeRawLittleEndian32((int) bits);
+        return;
+      case TYPE_BOOL:
+        writer.writeRawVarint32((int) bits);
+        return;
+      case TYPE_INT64:
+      case TYPE_UINT64:
+        writer.writeRawVarint64(bits);
+        return;
+      case TYPE_UINT32:
+        writer.writeRawVarint32((int) bits);
+        return;
+      case TYPE_SINT32:
+        writer.writeRawVarint32(WireFormat.encodeZigZag32((int) bits));
+        return;
+      case TYPE_SINT64:
+        writer.writeRawVarint64(WireFormat.encodeZigZag64(bits));
+        return;
+      default:
+        writer.writeRawVarint64((int) bits);
+    }
+  }
+}
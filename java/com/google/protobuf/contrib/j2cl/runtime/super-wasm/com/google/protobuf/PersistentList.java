@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * An immutable list that shares its structure with the lists derived from it, used to store
+ * repeated fields. See {@link AbstractPersistentList} for how the elements are kept.
+ */
+@SuppressWarnings("unchecked")
+final class PersistentList<E> extends AbstractPersistentList<E, Object[]> {
+
+  private static final PersistentList<?> EMPTY = new PersistentList<>();
+
+  static <E> PersistentList<E> empty() {
+    return (PersistentList<E>) EMPTY;
+  }
+
+  private PersistentList() {
+    super(new Object[WIDTH]);
+  }
+
+  private PersistentList(PersistentList<E> other, Object owner) {
+    super(other, owner);
+  }
+
+  @Override
+  Object[] newLeaf() {
+    return new Object[WIDTH];
+  }
+
+  @Override
+  Object[] copyLeaf(Object[] leaf) {
+    return leaf.clone();
+  }
+
+  /**
+   * Returns a list with the value appended. The list itself is updated and returned if it belongs
+   * to the owner.
+   */
+  PersistentList<E> plus(Object owner, E value) {
+    PersistentList<E> list = editable(owner);
+    list.grow()[(list.size() - 1) & MASK] = value;
+    return list;
+  }
+
+  /**
+   * Returns a list with the element at the index replaced. The list itself is updated and returned
+   * if it belongs to the owner.
+   */
+  PersistentList<E> with(Object owner, int index, E value) {
+    checkIndex(index);
+    PersistentList<E> list = editable(owner);
+    list.editableLeafFor(index)[index & MASK] = value;
+    return list;
+  }
+
+  @Override
+  public E get(int index) {
+    checkIndex(index);
+    return (E) leafFor(index)[index & MASK];
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private int index;
+      private Object[] array;
+
+      @Override
+      public boolean hasNext() {
+        return index < size();
+      }
+
+      @Override
+      public E next() {
+        if (index >= size()) {
+          throw new NoSuchElementException();
+        }
+        if ((index & MASK) == 0) {
+          array = leafFor(index);
+        }
+        return (E) array[index++ & MASK];
+      }
+    };
+  }
+
+  // Unlike the AbstractList implementations, equals and hashCode don't allocate iterators.
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof PersistentList)) {
+      return super.equals(o);
+    }
+    PersistentList<?> other = (PersistentList<?>) o;
+    int size = size();
+    if (other.size() != size) {
+      return false;
+    }
+    for (int i = 0; i < size; i += WIDTH) {
+      Object[] array = leafFor(i);
+      Object[] otherArray = other.leafFor(i);
+      // Arrays are shared between the lists derived from each other.
+      if (array == otherArray) {
+        continue;
+      }
+      for (int j = 0; j < Math.min(WIDTH, size - i); j++) {
+        if (!Objects.equals(array[j], otherArray[j])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int size = size();
+    int hashCode = 1;
+    for (int i = 0; i < size; i += WIDTH) {
+      Object[] array = leafFor(i);
+      for (int j = 0; j < Math.min(WIDTH, size - i); j++) {
+        hashCode = 31 * hashCode + Objects.hashCode(array[j]);
+      }
+    }
+    return hashCode;
+  }
+
+  private PersistentList<E> editable(Object owner) {
+    return owner() == owner ? this : new PersistentList<>(this, owner);
+  }
+}
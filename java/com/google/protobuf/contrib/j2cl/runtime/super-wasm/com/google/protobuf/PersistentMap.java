@@ -0,0 +1,467 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash array mapped trie that shares its structure with the maps derived from it, used
+ * to store map fields. Keys must not be null.
+ *
+ * <p>Deriving a map with an entry put or removed only copies the path to the entry. Like in {@link
+ * PersistentList}, nodes created on behalf of an owner are updated in place by later operations of
+ * the same owner.
+ */
+@SuppressWarnings("unchecked")
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  // One level per 5 bits of the hash plus a collision node.
+  private static final int MAX_DEPTH = 8;
+
+  private static final Object[] EMPTY_ARRAY = new Object[0];
+  private static final PersistentMap<?, ?> EMPTY =
+      new PersistentMap<>(null, 0, new BitmapNode(null, 0, EMPTY_ARRAY));
+
+  static <K, V> PersistentMap<K, V> empty() {
+    return (PersistentMap<K, V>) EMPTY;
+  }
+
+  /**
+   * A node of the trie. The array holds key value pairs, where a null key marks a value that is a
+   * child node.
+   */
+  private abstract static class Node {
+    final Object owner;
+    Object[] array;
+
+    Node(Object owner, Object[] array) {
+      this.owner = owner;
+      this.array = array;
+    }
+
+    abstract Node put(PersistentMap<?, ?> map, int shift, int hash, Object key, Object value);
+
+    /** Returns the node without the key, or null if the node would be empty. */
+    abstract Node remove(PersistentMap<?, ?> map, int shift, int hash, Object key);
+  }
+
+  /** Holds the entries and children for the 5 bits of the hash at its level. */
+  private static final class BitmapNode extends Node {
+    int bitmap;
+
+    BitmapNode(Object owner, int bitmap, Object[] array) {
+      super(owner, array);
+      this.bitmap = bitmap;
+    }
+
+    @Override
+    Node put(PersistentMap<?, ?> map, int shift, int hash, Object key, Object value) {
+      int bit = bitpos(hash, shift);
+      int index = 2 * index(bit);
+      if ((bitmap & bit) != 0) {
+        Object keyOrNull = array[index];
+        Object valueOrNode = array[index + 1];
+        if (keyOrNull == null) {
+          Node child = ((Node) valueOrNode).put(map, shift + BITS, hash, key, value);
+          return child == valueOrNode ? this : set(map, index + 1, child);
+        }
+        if (key.equals(keyOrNull)) {
+          return valueOrNode == value ? this : set(map, index + 1, value);
+        }
+        map.size++;
+        Node child =
+            createNode(map.owner, shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+        BitmapNode node = editable(map);
+        node.array[index] = null;
+        node.array[index + 1] = child;
+        return node;
+      }
+
+      map.size++;
+      Object[] newArray = new Object[array.length + 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      newArray[index] = key;
+      newArray[index + 1] = value;
+      System.arraycopy(array, index, newArray, index + 2, array.length - index);
+      BitmapNode node = editable(map);
+      node.bitmap |= bit;
+      node.array = newArray;
+      return node;
+    }
+
+    @Override
+    Node remove(PersistentMap<?, ?> map, int shift, int hash, Object key) {
+      int bit = bitpos(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = 2 * index(bit);
+      Object keyOrNull = array[index];
+      Object valueOrNode = array[index + 1];
+      if (keyOrNull == null) {
+        Node child = ((Node) valueOrNode).remove(map, shift + BITS, hash, key);
+        if (child == valueOrNode) {
+          return this;
+        }
+        if (child != null) {
+          return set(map, index + 1, child);
+        }
+      } else if (key.equals(keyOrNull)) {
+        map.size--;
+      } else {
+        return this;
+      }
+
+      if (bitmap == bit) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+      BitmapNode node = editable(map);
+      node.bitmap ^= bit;
+      node.array = newArray;
+      return node;
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private BitmapNode set(PersistentMap<?, ?> map, int index, Object value) {
+      BitmapNode node = editable(map);
+      node.array[index] = value;
+      return node;
+    }
+
+    private BitmapNode editable(PersistentMap<?, ?> map) {
+      return owner == map.owner ? this : new BitmapNode(map.owner, bitmap, array.clone());
+    }
+  }
+
+  /** Holds the entries of keys that have the same hash. */
+  private static final class CollisionNode extends Node {
+    final int hash;
+
+    CollisionNode(Object owner, int hash, Object[] array) {
+      super(owner, array);
+      this.hash = hash;
+    }
+
+    @Override
+    Node put(PersistentMap<?, ?> map, int shift, int hash, Object key, Object value) {
+      if (hash != this.hash) {
+        // Push the collisions down to make room for the new key.
+        return new BitmapNode(map.owner, bitpos(this.hash, shift), new Object[] {null, this})
+            .put(map, shift, hash, key, value);
+      }
+      int index = indexOf(hash, key);
+      if (index != -1) {
+        if (array[index + 1] == value) {
+          return this;
+        }
+        CollisionNode node = editable(map);
+        node.array[index + 1] = value;
+        return node;
+      }
+
+      map.size++;
+      Object[] newArray = new Object[array.length + 2];
+      System.arraycopy(array, 0, newArray, 0, array.length);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+      CollisionNode node = editable(map);
+      node.array = newArray;
+      return node;
+    }
+
+    @Override
+    Node remove(PersistentMap<?, ?> map, int shift, int hash, Object key) {
+      int index = indexOf(hash, key);
+      if (index == -1) {
+        return this;
+      }
+      map.size--;
+      if (array.length == 2) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+      CollisionNode node = editable(map);
+      node.array = newArray;
+      return node;
+    }
+
+    private int indexOf(int hash, Object key) {
+      if (hash == this.hash) {
+        for (int i = 0; i < array.length; i += 2) {
+          if (key.equals(array[i])) {
+            return i;
+          }
+        }
+      }
+      return -1;
+    }
+
+    private CollisionNode editable(PersistentMap<?, ?> map) {
+      return owner == map.owner ? this : new CollisionNode(map.owner, hash, array.clone());
+    }
+  }
+
+  // Only modified by operations of the owner.
+  private final Object owner;
+  private int size;
+  private Node root;
+
+  private PersistentMap(Object owner, int size, Node root) {
+    this.owner = owner;
+    this.size = size;
+    this.root = root;
+  }
+
+  /**
+   * Returns a map with the entry put. The map itself is updated and returned if it belongs to the
+   * owner.
+   */
+  PersistentMap<K, V> with(Object owner, K key, V value) {
+    PersistentMap<K, V> map = editable(owner);
+    map.root = map.root.put(map, 0, key.hashCode(), key, value);
+    return map;
+  }
+
+  /**
+   * Returns a map without the key. The map itself is updated and returned if it belongs to the
+   * owner.
+   */
+  PersistentMap<K, V> without(Object owner, Object key) {
+    PersistentMap<K, V> map = editable(owner);
+    Node root = map.root.remove(map, 0, key.hashCode(), key);
+    map.root = root != null ? root : EMPTY.root;
+    return map;
+  }
+
+  @Override
+  public V get(Object key) {
+    return key == null ? null : (V) find(key.hashCode(), key, 0);
+  }
+
+  /** Same as {@code get(key)} without boxing the key, for maps with int32 keys. */
+  V getForIntKey(int key) {
+    return (V) find(Integer.hashCode(key), null, key);
+  }
+
+  /** Same as {@code get(key)} without boxing the key, for maps with int64 keys. */
+  V getForLongKey(long key) {
+    return (V) find(Long.hashCode(key), null, key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new AbstractSet<Entry<K, V>>() {
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  // Unlike the AbstractMap implementations, equals and hashCode don't allocate entries.
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof PersistentMap)) {
+      return super.equals(o);
+    }
+    PersistentMap<?, ?> other = (PersistentMap<?, ?>) o;
+    return other.size == size && (root == other.root || containsAll(root, other));
+  }
+
+  /** Whether all entries of the node are in the other map. */
+  private static boolean containsAll(Node node, PersistentMap<?, ?> other) {
+    Object[] array = node.array;
+    for (int i = 0; i < array.length; i += 2) {
+      Object keyOrNull = array[i];
+      if (keyOrNull == null) {
+        if (!containsAll((Node) array[i + 1], other)) {
+          return false;
+        }
+      } else if (!array[i + 1].equals(other.find(keyOrNull.hashCode(), keyOrNull, 0))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode(root);
+  }
+
+  private static int hashCode(Node node) {
+    int hashCode = 0;
+    Object[] array = node.array;
+    for (int i = 0; i < array.length; i += 2) {
+      Object keyOrNull = array[i];
+      hashCode +=
+          keyOrNull == null
+              ? hashCode((Node) array[i + 1])
+              : keyOrNull.hashCode() ^ array[i + 1].hashCode();
+    }
+    return hashCode;
+  }
+
+  private PersistentMap<K, V> editable(Object owner) {
+    return this.owner == owner ? this : new PersistentMap<>(owner, size, root);
+  }
+
+  /**
+   * Returns the value for the key, or null if there is none. The key is either given as an object,
+   * or if that is null as the value of an Integer or Long key.
+   */
+  private Object find(int hash, Object key, long primitiveKey) {
+    Node node = root;
+    for (int shift = 0; ; shift += BITS) {
+      Object[] array = node.array;
+      if (node instanceof CollisionNode) {
+        if (((CollisionNode) node).hash == hash) {
+          for (int i = 0; i < array.length; i += 2) {
+            if (keyEquals(array[i], key, primitiveKey)) {
+              return array[i + 1];
+            }
+          }
+        }
+        return null;
+      }
+
+      BitmapNode bitmapNode = (BitmapNode) node;
+      int bit = bitpos(hash, shift);
+      if ((bitmapNode.bitmap & bit) == 0) {
+        return null;
+      }
+      int index = 2 * Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+      Object keyOrNull = array[index];
+      if (keyOrNull != null) {
+        return keyEquals(keyOrNull, key, primitiveKey) ? array[index + 1] : null;
+      }
+      node = (Node) array[index + 1];
+    }
+  }
+
+  private static boolean keyEquals(Object storedKey, Object key, long primitiveKey) {
+    if (key != null) {
+      return key.equals(storedKey);
+    }
+    return storedKey instanceof Integer
+        ? (Integer) storedKey == primitiveKey
+        : storedKey instanceof Long && (Long) storedKey == primitiveKey;
+  }
+
+  private static int bitpos(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  private static Node createNode(
+      Object owner, int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+    int hash1 = key1.hashCode();
+    if (hash1 == hash2) {
+      return new CollisionNode(owner, hash1, new Object[] {key1, value1, key2, value2});
+    }
+    // Hashes that differ are always split by the time all 32 bits were looked at.
+    int bit1 = (hash1 >>> shift) & MASK;
+    int bit2 = (hash2 >>> shift) & MASK;
+    if (bit1 == bit2) {
+      Node child = createNode(owner, shift + BITS, key1, value1, hash2, key2, value2);
+      return new BitmapNode(owner, 1 << bit1, new Object[] {null, child});
+    }
+    Object[] array =
+        bit1 < bit2
+            ? new Object[] {key1, value1, key2, value2}
+            : new Object[] {key2, value2, key1, value1};
+    return new BitmapNode(owner, (1 << bit1) | (1 << bit2), array);
+  }
+
+  /** Visits the entries depth first, keeping the arrays of the nodes on the path in a stack. */
+  private final class EntryIterator implements Iterator<Entry<K, V>> {
+    private final Object[][] arrays = new Object[MAX_DEPTH][];
+    private final int[] positions = new int[MAX_DEPTH];
+    private int depth;
+    private Entry<K, V> next;
+
+    EntryIterator() {
+      arrays[0] = root.array;
+      next = advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Entry<K, V> next() {
+      Entry<K, V> entry = next;
+      if (entry == null) {
+        throw new NoSuchElementException();
+      }
+      next = advance();
+      return entry;
+    }
+
+    private Entry<K, V> advance() {
+      while (depth >= 0) {
+        Object[] array = arrays[depth];
+        int position = positions[depth];
+        if (position == array.length) {
+          depth--;
+          continue;
+        }
+        positions[depth] = position + 2;
+        Object keyOrNull = array[position];
+        if (keyOrNull == null) {
+          depth++;
+          arrays[depth] = ((Node) array[position + 1]).array;
+          positions[depth] = 0;
+          continue;
+        }
+        return new SimpleImmutableEntry<>((K) keyOrNull, (V) array[position + 1]);
+      }
+      return null;
+    }
+  }
+}
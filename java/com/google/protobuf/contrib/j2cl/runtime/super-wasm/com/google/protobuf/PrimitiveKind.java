@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+/**
+ * The kinds of values that are stored unboxed as raw bits. Floats and doubles are stored as their
+ * canonical bits, so that comparing bits matches {@code Float.equals} and {@code Double.equals}.
+ */
+enum PrimitiveKind {
+  INT,
+  LONG,
+  FLOAT,
+  DOUBLE,
+  BOOLEAN;
+
+  /** Returns the boxed value for the bits. */
+  Object box(long bits) {
+    switch (this) {
+      case INT:
+        return (int) bits;
+      case LONG:
+        return bits;
+      case FLOAT:
+        return Float.intBitsToFloat((int) bits);
+      case DOUBLE:
+        return Double.longBitsToDouble(bits);
+      case BOOLEAN:
+        return bits != 0;
+    }
+    throw new AssertionError();
+  }
+
+  /** Returns the bits for the boxed value. */
+  long unbox(Object value) {
+    switch (this) {
+      case INT:
+        return (Integer) value;
+      case LONG:
+        return (Long) value;
+      case FLOAT:
+        return Float.floatToIntBits((Float) value);
+      case DOUBLE:
+        return Double.doubleToLongBits((Double) value);
+      case BOOLEAN:
+        return ((Boolean) value) ? 1 : 0;
+    }
+    throw new AssertionError();
+  }
+
+  /** Returns the canonical bits for raw bits of the kind, e.g. as read from the wire. */
+  long canonicalize(long bits) {
+    switch (this) {
+      case INT:
+        return (int) bits;
+      case LONG:
+        return bits;
+      case FLOAT:
+        return Float.floatToIntBits(Float.intBitsToFloat((int) bits));
+      case DOUBLE:
+        return Double.doubleToLongBits(Double.longBitsToDouble(bits));
+      case BOOLEAN:
+        return bits != 0 ? 1 : 0;
+    }
+    throw new AssertionError();
+  }
+
+  /** Returns the same hash code as the boxed value would, without boxing. */
+  int hashCode(long bits) {
+    switch (this) {
+      case INT:
+        return Integer.hashCode((int) bits);
+      case LONG:
+        return Long.hashCode(bits);
+      case FLOAT:
+        return (int) bits;
+      case DOUBLE:
+        return Long.hashCode(bits);
+      case BOOLEAN:
+        return Boolean.hashCode(bits != 0);
+    }
+    throw new AssertionError();
+  }
+}
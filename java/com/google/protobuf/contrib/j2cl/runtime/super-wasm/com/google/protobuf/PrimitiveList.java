@@ -0,0 +1,168 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The unboxed counterpart of {@link PersistentList}, used to store repeated numeric and bool
+ * fields.
+ *
+ * <p>The elements are kept as raw bits in {@code long[]} leaves and are only boxed when they are
+ * read through the {@link java.util.List} interface.
+ */
+final class PrimitiveList extends AbstractPersistentList<Object, long[]> {
+
+  private static final PrimitiveList[] EMPTY = new PrimitiveList[PrimitiveKind.values().length];
+
+  static {
+    for (PrimitiveKind kind : PrimitiveKind.values()) {
+      EMPTY[kind.ordinal()] = new PrimitiveList(kind);
+    }
+  }
+
+  static PrimitiveList empty(PrimitiveKind kind) {
+    return EMPTY[kind.ordinal()];
+  }
+
+  private final PrimitiveKind kind;
+
+  private PrimitiveList(PrimitiveKind kind) {
+    super(new long[WIDTH]);
+    this.kind = kind;
+  }
+
+  private PrimitiveList(PrimitiveList other, Object owner) {
+    super(other, owner);
+    this.kind = other.kind;
+  }
+
+  @Override
+  long[] newLeaf() {
+    return new long[WIDTH];
+  }
+
+  @Override
+  long[] copyLeaf(long[] leaf) {
+    return leaf.clone();
+  }
+
+  PrimitiveKind getKind() {
+    return kind;
+  }
+
+  /**
+   * Returns a list with the bits appended. The list itself is updated and returned if it belongs
+   * to the owner.
+   */
+  PrimitiveList plus(Object owner, long bits) {
+    PrimitiveList list = editable(owner);
+    list.grow()[(list.size() - 1) & MASK] = bits;
+    return list;
+  }
+
+  /**
+   * Returns a list with the bits at the index replaced. The list itself is updated and returned if
+   * it belongs to the owner.
+   */
+  PrimitiveList with(Object owner, int index, long bits) {
+    checkIndex(index);
+    PrimitiveList list = editable(owner);
+    list.editableLeafFor(index)[index & MASK] = bits;
+    return list;
+  }
+
+  long getBits(int index) {
+    checkIndex(index);
+    return leafFor(index)[index & MASK];
+  }
+
+  @Override
+  public Object get(int index) {
+    return kind.box(getBits(index));
+  }
+
+  @Override
+  public Iterator<Object> iterator() {
+    return new Iterator<Object>() {
+      private int index;
+      private long[] bits;
+
+      @Override
+      public boolean hasNext() {
+        return index < size();
+      }
+
+      @Override
+      public Object next() {
+        if (index >= size()) {
+          throw new NoSuchElementException();
+        }
+        if ((index & MASK) == 0) {
+          bits = leafFor(index);
+        }
+        return kind.box(bits[index++ & MASK]);
+      }
+    };
+  }
+
+  // Unlike the AbstractList implementations, equals and hashCode don't box the elements.
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof PrimitiveList) || ((PrimitiveList) o).kind != kind) {
+      return super.equals(o);
+    }
+    PrimitiveList other = (PrimitiveList) o;
+    int size = size();
+    if (other.size() != size) {
+      return false;
+    }
+    for (int i = 0; i < size; i += WIDTH) {
+      long[] bits = leafFor(i);
+      long[] otherBits = other.leafFor(i);
+      // Leaves are shared between the lists derived from each other.
+      if (bits == otherBits) {
+        continue;
+      }
+      for (int j = 0; j < Math.min(WIDTH, size - i); j++) {
+        if (bits[j] != otherBits[j]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int size = size();
+    int hashCode = 1;
+    for (int i = 0; i < size; i += WIDTH) {
+      long[] bits = leafFor(i);
+      for (int j = 0; j < Math.min(WIDTH, size - i); j++) {
+        hashCode = 31 * hashCode + kind.hashCode(bits[j]);
+      }
+    }
+    return hashCode;
+  }
+
+  private PrimitiveList editable(Object owner) {
+    return owner() == owner ? this : new PrimitiveList(this, owner);
+  }
+}
@@ -30,6 +30,12 @@ public class ByteString {
 
   static native ByteString copyFrom(GeneratedMessageLite.Internal_.Uint8Array uint8Array);
 
+  /**
+   * Wraps the array without copying it. The ownership of the array is transferred to the
+   * ByteString, it must not be modified afterwards.
+   */
+  static native ByteString wrapUnsafe(GeneratedMessageLite.Internal_.Uint8Array uint8Array);
+
   @JsOverlay
   public static ByteString copyFromUtf8(String s) {
     return copyFrom(s.getBytes());
@@ -40,11 +46,8 @@ public class ByteString {
 
   @JsOverlay
   public final byte[] toByteArray() {
-    byte[] byteArray = new byte[0];
-    for (int i = 0; i < size(); i++) {
-      byteArray[i] = byteAt(i);
-    }
-    return byteArray;
+    // Reads a view of the bytes instead of calling byteAt for every byte.
+    return toUint8ArrayUnsafe().asBytes();
   }
 
   public native int size();
@@ -61,4 +64,8 @@ public class ByteString {
 
   @JsMethod
   native GeneratedMessageLite.Internal_.Uint8Array toUint8Array();
+
+  /** Returns a view of the bytes without copying them. The view must not be modified. */
+  @JsMethod
+  native GeneratedMessageLite.Internal_.Uint8Array toUint8ArrayUnsafe();
 }
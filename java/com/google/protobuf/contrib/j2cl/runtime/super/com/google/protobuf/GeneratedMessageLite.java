@@ -20,6 +20,7 @@ import java.util.AbstractList;
 import java.util.AbstractMap;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -28,7 +29,9 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.RandomAccess;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsMethod;
 import jsinterop.annotations.JsOverlay;
 import jsinterop.annotations.JsPackage;
 import jsinterop.annotations.JsProperty;
@@ -315,34 +318,46 @@ public abstract class GeneratedMessageLite<
         implements RandomAccess {}
 
     public static final <T> List<T> createList(final ListView<T> listView) {
-      return Collections.unmodifiableList(
-          new RandomAccessList<T>() {
-            @Override
-            public T get(int index) {
-              return listView.get(index);
-            }
-
-            @Override
-            public int size() {
-              return listView.size();
-            }
-          });
+      List<T> list = getCachedJavaView(listView);
+      if (list == null) {
+        list =
+            Collections.unmodifiableList(
+                new RandomAccessList<T>() {
+                  @Override
+                  public T get(int index) {
+                    return listView.get(index);
+                  }
+
+                  @Override
+                  public int size() {
+                    return listView.size();
+                  }
+                });
+        cacheJavaView(listView, listView.size(), list);
+      }
+      return list;
     }
 
     public static final <T, B> List<B> createList(
         final ListView<T> listView, TypeConverter<? super T, B> converter) {
-      return Collections.unmodifiableList(
-          new RandomAccessList<B>() {
-            @Override
-            public B get(int index) {
-              return converter.convert(listView.get(index));
-            }
-
-            @Override
-            public int size() {
-              return listView.size();
-            }
-          });
+      List<B> list = getCachedJavaView(listView);
+      if (list == null) {
+        list =
+            Collections.unmodifiableList(
+                new RandomAccessList<B>() {
+                  @Override
+                  public B get(int index) {
+                    return converter.convert(listView.get(index));
+                  }
+
+                  @Override
+                  public int size() {
+                    return listView.size();
+                  }
+                });
+        cacheJavaView(listView, listView.size(), list);
+      }
+      return list;
     }
 
     public static final <T> List<Integer> createIntList(final ListView<T> listView) {
@@ -357,6 +372,46 @@ public abstract class GeneratedMessageLite<
       return createList(listView, FLOAT_TYPE_CONVERTER);
     }
 
+    public static final int[] toIntArray(ListView<?> listView) {
+      int[] values = new int[listView.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Js.asInt(listView.get(i));
+      }
+      return values;
+    }
+
+    public static final long[] toLongArray(ListView<?> listView) {
+      long[] values = new long[listView.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Js.asLong(listView.get(i));
+      }
+      return values;
+    }
+
+    public static final float[] toFloatArray(ListView<?> listView) {
+      float[] values = new float[listView.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Js.asFloat(listView.get(i));
+      }
+      return values;
+    }
+
+    public static final double[] toDoubleArray(ListView<?> listView) {
+      double[] values = new double[listView.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Js.asDouble(listView.get(i));
+      }
+      return values;
+    }
+
+    public static final boolean[] toBooleanArray(ListView<?> listView) {
+      boolean[] values = new boolean[listView.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Js.asBoolean(listView.get(i));
+      }
+      return values;
+    }
+
     /** Immutable JS proto's representation of a map field. */
     @JsType(isNative = true, namespace = "proto.im")
     public interface MapView<K, V> {
@@ -367,6 +422,14 @@ public abstract class GeneratedMessageLite<
       V get(K key);
 
       JsIterator<JsArrayLike<?>> entries();
+
+      void forEach(ForEachCallback<K, V> callback);
+    }
+
+    /** The callback of {@link MapView#forEach}, which is passed the value before the key. */
+    @JsFunction
+    interface ForEachCallback<K, V> {
+      void accept(V value, K key);
     }
 
     @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Iterator")
@@ -482,6 +545,14 @@ public abstract class GeneratedMessageLite<
         return valueConverter.convert(mapView.get(toJsKey((JAVA_KEY) key)));
       }
 
+      @Override
+      public void forEach(BiConsumer<? super JAVA_KEY, ? super JAVA_VALUE> action) {
+        // Unlike the entry set this doesn't allocate a Map.Entry and JS array for each entry.
+        mapView.forEach(
+            (value, key) ->
+                action.accept(keyConverter.convert(key), valueConverter.convert(value)));
+      }
+
       @Override
       public Set<Entry<JAVA_KEY, JAVA_VALUE>> entrySet() {
         if (entriesSet == null) {
@@ -617,9 +688,40 @@ public abstract class GeneratedMessageLite<
             TypeConverter<? super JS_KEY, JAVA_KEY> keyConverter,
             TypeConverter<? super JAVA_KEY, ?> keyWriteConverter,
             TypeConverter<? super JS_VALUE, JAVA_VALUE> valueConverter) {
-      return new MapViewAdapter<>(mapView, keyConverter, keyWriteConverter, valueConverter);
+      Map<JAVA_KEY, JAVA_VALUE> map = getCachedJavaView(mapView);
+      if (map == null) {
+        map = new MapViewAdapter<>(mapView, keyConverter, keyWriteConverter, valueConverter);
+        cacheJavaView(mapView, mapView.size(), map);
+      }
+      return map;
+    }
+
+    // The property of a ListView or MapView that holds the Java collection adapting it.
+    private static final String JAVA_VIEW_KEY = "$j2clJavaView";
+
+    private static <T> T getCachedJavaView(Object jsView) {
+      return (T) Js.asPropertyMap(jsView).get(JAVA_VIEW_KEY);
     }
 
+    /**
+     * Caches the Java collection on the view, which the JS message returns for every call of the
+     * field getter. Empty views are shared by all fields, so their adapters are not cached.
+     *
+     * <p>The cache is keyed by the view only: a non-empty view belongs to a single field (or
+     * repeated extension) of a single message, whose getter always adapts it with the same
+     * converters. Converters are often allocated per call (e.g. {@link #noopConverter} and the
+     * generated enum converters), so they can't be part of the key. Views of builders are live
+     * and may become empty after being cached, the cached adapter then simply reflects that.
+     */
+    private static void cacheJavaView(Object jsView, int size, Object javaView) {
+      if (size > 0 && isExtensible(jsView)) {
+        Js.asPropertyMap(jsView).set(JAVA_VIEW_KEY, javaView);
+      }
+    }
+
+    @JsMethod(namespace = JsPackage.GLOBAL, name = "Object.isExtensible")
+    private static native boolean isExtensible(Object object);
+
     /** Converts between unboxed and boxed types */
     public interface TypeConverter<T, B> {
       B convert(T t);
@@ -816,8 +918,8 @@ public abstract class GeneratedMessageLite<
 
       public static <T> T parseFrom(ByteString data, BinaryParser<T> parser)
           throws InvalidProtocolBufferException {
-        // TODO(b/218544016): Avoid copying when unwrapping the ByteString.
-        Uint8Array uint8Array = data.toUint8Array();
+        // Parsing never modifies its input, so the bytes can be shared with the ByteString.
+        Uint8Array uint8Array = data.toUint8ArrayUnsafe();
         try {
           return parser.parseFrom(uint8Array);
         } catch (Throwable t) {
@@ -825,6 +927,122 @@ public abstract class GeneratedMessageLite<
         }
       }
 
+      /**
+       * Parses length-delimited messages, as written by {@code writeDelimitedTo}, from a stream
+       * that is received in chunks. Each message is returned as soon as the chunk with its last
+       * byte is passed to {@link #parse}.
+       *
+       * <p>Messages that lie within a chunk are parsed from a view of the chunk, so chunks must not
+       * be modified after they are passed in. Only the bytes of a message that spans chunks are
+       * copied, into an array of its exact size. Once the parser threw, the rest of the stream
+       * can't be framed anymore and further calls throw {@link IllegalStateException}.
+       */
+      public static final class DelimitedParser<T> {
+        private final BinaryParser<T> parser;
+        // The length prefix that is being read.
+        private int size;
+        private int sizeShift;
+        // The message that spans chunks and the number of its bytes received so far.
+        private Uint8Array pendingMessage;
+        private int pendingLength;
+        private boolean failed;
+
+        public DelimitedParser(BinaryParser<T> parser) {
+          this.parser = parser;
+        }
+
+        /** Returns the messages that are completed by the chunk, in order. */
+        public List<T> parse(Uint8Array chunk) throws InvalidProtocolBufferException {
+          checkNotFailed();
+          try {
+            return parseChunk(chunk);
+          } catch (InvalidProtocolBufferException e) {
+            failed = true;
+            throw e;
+          }
+        }
+
+        private List<T> parseChunk(Uint8Array chunk) throws InvalidProtocolBufferException {
+          // Chunks within a large message complete none, so the list is only allocated if needed.
+          List<T> messages = null;
+          // See Uint8Array.asBytes for why this is fine.
+          int[] bytes = Js.uncheckedCast(chunk);
+          int length = chunk.getLength();
+          int position = 0;
+          while (position < length) {
+            if (pendingMessage != null) {
+              int count =
+                  Math.min(pendingMessage.getLength() - pendingLength, length - position);
+              pendingMessage.set(chunk.subarray(position, position + count), pendingLength);
+              pendingLength += count;
+              position += count;
+              if (pendingLength == pendingMessage.getLength()) {
+                messages = add(messages, parseMessage(pendingMessage));
+                pendingMessage = null;
+              }
+              continue;
+            }
+
+            int b = bytes[position++];
+            size |= (b & 0x7F) << sizeShift;
+            if ((b & 0x80) != 0) {
+              sizeShift += 7;
+              if (sizeShift >= 35) {
+                throw InvalidProtocolBufferException.malformedVarint();
+              }
+              continue;
+            }
+
+            int messageSize = size;
+            size = 0;
+            sizeShift = 0;
+            if (messageSize < 0) {
+              throw InvalidProtocolBufferException.negativeSize();
+            }
+            if (length - position >= messageSize) {
+              messages =
+                  add(messages, parseMessage(chunk.subarray(position, position + messageSize)));
+              position += messageSize;
+            } else {
+              pendingMessage = new Uint8Array(messageSize);
+              pendingLength = 0;
+            }
+          }
+          return messages == null ? Collections.emptyList() : messages;
+        }
+
+        private static <T> List<T> add(List<T> messages, T message) {
+          if (messages == null) {
+            messages = new ArrayList<>();
+          }
+          messages.add(message);
+          return messages;
+        }
+
+        /** Checks that the stream didn't end in the middle of a message. */
+        public void finish() throws InvalidProtocolBufferException {
+          checkNotFailed();
+          if (pendingMessage != null || sizeShift != 0) {
+            failed = true;
+            throw InvalidProtocolBufferException.truncatedMessage();
+          }
+        }
+
+        private void checkNotFailed() {
+          if (failed) {
+            throw new IllegalStateException("The parser can't be used after it failed.");
+          }
+        }
+
+        private T parseMessage(Uint8Array data) throws InvalidProtocolBufferException {
+          try {
+            return parser.parseFrom(data);
+          } catch (Throwable t) {
+            throw InvalidProtocolBufferException.conversionError(t);
+          }
+        }
+      }
+
       private BinarySerializationHelper() {}
     }
 
@@ -833,22 +1051,30 @@ public abstract class GeneratedMessageLite<
     public static final class Uint8Array {
       public Uint8Array(byte[] bytes) {}
 
+      public Uint8Array(int length) {}
+
+      public native Uint8Array subarray(int begin, int end);
+
+      public native void set(Uint8Array array, int offset);
+
       @JsProperty
       public native int getLength();
 
       @JsOverlay
       public ByteString asByteString() {
-        // TODO(b/218544016): Avoid copying when wraping into a ByteString.
-        return ByteString.copyFrom(this);
+        // The array is freshly serialized and not referenced elsewhere, so it can be handed over.
+        return ByteString.wrapUnsafe(this);
       }
 
       @JsOverlay
       public byte[] asBytes() {
-        byte[] byteArray = new byte[0];
+        int length = getLength();
+        // Allocate upfront so that the array is never grown while copying.
+        byte[] byteArray = new byte[length];
         // This isn't technically correct as a TypedArray isn't quite a normal array, but we're only
-        // going to be reading the length property and indexing into it.
+        // going to be indexing into it, which compiles to a plain typed array read.
         int[] selfAsInts = Js.uncheckedCast(this);
-        for (int i = 0; i < getLength(); i++) {
+        for (int i = 0; i < length; i++) {
           byteArray[i] = (byte) selfAsInts[i];
         }
         return byteArray;
@@ -27,4 +27,20 @@ public class InvalidProtocolBufferException extends IOException {
   public static InvalidProtocolBufferException conversionError(Throwable cause) {
     return new InvalidProtocolBufferException("Failed to convert protobuf to binary", cause);
   }
+
+  static InvalidProtocolBufferException truncatedMessage() {
+    return new InvalidProtocolBufferException(
+        "While parsing a protocol message, the input ended unexpectedly in the middle of a"
+            + " message.",
+        null);
+  }
+
+  static InvalidProtocolBufferException negativeSize() {
+    return new InvalidProtocolBufferException(
+        "Encountered a message which claimed to have negative size.", null);
+  }
+
+  static InvalidProtocolBufferException malformedVarint() {
+    return new InvalidProtocolBufferException("Encountered a malformed varint.", null);
+  }
 }
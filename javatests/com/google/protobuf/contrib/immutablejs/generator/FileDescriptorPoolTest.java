@@ -0,0 +1,153 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.immutablejs.generator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class FileDescriptorPoolTest {
+
+  private static final FileDescriptorProto A = file("a.proto", "A");
+  private static final FileDescriptorProto CHANGED_A =
+      A.toBuilder().addMessageType(DescriptorProto.newBuilder().setName("Other")).build();
+  private static final FileDescriptorProto B = file("b.proto", "B", "a.proto");
+  private static final FileDescriptorProto C = file("c.proto", "C", "b.proto");
+
+  private final FileDescriptorPool pool = new FileDescriptorPool();
+
+  @Test
+  public void testBuildFilesToGenerate_onlyRequestedFilesInRequestOrder() throws Exception {
+    CodeGeneratorRequest request =
+        CodeGeneratorRequest.newBuilder()
+            .addFileToGenerate("c.proto")
+            .addFileToGenerate("a.proto")
+            .addProtoFile(A)
+            .addProtoFile(B)
+            .addProtoFile(C)
+            .build();
+
+    ImmutableList<FileDescriptor> files = pool.buildFilesToGenerate(request);
+
+    assertThat(files).hasSize(2);
+    assertThat(files.get(0).getName()).isEqualTo("a.proto");
+    assertThat(files.get(1).getName()).isEqualTo("c.proto");
+    assertThat(files.get(1).getDependencies().get(0).getName()).isEqualTo("b.proto");
+  }
+
+  @Test
+  public void testUnchangedFile_isReused() throws Exception {
+    FileDescriptor first = build("b.proto", A, B);
+    FileDescriptor second = build("b.proto", A, B);
+
+    assertThat(second).isSameInstanceAs(first);
+    assertThat(second.getDependencies().get(0)).isSameInstanceAs(first.getDependencies().get(0));
+  }
+
+  @Test
+  public void testChangedFile_isRebuilt() throws Exception {
+    FileDescriptor original = build("a.proto", A);
+    FileDescriptor changed = build("a.proto", CHANGED_A);
+
+    assertThat(changed).isNotSameInstanceAs(original);
+    assertThat(changed.findMessageTypeByName("Other")).isNotNull();
+
+    FileDescriptor changedBack = build("a.proto", A);
+    assertThat(changedBack).isNotSameInstanceAs(changed);
+    assertThat(changedBack.findMessageTypeByName("Other")).isNull();
+  }
+
+  @Test
+  public void testChangedDependency_dependentsAreRebuilt() throws Exception {
+    FileDescriptor original = build("c.proto", A, B, C);
+    FileDescriptor changed = build("c.proto", CHANGED_A, B, C);
+
+    // b.proto and c.proto are unchanged, but depend (transitively) on the changed a.proto.
+    assertThat(changed).isNotSameInstanceAs(original);
+    FileDescriptor b = changed.getDependencies().get(0);
+    assertThat(b).isNotSameInstanceAs(original.getDependencies().get(0));
+    assertThat(b.getDependencies().get(0).findMessageTypeByName("Other")).isNotNull();
+  }
+
+  @Test
+  public void testRebuiltDependency_dependentsAreRebuilt() throws Exception {
+    FileDescriptor original = build("b.proto", A, B);
+    build("a.proto", CHANGED_A);
+
+    // a.proto is the same as the first time, but it is a different descriptor than the one the
+    // cached b.proto was built with.
+    FileDescriptor rebuilt = build("b.proto", A, B);
+
+    assertThat(rebuilt).isNotSameInstanceAs(original);
+    FileDescriptor a = rebuilt.getDependencies().get(0);
+    assertThat(a).isNotSameInstanceAs(original.getDependencies().get(0));
+    assertThat(a.findMessageTypeByName("Other")).isNull();
+    assertThat(build("b.proto", A, B)).isSameInstanceAs(rebuilt);
+  }
+
+  @Test
+  public void testMissingDependency_fails() {
+    assertThrows(NullPointerException.class, () -> build("b.proto", B));
+  }
+
+  @Test
+  public void testInvalidFile_failsWithoutAffectingLaterBuilds() throws Exception {
+    FileDescriptorProto invalid =
+        A.toBuilder()
+            .setMessageType(
+                0,
+                A.getMessageType(0).toBuilder()
+                    .addField(
+                        FieldDescriptorProto.newBuilder()
+                            .setName("unknown")
+                            .setNumber(1)
+                            .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL)
+                            .setTypeName(".Unknown")))
+            .build();
+
+    assertThrows(DescriptorValidationException.class, () -> build("a.proto", invalid));
+
+    assertThat(build("a.proto", A).findMessageTypeByName("A")).isNotNull();
+  }
+
+  /** Builds the files, which are in topological order, and returns the one with the name. */
+  private FileDescriptor build(String fileToGenerate, FileDescriptorProto... files)
+      throws DescriptorValidationException {
+    CodeGeneratorRequest.Builder request =
+        CodeGeneratorRequest.newBuilder().addFileToGenerate(fileToGenerate);
+    for (FileDescriptorProto file : files) {
+      request.addProtoFile(file);
+    }
+    return pool.buildFilesToGenerate(request.build()).get(0);
+  }
+
+  private static FileDescriptorProto file(String name, String message, String... dependencies) {
+    FileDescriptorProto.Builder file = FileDescriptorProto.newBuilder().setName(name);
+    for (String dependency : dependencies) {
+      file.addDependency(dependency);
+    }
+    return file.addMessageType(DescriptorProto.newBuilder().setName(message)).build();
+  }
+}
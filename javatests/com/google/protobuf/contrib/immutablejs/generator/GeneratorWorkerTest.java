@@ -0,0 +1,437 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.immutablejs.generator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
+import com.google.protobuf.contrib.immutablejs.generator.GeneratorWorker.Generator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class GeneratorWorkerTest {
+
+  private static final FileDescriptorProto A =
+      FileDescriptorProto.newBuilder().setName("pkg/a.proto").build();
+  private static final FileDescriptorProto B =
+      FileDescriptorProto.newBuilder().setName("pkg/b.proto").addDependency("pkg/a.proto").build();
+
+  // Writes a file for each file to generate, listing the parameter and the files of the request.
+  private static final Generator LISTING_GENERATOR =
+      (request, renderInParallel) -> {
+        StringBuilder content = new StringBuilder(request.getParameter()).append(':');
+        for (FileDescriptorProto file : request.getProtoFileList()) {
+          content.append(' ').append(file.getName());
+        }
+        CodeGeneratorResponse.Builder response = CodeGeneratorResponse.newBuilder();
+        for (String file : request.getFileToGenerateList()) {
+          response.addFileBuilder().setName(file + ".txt").setContent(content.toString());
+        }
+        return response.build();
+      };
+
+  private static final Generator FAILING_GENERATOR =
+      (request, renderInParallel) ->
+          CodeGeneratorResponse.newBuilder().setError("Generator failed").build();
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path directDescriptorSet;
+  private Path descriptorSet;
+
+  @Before
+  public void setUp() throws Exception {
+    // The dependency is listed after the file that depends on it.
+    directDescriptorSet = writeDescriptorSet("direct.pb", B);
+    descriptorSet = writeDescriptorSet("deps.pb", A);
+  }
+
+  @Test
+  public void testPlugin_readsRequestFromStdin() throws Exception {
+    CodeGeneratorRequest request =
+        CodeGeneratorRequest.newBuilder()
+            .setParameter("param")
+            .addFileToGenerate("pkg/a.proto")
+            .addProtoFile(A)
+            .build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    GeneratorWorker.run(
+        new String[0],
+        LISTING_GENERATOR,
+        new ByteArrayInputStream(request.toByteArray()),
+        new PrintStream(out));
+
+    CodeGeneratorResponse response = CodeGeneratorResponse.parseFrom(out.toByteArray());
+    assertThat(response.getFileCount()).isEqualTo(1);
+    assertThat(response.getFile(0).getName()).isEqualTo("pkg/a.proto.txt");
+    assertThat(response.getFile(0).getContent()).isEqualTo("param: pkg/a.proto");
+  }
+
+  @Test
+  public void testOneShot_writesGeneratedFiles() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+
+    runOneShot(LISTING_GENERATOR, arguments(output, "param"));
+
+    // Only the files of the direct descriptor set are generated, but the request has all files
+    // in topological order.
+    assertThat(readFile(output.resolve("pkg/b.proto.txt")))
+        .isEqualTo("param: pkg/a.proto pkg/b.proto");
+    assertThat(Files.exists(output.resolve("pkg/a.proto.txt"))).isFalse();
+  }
+
+  @Test
+  public void testOneShot_rendersInParallel() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+    List<Boolean> renderInParallelFlags = new ArrayList<>();
+
+    runOneShot(recordingGenerator(renderInParallelFlags), arguments(output, "param"));
+
+    assertThat(renderInParallelFlags).containsExactly(true);
+  }
+
+  @Test
+  public void testOneShot_expandsParamFiles() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+    Path paramFile = temporaryFolder.getRoot().toPath().resolve("params");
+    Files.write(paramFile, String.join("\n", arguments(output, "param")).getBytes(UTF_8));
+
+    runOneShot(LISTING_GENERATOR, "@" + paramFile);
+
+    assertThat(readFile(output.resolve("pkg/b.proto.txt")))
+        .isEqualTo("param: pkg/a.proto pkg/b.proto");
+  }
+
+  @Test
+  public void testOneShot_generatorError() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+
+    // Thrown out of main, which exits with a non-zero exit code.
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () -> runOneShot(FAILING_GENERATOR, arguments(output, "")));
+    assertThat(e).hasMessageThat().isEqualTo("Generator failed");
+  }
+
+  @Test
+  public void testOneShot_invalidArguments() {
+    assertThrows(
+        IllegalStateException.class, () -> runOneShot(LISTING_GENERATOR, "-parameter", "param"));
+  }
+
+  @Test
+  public void testPersistentWorker_singleplexRequest() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+
+    Map<Integer, WorkResponse> responses =
+        runPersistentWorker(LISTING_GENERATOR, workRequest(0, arguments(output, "param")));
+
+    assertThat(responses.keySet()).containsExactly(0);
+    assertThat(responses.get(0).exitCode).isEqualTo(0);
+    assertThat(responses.get(0).output).isEmpty();
+    assertThat(readFile(output.resolve("pkg/b.proto.txt")))
+        .isEqualTo("param: pkg/a.proto pkg/b.proto");
+  }
+
+  @Test
+  public void testPersistentWorker_singleplexRequestRendersInParallel() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+    List<Boolean> renderInParallelFlags = new ArrayList<>();
+
+    runPersistentWorker(
+        recordingGenerator(renderInParallelFlags), workRequest(0, arguments(output, "param")));
+
+    assertThat(renderInParallelFlags).containsExactly(true);
+  }
+
+  @Test
+  public void testPersistentWorker_multiplexRequestsRenderSequentially() throws Exception {
+    List<Boolean> renderInParallelFlags = new ArrayList<>();
+
+    runPersistentWorker(
+        recordingGenerator(renderInParallelFlags),
+        workRequest(1, arguments(temporaryFolder.newFolder().toPath(), "param")),
+        workRequest(2, arguments(temporaryFolder.newFolder().toPath(), "param")));
+
+    assertThat(renderInParallelFlags).containsExactly(false, false);
+  }
+
+  @Test
+  public void testPersistentWorker_multiplexRequests() throws Exception {
+    int requestCount = 2 * Runtime.getRuntime().availableProcessors() + 1;
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Generator generator =
+        (request, renderInParallel) -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          Thread.sleep(20);
+          running.decrementAndGet();
+          return LISTING_GENERATOR.generate(request, renderInParallel);
+        };
+    Path[] outputs = new Path[requestCount];
+    byte[][] requests = new byte[requestCount][];
+    for (int i = 0; i < requestCount; i++) {
+      outputs[i] = temporaryFolder.newFolder().toPath();
+      requests[i] = workRequest(i + 1, arguments(outputs[i], "param" + i));
+    }
+
+    Map<Integer, WorkResponse> responses = runPersistentWorker(generator, requests);
+
+    assertThat(responses).hasSize(requestCount);
+    for (int i = 0; i < requestCount; i++) {
+      assertThat(responses.get(i + 1).exitCode).isEqualTo(0);
+      assertThat(readFile(outputs[i].resolve("pkg/b.proto.txt")))
+          .isEqualTo("param" + i + ": pkg/a.proto pkg/b.proto");
+    }
+    assertThat(maxRunning.get()).isAtMost(Runtime.getRuntime().availableProcessors());
+  }
+
+  @Test
+  public void testPersistentWorker_failedRequestsAreReported() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+
+    Map<Integer, WorkResponse> responses =
+        runPersistentWorker(
+            LISTING_GENERATOR,
+            workRequest(1, "-parameter", "param"),
+            workRequest(2, arguments(output, "param")));
+
+    assertThat(responses.get(1).exitCode).isEqualTo(1);
+    assertThat(responses.get(1).output).contains("Failed to parse arguments");
+    // The worker keeps serving requests after a failed one.
+    assertThat(responses.get(2).exitCode).isEqualTo(0);
+  }
+
+  @Test
+  public void testPersistentWorker_generatorError() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+
+    Map<Integer, WorkResponse> responses =
+        runPersistentWorker(FAILING_GENERATOR, workRequest(1, arguments(output, "")));
+
+    assertThat(responses.get(1).exitCode).isEqualTo(1);
+    assertThat(responses.get(1).output).contains("Generator failed");
+  }
+
+  @Test
+  public void testPersistentWorker_generatorThrowsErrorIsReported() throws Exception {
+    Path output = temporaryFolder.newFolder().toPath();
+    Generator throwingGenerator =
+        (request, renderInParallel) -> {
+          throw new AssertionError("Generator crashed");
+        };
+
+    Map<Integer, WorkResponse> responses =
+        runPersistentWorker(
+            throwingGenerator,
+            workRequest(1, arguments(output, "")),
+            workRequest(2, arguments(output, "")));
+
+    assertThat(responses.get(1).exitCode).isEqualTo(1);
+    assertThat(responses.get(1).output).contains("Generator crashed");
+    assertThat(responses.get(2).exitCode).isEqualTo(1);
+  }
+
+  @Test
+  public void testPersistentWorker_descriptorSetsAreCachedByDigest() throws Exception {
+    Path firstOutput = temporaryFolder.newFolder().toPath();
+    Path secondOutput = temporaryFolder.newFolder().toPath();
+    Path thirdOutput = temporaryFolder.newFolder().toPath();
+    ByteString digest = newDigest();
+    byte[] first =
+        workRequest(1, ImmutableMap.of(directDescriptorSet, digest), arguments(firstOutput, "p"));
+    byte[] second =
+        workRequest(2, ImmutableMap.of(directDescriptorSet, digest), arguments(secondOutput, "p"));
+    byte[] third =
+        workRequest(
+            3, ImmutableMap.of(directDescriptorSet, newDigest()), arguments(thirdOutput, "p"));
+
+    runPersistentWorker(LISTING_GENERATOR, first);
+    // A changed file comes with a new digest, the old one still refers to the old content.
+    writeDescriptorSet("direct.pb", B.toBuilder().setName("pkg/c.proto").build());
+    runPersistentWorker(LISTING_GENERATOR, second, third);
+
+    assertThat(Files.exists(firstOutput.resolve("pkg/b.proto.txt"))).isTrue();
+    assertThat(Files.exists(secondOutput.resolve("pkg/b.proto.txt"))).isTrue();
+    assertThat(Files.exists(thirdOutput.resolve("pkg/c.proto.txt"))).isTrue();
+  }
+
+  private String[] arguments(Path output, String parameter) {
+    return new String[] {
+      "-output",
+      output.toString(),
+      "-parameter",
+      parameter,
+      "-directDescriptorSet",
+      directDescriptorSet.toString(),
+      "-descriptorSet",
+      descriptorSet.toString()
+    };
+  }
+
+  private Path writeDescriptorSet(String name, FileDescriptorProto... files) throws IOException {
+    FileDescriptorSet.Builder descriptorSet = FileDescriptorSet.newBuilder();
+    for (FileDescriptorProto file : files) {
+      descriptorSet.addFile(file);
+    }
+    Path path = temporaryFolder.getRoot().toPath().resolve(name);
+    Files.write(path, descriptorSet.build().toByteArray());
+    return path;
+  }
+
+  private static String readFile(Path path) throws IOException {
+    return new String(Files.readAllBytes(path), UTF_8);
+  }
+
+  private static ByteString newDigest() {
+    return ByteString.copyFromUtf8(UUID.randomUUID().toString());
+  }
+
+  /** Returns a generator that records the render mode of each request. */
+  private static Generator recordingGenerator(List<Boolean> renderInParallelFlags) {
+    return (request, renderInParallel) -> {
+      synchronized (renderInParallelFlags) {
+        renderInParallelFlags.add(renderInParallel);
+      }
+      return LISTING_GENERATOR.generate(request, renderInParallel);
+    };
+  }
+
+  private static void runOneShot(Generator generator, String... args) throws Exception {
+    GeneratorWorker.run(
+        args,
+        generator,
+        new ByteArrayInputStream(new byte[0]),
+        new PrintStream(new ByteArrayOutputStream()));
+  }
+
+  /** Runs the worker until it has handled all requests, and returns the responses by id. */
+  private static Map<Integer, WorkResponse> runPersistentWorker(
+      Generator generator, byte[]... requests) throws Exception {
+    ByteArrayOutputStream in = new ByteArrayOutputStream();
+    for (byte[] request : requests) {
+      in.write(request);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    GeneratorWorker.run(
+        new String[] {"--persistent_worker"},
+        generator,
+        new ByteArrayInputStream(in.toByteArray()),
+        new PrintStream(out));
+
+    Map<Integer, WorkResponse> responses = new HashMap<>();
+    InputStream responseStream = new ByteArrayInputStream(out.toByteArray());
+    WorkResponse response;
+    while ((response = WorkResponse.parseDelimitedFrom(responseStream)) != null) {
+      assertThat(responses.put(response.requestId, response)).isNull();
+    }
+    return responses;
+  }
+
+  private static byte[] workRequest(int requestId, String... args) throws IOException {
+    return workRequest(requestId, ImmutableMap.of(), args);
+  }
+
+  /** Returns a length delimited {@code WorkRequest}. */
+  private static byte[] workRequest(int requestId, Map<Path, ByteString> inputs, String... args)
+      throws IOException {
+    ByteString.Output request = ByteString.newOutput();
+    CodedOutputStream codedRequest = CodedOutputStream.newInstance(request);
+    for (String arg : args) {
+      codedRequest.writeString(1, arg);
+    }
+    for (Map.Entry<Path, ByteString> input : inputs.entrySet()) {
+      // Input: path = 1, digest = 2.
+      ByteString.Output inputBytes = ByteString.newOutput();
+      CodedOutputStream codedInput = CodedOutputStream.newInstance(inputBytes);
+      codedInput.writeString(1, input.getKey().toString());
+      codedInput.writeBytes(2, input.getValue());
+      codedInput.flush();
+      codedRequest.writeBytes(2, inputBytes.toByteString());
+    }
+    codedRequest.writeInt32(3, requestId);
+    codedRequest.flush();
+
+    ByteArrayOutputStream delimited = new ByteArrayOutputStream();
+    CodedOutputStream codedDelimited = CodedOutputStream.newInstance(delimited);
+    codedDelimited.writeBytesNoTag(request.toByteString());
+    codedDelimited.flush();
+    return delimited.toByteArray();
+  }
+
+  /** Bazel's {@code WorkResponse}, decoded by hand like the worker does for the requests. */
+  private static final class WorkResponse {
+    int exitCode;
+    String output = "";
+    int requestId;
+
+    static WorkResponse parseDelimitedFrom(InputStream in) throws IOException {
+      int firstByte = in.read();
+      if (firstByte == -1) {
+        return null;
+      }
+      byte[] bytes = new byte[CodedInputStream.readRawVarint32(firstByte, in)];
+      assertThat(in.read(bytes)).isEqualTo(bytes.length);
+
+      WorkResponse response = new WorkResponse();
+      CodedInputStream input = CodedInputStream.newInstance(bytes);
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        switch (tag) {
+          case 8: // int32 exit_code = 1;
+            response.exitCode = input.readInt32();
+            break;
+          case 18: // string output = 2;
+            response.output = input.readString();
+            break;
+          case 24: // int32 request_id = 3;
+            response.requestId = input.readInt32();
+            break;
+          default:
+            input.skipField(tag);
+        }
+      }
+      return response;
+    }
+  }
+}
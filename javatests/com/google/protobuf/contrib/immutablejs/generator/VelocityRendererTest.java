@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.immutablejs.generator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.escapevelocity.Template;
+import java.io.FileNotFoundException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class VelocityRendererTest {
+
+  // Includes velocity_renderer_test_included.vm.
+  private static final String TEMPLATE = "velocity_renderer_test.vm";
+
+  private final VelocityRenderer renderer = new VelocityRenderer(VelocityRendererTest.class);
+
+  @Test
+  public void testRenderTemplate_secondRenderReusesParsedTemplate() throws Exception {
+    String first = renderer.renderTemplate(TEMPLATE, ImmutableMap.of("name", "world"));
+    Template template = renderer.getTemplate(TEMPLATE);
+
+    String second = renderer.renderTemplate(TEMPLATE, ImmutableMap.of("name", "world"));
+
+    assertThat(first).contains("Hello world!");
+    assertThat(first).contains("included");
+    assertThat(second).isEqualTo(first);
+    assertThat(renderer.getTemplate(TEMPLATE)).isSameInstanceAs(template);
+  }
+
+  @Test
+  public void testRenderTemplate_parsedTemplatesAreSharedByRenderers() throws Exception {
+    Template template = renderer.getTemplate(TEMPLATE);
+
+    VelocityRenderer otherRenderer = new VelocityRenderer(VelocityRendererTest.class);
+
+    assertThat(otherRenderer.getTemplate(TEMPLATE)).isSameInstanceAs(template);
+  }
+
+  @Test
+  public void testRenderTemplate_contextIsNotRetained() throws Exception {
+    renderer.renderTemplate(TEMPLATE, ImmutableMap.of("name", "world"));
+
+    String output = renderer.renderTemplate(TEMPLATE, ImmutableMap.of("name", "again"));
+
+    assertThat(output).contains("Hello again!");
+    assertThat(output).doesNotContain("world");
+  }
+
+  @Test
+  public void testRenderTemplate_missingTemplate() {
+    assertThrows(
+        FileNotFoundException.class,
+        () -> renderer.renderTemplate("missing.vm", ImmutableMap.of()));
+    // Failures are not cached.
+    assertThrows(
+        FileNotFoundException.class,
+        () -> renderer.renderTemplate("missing.vm", ImmutableMap.of()));
+  }
+}
@@ -135,6 +135,39 @@ class GroupsTest {
         groups.serialize());
   }
 
+  testBinaryRoundTrip_group() {
+    const group = GroupsProto.OptionalGroup.newBuilder()
+                      .setFoo('aaa')
+                      .setBar(1)
+                      .setBeyondNormalPivot(2)
+                      .build();
+
+    const bytes = group.serializeBinary();
+
+    // Groups are serialized with the layout they are parsed into.
+    assertArrayEquals(
+        [0x12, 0x03, 0x61, 0x61, 0x61, 0x18, 0x01, 0xc0, 0x3e, 0x02],
+        Array.from(bytes));
+    const parsed = GroupsProto.OptionalGroup.parseBinary(bytes);
+    assertEquals(group.serialize(), parsed.serialize());
+    assertEqualsForProto(true, parsed.equals(group));
+  }
+
+  testBinaryRoundTrip_groupFields() {
+    const groups =
+        GroupsProto.newBuilder()
+            .setOptionalGroup(
+                GroupsProto.OptionalGroup.newBuilder().setFoo('aaa').setBar(1))
+            .addRepeatedGroup(
+                GroupsProto.RepeatedGroup.newBuilder().setFoo('bbb').setBar(2))
+            .build();
+
+    const parsed = GroupsProto.parseBinary(groups.serializeBinary());
+
+    assertEquals(groups.serialize(), parsed.serialize());
+    assertEqualsForProto(true, parsed.equals(groups));
+  }
+
   testBuildFixedBuggyGroup() {
     let buggy =
         BuggyGroupMessage.newBuilder()
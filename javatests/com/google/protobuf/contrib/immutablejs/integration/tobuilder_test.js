@@ -320,6 +320,23 @@ class ToBuilderTest {
     assertEqualsForProto('6', nestedMessageArray2[3].getPayload());
   }
 
+  testBuilderReusedAfterBuild() {
+    const builder = TestProto.newBuilder().addRepeatedInt(1);
+    const first = builder.build();
+    const second = builder.addRepeatedInt(2).setOptionalInt(3).build();
+
+    assertEqualsForProto([1], first.getRepeatedIntList().toArray());
+    assertFalse(first.hasOptionalInt());
+    assertEqualsForProto([1, 2], second.getRepeatedIntList().toArray());
+    assertEqualsForProto(3, second.getOptionalInt());
+
+    builder.setRepeatedInt(0, 4);
+
+    assertEqualsForProto([1], first.getRepeatedIntList().toArray());
+    assertEqualsForProto([1, 2], second.getRepeatedIntList().toArray());
+    assertEqualsForProto([4, 2], builder.getRepeatedIntList().toArray());
+  }
+
   testRepeatedFieldInExtension() {
     const baseBuilder = Base.newBuilder();
 
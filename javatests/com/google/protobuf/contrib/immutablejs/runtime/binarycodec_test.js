@@ -0,0 +1,318 @@
+// Copyright 2022 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+goog.module('proto.im.internal.BinaryCodecTest');
+goog.setTestOnly();
+
+const BinaryCodec = goog.require('proto.im.internal.BinaryCodec');
+const testSuite = goog.require('goog.testing.testSuite');
+const {FIXED_GROUP_FLAG} = goog.require('proto.im.defines');
+const {Descriptor, FieldType} = goog.require('proto.im.descriptor');
+const {createDescriptorBuilder} = goog.require('proto.im.descriptor.testing.descriptors');
+
+const NESTED_DESCRIPTOR =
+    createDescriptorBuilder().addField(1, FieldType.STRING).build();
+
+const MAP_ENTRY_DESCRIPTOR = createDescriptorBuilder()
+                                 .addField(1, FieldType.INT32)
+                                 .addField(2, FieldType.STRING)
+                                 .build();
+
+const GROUP_DESCRIPTOR =
+    createDescriptorBuilder().addField(1, FieldType.INT32).build();
+
+const GROUP_WITH_MESSAGE_ID_DESCRIPTOR = createDescriptorBuilder()
+                                             .withMessageId('id')
+                                             .addField(1, FieldType.INT32)
+                                             .build();
+
+/**
+ * @param {!Uint8Array} bytes
+ * @return {!Array<number>}
+ */
+function toArray(bytes) {
+  return Array.from(bytes);
+}
+
+class BinaryCodecTest {
+  testSerialize_varint() {
+    const descriptor =
+        createDescriptorBuilder().addField(1, FieldType.INT32).build();
+    assertArrayEquals(
+        [0x08, 0x96, 0x01],
+        toArray(BinaryCodec.serialize([150], descriptor)));
+    assertArrayEquals(
+        [0x08, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0x01],
+        toArray(BinaryCodec.serialize([-1], descriptor)));
+  }
+
+  testSerialize_skipsUnsetFields() {
+    const descriptor = createDescriptorBuilder()
+                           .addField(1, FieldType.INT32)
+                           .addField(2, FieldType.STRING)
+                           .build();
+    assertArrayEquals([], toArray(BinaryCodec.serialize([], descriptor)));
+    assertArrayEquals(
+        [0x12, 0x01, 0x61],
+        toArray(BinaryCodec.serialize([null, 'a'], descriptor)));
+  }
+
+  testSerialize_packed() {
+    const packed =
+        createDescriptorBuilder().addRepeatedField(1, FieldType.BOOL).build();
+    assertArrayEquals(
+        [0x0a, 0x02, 0x01, 0x00],
+        toArray(BinaryCodec.serialize([[1, 0]], packed)));
+
+    const unpacked = createDescriptorBuilder()
+                         .addRepeatedField(1, FieldType.BOOL, {unpacked: true})
+                         .build();
+    assertArrayEquals(
+        [0x08, 0x01, 0x08, 0x00],
+        toArray(BinaryCodec.serialize([[1, 0]], unpacked)));
+  }
+
+  testSerialize_messageId() {
+    const descriptor = createDescriptorBuilder()
+                           .withMessageId('id')
+                           .addField(1, FieldType.INT32)
+                           .build();
+    assertArrayEquals(
+        [0x08, 0x02], toArray(BinaryCodec.serialize(['id', 2], descriptor)));
+    assertArrayEquals(
+        ['id', 2], BinaryCodec.parse(new Uint8Array([0x08, 0x02]), descriptor));
+  }
+
+  testParse_packedAndUnpacked() {
+    const descriptor =
+        createDescriptorBuilder().addRepeatedField(1, FieldType.INT32).build();
+    assertArrayEquals(
+        [[5, 6, 7]],
+        BinaryCodec.parse(
+            new Uint8Array([0x0a, 0x02, 0x05, 0x06, 0x08, 0x07]), descriptor));
+  }
+
+  testParse_skipsUnknownFields() {
+    const descriptor =
+        createDescriptorBuilder().addField(1, FieldType.INT32).build();
+    assertArrayEquals(
+        [3],
+        BinaryCodec.parse(
+            new Uint8Array([
+              // Unknown varint field 100.
+              0xa0, 0x06, 0x01,
+              // Unknown group field 101 containing a varint.
+              0xab, 0x06, 0x08, 0x01, 0xac, 0x06,
+              // Field 1 = 3
+              0x08, 0x03,
+            ]),
+            descriptor));
+  }
+
+  testParse_mergesMessages() {
+    const descriptor =
+        createDescriptorBuilder()
+            .addField(
+                1, FieldType.MESSAGE,
+                {submessageDescriptorProvider: () => NESTED_DESCRIPTOR})
+            .addField(2, FieldType.INT32)
+            .build();
+    const first = BinaryCodec.serialize([['first'], 1], descriptor);
+    const second = BinaryCodec.serialize([['second']], descriptor);
+    const bytes = new Uint8Array(first.length + second.length);
+    bytes.set(first);
+    bytes.set(second, first.length);
+
+    assertArrayEquals([['second'], 1], BinaryCodec.parse(bytes, descriptor));
+  }
+
+  testParse_invalid() {
+    const descriptor = createDescriptorBuilder()
+                           .addField(1, FieldType.INT32)
+                           .addField(2, FieldType.STRING)
+                           .build();
+    // Truncated varint.
+    assertThrows(
+        () => BinaryCodec.parse(new Uint8Array([0x08, 0x80]), descriptor));
+    // Truncated string.
+    assertThrows(
+        () => BinaryCodec.parse(new Uint8Array([0x12, 0x05]), descriptor));
+    // Zero tag.
+    assertThrows(() => BinaryCodec.parse(new Uint8Array([0x00]), descriptor));
+    // Unexpected end group tag.
+    assertThrows(() => BinaryCodec.parse(new Uint8Array([0x0c]), descriptor));
+  }
+
+  testRoundTrip_scalars() {
+    const descriptor =
+        createDescriptorBuilder()
+            .addField(1, FieldType.DOUBLE)
+            .addField(2, FieldType.FLOAT)
+            .addField(3, FieldType.SINT32)
+            .addField(4, FieldType.UINT32)
+            .addField(5, FieldType.SFIXED32)
+            .addField(6, FieldType.BOOL)
+            .addField(7, FieldType.STRING)
+            .addField(8, FieldType.BYTES)
+            .addField(9, FieldType.ENUM)
+            .build();
+    const data = ['Infinity', 1.5, -3, 4294967295, -5, 1, 'é😀', 'AQID', -1];
+    assertRoundTrips(data, descriptor);
+  }
+
+  testRoundTrip_longs() {
+    const descriptor =
+        createDescriptorBuilder()
+            .addField(1, FieldType.INT64, {jspbInt64String: true})
+            .addField(2, FieldType.UINT64, {jspbInt64String: true})
+            .addField(3, FieldType.SINT64, {jspbInt64String: true})
+            .addField(4, FieldType.FIXED64, {jspbInt64String: true})
+            .addField(5, FieldType.SFIXED64, {jspbInt64String: true})
+            .addField(6, FieldType.INT64)
+            .addField(7, FieldType.SINT64)
+            .build();
+    const data = [
+      '-9223372036854775808',
+      '18446744073709551615',
+      '-2',
+      '1',
+      '9223372036854775807',
+      -4503599627370495,
+      4503599627370495,
+    ];
+    assertRoundTrips(data, descriptor);
+  }
+
+  testRoundTrip_unsignedLongNumbers() {
+    const descriptor = createDescriptorBuilder()
+                           .addField(1, FieldType.UINT64)
+                           .addField(2, FieldType.FIXED64)
+                           .build();
+    // 2^63 and the largest double below 2^64.
+    const data = [9223372036854775808, 18446744073709549568];
+    assertArrayEquals(
+        [
+          0x08, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01,
+          0x11, 0x00, 0xf8, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff,
+        ],
+        toArray(BinaryCodec.serialize(data, descriptor)));
+    assertRoundTrips(data, descriptor);
+    // 2^64 - 1 rounds up to the nearest double rather than becoming negative.
+    assertArrayEquals(
+        [18446744073709551616],
+        BinaryCodec.parse(
+            new Uint8Array([
+              0x08, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0x01,
+            ]),
+            descriptor));
+  }
+
+  testRoundTrip_repeatedAndNested() {
+    const descriptor =
+        createDescriptorBuilder()
+            .addRepeatedField(1, FieldType.STRING)
+            .addRepeatedField(2, FieldType.DOUBLE)
+            .addRepeatedField(
+                3, FieldType.MESSAGE,
+                {submessageDescriptorProvider: () => NESTED_DESCRIPTOR})
+            .addRepeatedField(
+                4, FieldType.MESSAGE,
+                {submessageDescriptorProvider: () => MAP_ENTRY_DESCRIPTOR})
+            .build();
+    const data = [
+      ['a', ''],
+      [1, 'NaN', '-Infinity'],
+      [['nested'], []],
+      [[1, 'one'], [-2, 'minus two']],
+    ];
+    assertRoundTrips(data, descriptor);
+  }
+
+  testRoundTrip_group() {
+    const descriptor =
+        createDescriptorBuilder()
+            .addField(
+                1, FieldType.GROUP,
+                {submessageDescriptorProvider: () => GROUP_DESCRIPTOR})
+            .addRepeatedField(
+                2, FieldType.GROUP,
+                {submessageDescriptorProvider: () => GROUP_DESCRIPTOR})
+            .build();
+    const data = [
+      [5, {[FIXED_GROUP_FLAG]: 1}],
+      [[6, {[FIXED_GROUP_FLAG]: 1}], [{[FIXED_GROUP_FLAG]: 1}]],
+    ];
+    assertArrayEquals(
+        [0x0b, 0x08, 0x05, 0x0c, 0x13, 0x08, 0x06, 0x14, 0x13, 0x14],
+        toArray(BinaryCodec.serialize(data, descriptor)));
+    assertRoundTrips(data, descriptor);
+  }
+
+  testRoundTrip_groupWithMessageId() {
+    const descriptor =
+        createDescriptorBuilder()
+            .addField(
+                1, FieldType.GROUP,
+                {
+                  submessageDescriptorProvider: () =>
+                      GROUP_WITH_MESSAGE_ID_DESCRIPTOR,
+                })
+            .build();
+    // Groups are parsed without the message id, so field 1 is at index 0.
+    const data = [[5, {[FIXED_GROUP_FLAG]: 1}]];
+    assertArrayEquals(
+        [0x0b, 0x08, 0x05, 0x0c],
+        toArray(BinaryCodec.serialize(data, descriptor)));
+    assertRoundTrips(data, descriptor);
+
+    const group = [5, {[FIXED_GROUP_FLAG]: 1}];
+    const bytes = BinaryCodec.serialize(
+        group, GROUP_WITH_MESSAGE_ID_DESCRIPTOR, /* isGroup= */ true);
+    assertArrayEquals([0x08, 0x05], toArray(bytes));
+    assertObjectEquals(
+        group,
+        BinaryCodec.parse(
+            bytes, GROUP_WITH_MESSAGE_ID_DESCRIPTOR, /* isGroup= */ true));
+  }
+
+  testRoundTrip_sparseObject() {
+    const registry = {};
+    const descriptor = createDescriptorBuilder()
+                           .withExtensionRegistry(registry)
+                           .addField(1, FieldType.INT32)
+                           .addField(2, FieldType.INT32)
+                           .addExtension(600, FieldType.STRING)
+                           .build();
+    // Extendable messages pivot right after their highest field.
+    const data = [1, 2, {600: 'extension'}];
+    assertRoundTrips(data, descriptor);
+    // Fields are read from the sparse object of any pivot.
+    assertArrayEquals(
+        toArray(BinaryCodec.serialize(data, descriptor)),
+        toArray(BinaryCodec.serialize(
+            [1, {2: 2, 600: 'extension'}], descriptor)));
+  }
+}
+
+/**
+ * @param {!Array<*>} data
+ * @param {!Descriptor} descriptor
+ */
+function assertRoundTrips(data, descriptor) {
+  assertObjectEquals(
+      data,
+      BinaryCodec.parse(BinaryCodec.serialize(data, descriptor), descriptor));
+}
+
+testSuite(new BinaryCodecTest());
@@ -113,6 +113,38 @@ class ByteStringTest {
     assertElementsEquals([0, 1, 2], byteString.toUint8Array());
   }
 
+  testWrapUnsafe_sharesBytes() {
+    const bytes = new Uint8Array([0, 1, 2]);
+    const byteString = ByteString.wrapUnsafe(bytes);
+    assertElementsEquals([0, 1, 2], byteString.toInt8Array());
+    // Only done to observe the sharing, callers must not modify wrapped bytes.
+    bytes[0] = 5;
+    assertEquals(5, byteString.byteAt(0));
+  }
+
+  testWrapUnsafe_subarray() {
+    const bytes = new Uint8Array([0, 1, 2, 3, 4]).subarray(1, 4);
+    const byteString = ByteString.wrapUnsafe(bytes);
+    assertEquals(3, byteString.size());
+    assertElementsEquals([1, 2, 3], byteString.toUint8Array());
+    assertEquals(base64.encodeByteArray([1, 2, 3]), byteString.toBase64String());
+    assertTrue(byteString.equals(ByteString.copyFrom([1, 2, 3])));
+  }
+
+  testToUint8ArrayUnsafe() {
+    const byteString = ByteString.copyFrom([0, 128, 255]);
+    const bytes = byteString.toUint8ArrayUnsafe();
+    assertElementsEquals([0, 128, 255], bytes);
+    // The same buffer is returned every time, no copy is made.
+    assertEquals(bytes.buffer, byteString.toUint8ArrayUnsafe().buffer);
+  }
+
+  testToUint8ArrayUnsafe_subarray() {
+    const byteString =
+        ByteString.wrapUnsafe(new Uint8Array([0, 1, 2, 3]).subarray(2));
+    assertElementsEquals([2, 3], byteString.toUint8ArrayUnsafe());
+  }
+
   testIsEmpty() {
     assertTrue(ByteString.EMPTY.isEmpty());
     assertTrue(
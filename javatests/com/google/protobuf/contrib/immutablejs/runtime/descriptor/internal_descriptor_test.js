@@ -338,6 +338,86 @@ testSuite({
     }
   },
 
+  testFindFieldByNumber: {
+    testDeclaredField() {
+      const descriptor = createDescriptorBuilder()
+                             .addField(1, FieldType.INT32)
+                             .addField(7, FieldType.STRING)
+                             .build();
+
+      assertEquals(
+          FieldType.STRING, descriptor.findFieldByNumber(7).fieldType);
+      assertNull(descriptor.findFieldByNumber(2));
+    },
+
+    testExtensionField() {
+      const descriptor = createDescriptorBuilder()
+                             .withExtensionRegistry({})
+                             .addField(1, FieldType.INT32)
+                             .addExtension(100, FieldType.BOOL)
+                             .build();
+
+      const field = descriptor.findFieldByNumber(100);
+      assertTrue('Field 100 should be an extension', field.extension);
+      assertEquals(FieldType.BOOL, field.fieldType);
+      assertNull(descriptor.findFieldByNumber(101));
+    },
+  },
+
+  testCaching: {
+    testDeclaredFieldsAreDecodedOnce() {
+      const descriptor =
+          createDescriptorBuilder().addField(1, FieldType.INT32).build();
+
+      assertEquals(descriptor.fields(), descriptor.fields());
+      assertEquals(
+          descriptor.fields()[1], descriptor.findFieldByNumber(1));
+      assertTrue(
+          'Shared fields should be frozen',
+          Object.isFrozen(descriptor.fields()[1]));
+    },
+
+    testExtensionsRegisteredLater_shouldBeIncluded() {
+      const extensionRegistry = {};
+      const builder = createDescriptorBuilder()
+                          .withExtensionRegistry(extensionRegistry)
+                          .addField(1, FieldType.INT32);
+      const descriptor = builder.build();
+      assertNull(descriptor.findFieldByNumber(100));
+
+      builder.addExtension(100, FieldType.STRING);
+
+      assertEquals(
+          FieldType.STRING, descriptor.findFieldByNumber(100).fieldType);
+      assertEquals(FieldType.STRING, descriptor.fields()[100].fieldType);
+    },
+
+    testExtensionsAreDecodedOnce() {
+      const extensionRegistry = {};
+      const descriptor = createDescriptorBuilder()
+                             .withExtensionRegistry(extensionRegistry)
+                             .addField(1, FieldType.INT32)
+                             .addExtension(100, FieldType.STRING)
+                             .build();
+
+      const extensionField = descriptor.findFieldByNumber(100);
+      assertEquals(extensionField, descriptor.findFieldByNumber(100));
+      assertEquals(extensionField, descriptor.fields()[100]);
+      assertEquals(descriptor.fields(), descriptor.fields());
+      assertTrue(
+          'Shared fields should be frozen', Object.isFrozen(extensionField));
+      assertNull(descriptor.findFieldByNumber(2));
+    },
+
+    testDecodingError_shouldThrowOnEveryCall() {
+      const descriptor =
+          createDescriptorBuilder().addField(1, FieldType.MESSAGE).build();
+
+      assertThrows(() => descriptor.fields());
+      assertThrows(() => descriptor.findFieldByNumber(1));
+    },
+  },
+
   testMessageId: {
     testWhenMissing_ShouldReturnNull() {
       const descriptor = createDescriptorBuilder().build();
@@ -486,6 +486,28 @@ class InternalMapTest {
     assertEquals(2, map.size());
   }
 
+  testRemove_withLongKeys_elementRemoved() {
+    const mapEntries = [
+      ['1', 'firstValue'],
+      ['9223372036854775807', 'secondValue'],
+      ['-2', 'thirdValue'],
+    ];
+
+    const map = new InternalMap(
+        mapEntries, FieldAccessor.getLong, FieldAccessor.setLong,
+        FieldAccessor.getString, FieldAccessor.setString);
+
+    map.remove(Long.fromNumber(1));
+
+    assertArrayEquals(
+        [['-2', 'thirdValue'], ['9223372036854775807', 'secondValue']],
+        mapEntries);
+    assertUndefined(map.get(Long.fromNumber(1)));
+    assertEquals('thirdValue', map.get(Long.fromNumber(-2)));
+    assertEquals('secondValue', map.get(Long.getMaxValue()));
+    assertEquals(2, map.size());
+  }
+
   testCreate_withStringKeySerializer() {
     const mapEntries = [['firstKey', 'firstValue']];
 
@@ -526,6 +548,18 @@ class InternalMapTest {
     assertTrue(map.has(Long.fromNumber(1234)));
   }
 
+  testCreate_withLongKeySerializer() {
+    const mapEntries = [['9223372036854775807', 'firstValue']];
+
+    const map = new InternalMap(
+        mapEntries, FieldAccessor.getLong, FieldAccessor.setLong,
+        FieldAccessor.getString, FieldAccessor.setString);
+
+    assertTrue(map.has(Long.getMaxValue()));
+    assertTrue(map.has(Long.fromString('9223372036854775807')));
+    assertFalse(map.has(Long.getMinValue()));
+  }
+
   testMalformedMap_withEquivalentLongKeys_areConsideredTheSame() {
     const mapEntries = [[1234, 'firstValue'], ['1234', 'secondValue']];
 
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.j2cl.generator;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.AnyProto;
+import com.google.protobuf.ApiProto;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DurationProto;
+import com.google.protobuf.EmptyProto;
+import com.google.protobuf.FieldMaskProto;
+import com.google.protobuf.SourceContextProto;
+import com.google.protobuf.StructProto;
+import com.google.protobuf.TimestampProto;
+import com.google.protobuf.TypeProto;
+import com.google.protobuf.WrappersProto;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class J2CLProtobufCompilerTest {
+
+  @Test
+  public void testGenerate_parallelRenderingMatchesSequential() throws Exception {
+    CodeGeneratorRequest request = createWellKnownTypesRequest();
+
+    CodeGeneratorResponse sequential =
+        J2CLProtobufCompiler.generate(request, /* renderInParallel= */ false);
+
+    assertThat(sequential.hasError()).isFalse();
+    assertThat(sequential.getFileCount()).isAtLeast(request.getFileToGenerateCount());
+    // Repeated, as the order in which the files are rendered differs from run to run.
+    for (int i = 0; i < 5; i++) {
+      assertThat(J2CLProtobufCompiler.generate(request, /* renderInParallel= */ true))
+          .isEqualTo(sequential);
+    }
+  }
+
+  /** Returns a request to generate all well-known types, in topological order. */
+  private static CodeGeneratorRequest createWellKnownTypesRequest() {
+    CodeGeneratorRequest.Builder request = CodeGeneratorRequest.newBuilder();
+    for (FileDescriptor file :
+        new FileDescriptor[] {
+          AnyProto.getDescriptor(),
+          SourceContextProto.getDescriptor(),
+          TypeProto.getDescriptor(),
+          ApiProto.getDescriptor(),
+          DurationProto.getDescriptor(),
+          EmptyProto.getDescriptor(),
+          FieldMaskProto.getDescriptor(),
+          StructProto.getDescriptor(),
+          TimestampProto.getDescriptor(),
+          WrappersProto.getDescriptor(),
+        }) {
+      request.addFileToGenerate(file.getName()).addProtoFile(file.toProto());
+    }
+    return request.build();
+  }
+}
@@ -39,4 +39,24 @@ public class BuilderCloneTest {
     assertThat(builder2.getOptionalString()).isEmpty();
     assertThat(builder2.hasOptionalString()).isFalse();
   }
+
+  @Test
+  public void testLargeRepeatedField() {
+    TestProto.Builder builder1 = TestProto.newBuilder();
+    for (int i = 0; i < 5000; i++) {
+      builder1.addRepeatedInt(i);
+    }
+    TestProto.Builder builder2 = builder1.clone();
+
+    builder1.setRepeatedInt(0, -1).addRepeatedInt(5000);
+    builder2.setRepeatedInt(4000, -2);
+
+    assertThat(builder1.getRepeatedIntCount()).isEqualTo(5001);
+    assertThat(builder1.getRepeatedInt(0)).isEqualTo(-1);
+    assertThat(builder1.getRepeatedInt(4000)).isEqualTo(4000);
+    assertThat(builder1.getRepeatedInt(5000)).isEqualTo(5000);
+    assertThat(builder2.getRepeatedIntCount()).isEqualTo(5000);
+    assertThat(builder2.getRepeatedInt(0)).isEqualTo(0);
+    assertThat(builder2.getRepeatedInt(4000)).isEqualTo(-2);
+  }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.j2cl.integration;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.GeneratedMessageLite.Internal_;
+import com.google.protobuf.GeneratedMessageLite.Internal_.ListView;
+import com.google.protobuf.contrib.j2cl.protos.Accessor.TestProto;
+import com.google.protobuf.contrib.j2cl.protos.Enums.EnumTestProto;
+import com.google.protobuf.contrib.j2cl.protos.Enums.EnumTestProto.TestEnum;
+import com.google.protobuf.contrib.j2cl.protos.Maps.MapTestProto;
+import java.util.List;
+import java.util.Map;
+import jsinterop.annotations.JsMethod;
+import jsinterop.annotations.JsPackage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that the Java collections adapting the JS list and map views are cached on the views. */
+@RunWith(JUnit4.class)
+public final class JavaViewCacheTest {
+
+  @Test
+  public void testRepeatedField_returnsSameInstance() {
+    TestProto proto = TestProto.newBuilder().addRepeatedInt(1).addRepeatedString("foo").build();
+
+    assertThat(proto.getRepeatedIntList()).isSameInstanceAs(proto.getRepeatedIntList());
+    assertThat(proto.getRepeatedStringList()).isSameInstanceAs(proto.getRepeatedStringList());
+  }
+
+  @Test
+  public void testRepeatedEnumField_returnsSameInstance() {
+    // The converter of enum fields is allocated for each call of the getter.
+    EnumTestProto proto = EnumTestProto.newBuilder().addRepeatedEnum(TestEnum.TWO).build();
+
+    assertThat(proto.getRepeatedEnumList()).isSameInstanceAs(proto.getRepeatedEnumList());
+    assertThat(proto.getRepeatedEnumList()).containsExactly(TestEnum.TWO);
+  }
+
+  @Test
+  public void testMapField_returnsSameInstance() {
+    MapTestProto proto = MapTestProto.newBuilder().putStringKeyStringValue("foo", "bar").build();
+
+    assertThat(proto.getStringKeyStringValueMap())
+        .isSameInstanceAs(proto.getStringKeyStringValueMap());
+  }
+
+  @Test
+  public void testBuilderMapField_cachedViewBecomesEmpty() {
+    MapTestProto.Builder builder = MapTestProto.newBuilder().putStringKeyStringValue("foo", "bar");
+    Map<String, String> map = builder.getStringKeyStringValueMap();
+
+    // The field is still present after removing its last entry, so the cached view is returned.
+    builder.removeStringKeyStringValue("foo");
+
+    assertThat(builder.getStringKeyStringValueMap()).isEmpty();
+    assertThat(map).isEmpty();
+
+    builder.putStringKeyStringValue("buzz", "bar");
+
+    assertThat(builder.getStringKeyStringValueMap()).containsExactly("buzz", "bar");
+  }
+
+  @Test
+  public void testSameListInDifferentMessages_returnsEqualLists() {
+    TestProto proto = TestProto.newBuilder().addRepeatedInt(1).build();
+    TestProto copy = proto.toBuilder().setOptionalInt(2).build();
+
+    assertThat(copy.getRepeatedIntList()).isEqualTo(proto.getRepeatedIntList());
+  }
+
+  @Test
+  public void testEmptyRepeatedField_isNotCached() {
+    // Empty fields share a single view, which must not hold the adapter of any one field.
+    TestProto proto = TestProto.getDefaultInstance();
+    EnumTestProto enumProto = EnumTestProto.getDefaultInstance();
+
+    assertThat(proto.getRepeatedIntList()).isNotSameInstanceAs(proto.getRepeatedIntList());
+    assertThat(proto.getRepeatedIntList()).isEmpty();
+    assertThat(proto.getRepeatedStringList()).isEmpty();
+    assertThat(enumProto.getRepeatedEnumList()).isEmpty();
+  }
+
+  @Test
+  public void testEmptyMapField_isNotCached() {
+    MapTestProto proto = MapTestProto.getDefaultInstance();
+
+    assertThat(proto.getStringKeyStringValueMap())
+        .isNotSameInstanceAs(proto.getStringKeyStringValueMap());
+    assertThat(proto.getStringKeyStringValueMap()).isEmpty();
+    assertThat(proto.getInt32KeyInt32ValueMap()).isEmpty();
+  }
+
+  @Test
+  public void testExtensibleView_isCached() {
+    ListView<String> view = new TestListView();
+
+    assertThat(Internal_.createList(view)).isSameInstanceAs(Internal_.createList(view));
+  }
+
+  @Test
+  public void testFrozenView_isNotCached() {
+    ListView<String> view = freeze(new TestListView());
+
+    List<String> list = Internal_.createList(view);
+
+    assertThat(Internal_.createList(view)).isNotSameInstanceAs(list);
+    assertThat(list).containsExactly("foo");
+  }
+
+  private static class TestListView implements ListView<String> {
+    @Override
+    public String get(int index) {
+      return "foo";
+    }
+
+    @Override
+    public int size() {
+      return 1;
+    }
+  }
+
+  @JsMethod(namespace = JsPackage.GLOBAL, name = "Object.freeze")
+  private static native <T> T freeze(T object);
+}
@@ -216,6 +216,21 @@ public final class MapsTest {
             new SimpleImmutableEntry<>("dupe", "bar"));
   }
 
+  @Test
+  public void testMap_forEach_visitsAllEntries() {
+    MapTestProto proto =
+        MapTestProto.newBuilder()
+            .putInt32KeyInt32Value(1, 10)
+            .putInt32KeyInt32Value(2, 20)
+            .putInt32KeyInt32Value(1, 30)
+            .build();
+    Map<Integer, Integer> entries = new HashMap<>();
+
+    proto.getInt32KeyInt32ValueMap().forEach(entries::put);
+
+    assertThat(entries).containsExactly(1, 30, 2, 20);
+  }
+
   @Test
   public void testMapBuilder_keySet_updatesWithMutations() {
     MapTestProto.Builder builder =
@@ -287,4 +302,55 @@ public final class MapsTest {
         .containsExactly(1, 2);
     assertThat(original.getInt32KeyInt32ValueMap()).containsExactly(1, 1);
   }
+
+  @Test
+  public void testMap_largeMap_toBuilder_originalIsNotModified() {
+    MapTestProto.Builder builder = MapTestProto.newBuilder();
+    for (int i = 0; i < 5000; i++) {
+      builder.putInt32KeyInt32Value(i, i);
+    }
+    MapTestProto original = builder.build();
+
+    MapTestProto modified =
+        original.toBuilder()
+            .putInt32KeyInt32Value(0, -1)
+            .removeInt32KeyInt32Value(1)
+            .putInt32KeyInt32Value(5000, 5000)
+            .build();
+
+    assertThat(original.getInt32KeyInt32ValueCount()).isEqualTo(5000);
+    assertThat(original.getInt32KeyInt32ValueOrThrow(0)).isEqualTo(0);
+    assertThat(original.containsInt32KeyInt32Value(1)).isTrue();
+    assertThat(original.containsInt32KeyInt32Value(5000)).isFalse();
+    assertThat(modified.getInt32KeyInt32ValueCount()).isEqualTo(5000);
+    assertThat(modified.getInt32KeyInt32ValueOrThrow(0)).isEqualTo(-1);
+    assertThat(modified.containsInt32KeyInt32Value(1)).isFalse();
+    assertThat(modified.getInt32KeyInt32ValueOrThrow(4999)).isEqualTo(4999);
+    assertThat(modified.getInt32KeyInt32ValueOrThrow(5000)).isEqualTo(5000);
+  }
+
+  @Test
+  public void testMap_generatedLookups() {
+    MapTestProto.Builder builder =
+        MapTestProto.newBuilder()
+            .putInt64KeyDoubleValue(1L, 1.5)
+            .putBoolKeyInt64Value(true, 2L)
+            .putStringKeyInt32Value("foo", 3);
+    MapTestProto proto = builder.build();
+
+    assertThat(proto.getInt64KeyDoubleValueCount()).isEqualTo(1);
+    assertThat(proto.containsInt64KeyDoubleValue(1L)).isTrue();
+    assertThat(proto.containsInt64KeyDoubleValue(2L)).isFalse();
+    assertThat(proto.getInt64KeyDoubleValueOrDefault(1L, 0)).isEqualTo(1.5);
+    assertThat(proto.getInt64KeyDoubleValueOrDefault(2L, -1)).isEqualTo(-1);
+    assertThat(proto.getBoolKeyInt64ValueOrThrow(true)).isEqualTo(2L);
+    assertThat(proto.getBoolKeyInt64ValueOrDefault(false, 4L)).isEqualTo(4L);
+    assertThat(proto.containsStringKeyInt32Value("foo")).isTrue();
+    assertThat(proto.getStringKeyInt32ValueOrDefault("bar", 5)).isEqualTo(5);
+
+    builder.putInt64KeyDoubleValue(2L, 2.5);
+    assertThat(builder.getInt64KeyDoubleValueCount()).isEqualTo(2);
+    assertThat(builder.getInt64KeyDoubleValueOrDefault(2L, 0)).isEqualTo(2.5);
+    assertThat(proto.containsInt64KeyDoubleValue(2L)).isFalse();
+  }
 }
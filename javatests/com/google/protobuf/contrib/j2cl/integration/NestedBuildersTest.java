@@ -0,0 +1,140 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.j2cl.integration;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.contrib.j2cl.protos.Accessor.TestProto;
+import com.google.protobuf.contrib.j2cl.protos.Accessor.TestProto.NestedMessage;
+import com.google.protobuf.contrib.j2cl.protos.Oneofs.TestProtoWithOneOfs;
+import com.google.protobuf.contrib.j2cl.protos.Oneofs.TestProtoWithOneOfs.AnotherOneofCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class NestedBuildersTest {
+
+  @Test
+  public void testGetBuilder_editsShowUpInBuild() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    builder.getOptionalMessageBuilder().setPayload("a");
+
+    assertThat(builder.hasOptionalMessage()).isTrue();
+    assertThat(builder.getOptionalMessage().getPayload()).isEqualTo("a");
+    assertThat(builder.build().getOptionalMessage().getPayload()).isEqualTo("a");
+  }
+
+  @Test
+  public void testGetBuilder_returnsSameBuilder() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    NestedMessage.Builder nestedBuilder = builder.getOptionalMessageBuilder();
+
+    assertThat(builder.getOptionalMessageBuilder()).isSameInstanceAs(nestedBuilder);
+  }
+
+  @Test
+  public void testGetBuilder_startsFromCurrentValue() {
+    TestProto proto =
+        TestProto.newBuilder()
+            .setOptionalMessage(NestedMessage.newBuilder().setPayload("a"))
+            .build();
+    TestProto.Builder builder = proto.toBuilder();
+
+    assertThat(builder.getOptionalMessageBuilder().getPayload()).isEqualTo("a");
+    builder.getOptionalMessageBuilder().setPayload("b");
+
+    assertThat(builder.build().getOptionalMessage().getPayload()).isEqualTo("b");
+    assertThat(proto.getOptionalMessage().getPayload()).isEqualTo("a");
+  }
+
+  @Test
+  public void testGetBuilder_repeatedBuildsDoNotShareChildState() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    NestedMessage.Builder nestedBuilder = builder.getOptionalMessageBuilder().setPayload("a");
+    TestProto first = builder.build();
+
+    nestedBuilder.setPayload("b");
+    TestProto second = builder.build();
+
+    assertThat(first.getOptionalMessage().getPayload()).isEqualTo("a");
+    assertThat(second.getOptionalMessage().getPayload()).isEqualTo("b");
+    assertThat(first).isNotEqualTo(second);
+  }
+
+  @Test
+  public void testGetBuilder_cloneDoesNotShareChildBuilder() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    builder.getOptionalMessageBuilder().setPayload("a");
+    TestProto.Builder clone = builder.clone();
+
+    builder.getOptionalMessageBuilder().setPayload("b");
+
+    assertThat(clone.build().getOptionalMessage().getPayload()).isEqualTo("a");
+    assertThat(builder.build().getOptionalMessage().getPayload()).isEqualTo("b");
+  }
+
+  @Test
+  public void testGetBuilder_detachedBySetter() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    NestedMessage.Builder nestedBuilder = builder.getOptionalMessageBuilder();
+    builder.setOptionalMessage(NestedMessage.newBuilder().setPayload("a"));
+
+    nestedBuilder.setPayload("b");
+
+    assertThat(builder.build().getOptionalMessage().getPayload()).isEqualTo("a");
+    assertThat(builder.getOptionalMessageBuilder()).isNotSameInstanceAs(nestedBuilder);
+  }
+
+  @Test
+  public void testGetBuilder_clearAfterGetBuilder() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    NestedMessage.Builder nestedBuilder = builder.getOptionalMessageBuilder().setPayload("a");
+
+    builder.clearOptionalMessage();
+    nestedBuilder.setPayload("b");
+
+    assertThat(builder.hasOptionalMessage()).isFalse();
+    TestProto proto = builder.build();
+    assertThat(proto.hasOptionalMessage()).isFalse();
+    assertThat(proto).isEqualTo(TestProto.getDefaultInstance());
+    assertThat(builder.getOptionalMessageBuilder().getPayload()).isEmpty();
+  }
+
+  @Test
+  public void testGetBuilder_oneofSwitchesCase() {
+    TestProtoWithOneOfs.Builder builder = TestProtoWithOneOfs.newBuilder().setAString("a");
+    assertThat(builder.getAnotherOneofCase()).isEqualTo(AnotherOneofCase.A_STRING);
+
+    builder.getNestedProtoBuilder().setAString("b");
+
+    assertThat(builder.getAnotherOneofCase()).isEqualTo(AnotherOneofCase.NESTED_PROTO);
+    assertThat(builder.hasAString()).isFalse();
+    TestProtoWithOneOfs proto = builder.build();
+    assertThat(proto.getAnotherOneofCase()).isEqualTo(AnotherOneofCase.NESTED_PROTO);
+    assertThat(proto.getNestedProto().getAString()).isEqualTo("b");
+  }
+
+  @Test
+  public void testGetBuilder_oneofSetterDetachesBuilder() {
+    TestProtoWithOneOfs.Builder builder = TestProtoWithOneOfs.newBuilder();
+    TestProtoWithOneOfs.TestNestedProto.Builder nestedBuilder = builder.getNestedProtoBuilder();
+
+    builder.setAString("a");
+    nestedBuilder.setAString("b");
+
+    assertThat(builder.getAnotherOneofCase()).isEqualTo(AnotherOneofCase.A_STRING);
+    assertThat(builder.build().hasNestedProto()).isFalse();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.j2cl.integration;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.contrib.j2cl.protos.Accessor.TestProto;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the array accessors of repeated primitive fields, which only exist in J2CL protos. */
+@RunWith(JUnit4.class)
+public final class PrimitiveArrayAccessorsTest {
+
+  @Test
+  public void testDefaultInstance() {
+    TestProto proto = TestProto.getDefaultInstance();
+
+    assertThat(proto.toRepeatedIntArray()).isEmpty();
+    assertThat(proto.toRepeatedLongArray()).isEmpty();
+    assertThat(proto.toRepeatedFloatArray()).isEmpty();
+    assertThat(proto.toRepeatedDoubleArray()).isEmpty();
+    assertThat(proto.toRepeatedBoolArray()).isEmpty();
+  }
+
+  @Test
+  public void testMessage() {
+    TestProto proto =
+        TestProto.newBuilder()
+            .addRepeatedInt(13)
+            .addRepeatedInt(-1)
+            .addRepeatedLong(Long.MAX_VALUE)
+            .addRepeatedLong(-2L)
+            .addRepeatedFloat(1.5f)
+            .addRepeatedFloat(Float.NaN)
+            .addRepeatedDouble(-0.25)
+            .addRepeatedDouble(Double.MAX_VALUE)
+            .addRepeatedBool(true)
+            .addRepeatedBool(false)
+            .build();
+
+    assertThat(proto.toRepeatedIntArray()).asList().containsExactly(13, -1).inOrder();
+    assertThat(proto.toRepeatedLongArray())
+        .asList()
+        .containsExactly(Long.MAX_VALUE, -2L)
+        .inOrder();
+    assertThat(proto.toRepeatedFloatArray()).asList().containsExactly(1.5f, Float.NaN).inOrder();
+    assertThat(proto.toRepeatedDoubleArray())
+        .asList()
+        .containsExactly(-0.25, Double.MAX_VALUE)
+        .inOrder();
+    assertThat(proto.toRepeatedBoolArray()).asList().containsExactly(true, false).inOrder();
+  }
+
+  @Test
+  public void testBuilder() {
+    TestProto.Builder builder = TestProto.newBuilder().addRepeatedInt(1).addRepeatedInt(2);
+    int[] values = builder.toRepeatedIntArray();
+
+    builder.setRepeatedInt(0, 3);
+
+    // The array is a copy.
+    assertThat(values).asList().containsExactly(1, 2).inOrder();
+    assertThat(builder.toRepeatedIntArray()).asList().containsExactly(3, 2).inOrder();
+  }
+
+  @Test
+  public void testAddAllArray() {
+    TestProto proto =
+        TestProto.newBuilder()
+            .addRepeatedInt(1)
+            .addAllRepeatedInt(new int[] {2, -3})
+            .addAllRepeatedLong(new long[] {Long.MIN_VALUE, 4L})
+            .addAllRepeatedFloat(new float[] {-1.5f, 5.5f})
+            .addAllRepeatedDouble(new double[] {Double.NaN, 6.25})
+            .addAllRepeatedBool(new boolean[] {false, true})
+            .build();
+
+    assertThat(proto.getRepeatedIntList()).containsExactly(1, 2, -3).inOrder();
+    assertThat(proto.getRepeatedLongList()).containsExactly(Long.MIN_VALUE, 4L).inOrder();
+    assertThat(proto.getRepeatedFloatList()).containsExactly(-1.5f, 5.5f).inOrder();
+    assertThat(proto.getRepeatedDoubleList()).containsExactly(Double.NaN, 6.25).inOrder();
+    assertThat(proto.getRepeatedBoolList()).containsExactly(false, true).inOrder();
+  }
+
+  @Test
+  public void testAddAllArray_empty() {
+    TestProto.Builder builder = TestProto.newBuilder().addAllRepeatedInt(new int[0]);
+
+    assertThat(builder.getRepeatedIntCount()).isEqualTo(0);
+    assertThat(builder.build()).isEqualTo(TestProto.getDefaultInstance());
+  }
+
+  @Test
+  public void testAddAllArray_copiesValues() {
+    int[] values = {1, 2};
+    TestProto.Builder builder = TestProto.newBuilder().addAllRepeatedInt(values);
+
+    values[0] = 3;
+
+    assertThat(builder.getRepeatedIntList()).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void testAddAllArray_roundTrip() {
+    int[] values = new int[100];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i * i;
+    }
+
+    TestProto proto = TestProto.newBuilder().addAllRepeatedInt(values).build();
+
+    assertThat(proto.toRepeatedIntArray()).isEqualTo(values);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.j2cl.integration;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.contrib.j2cl.protos.Accessor.TestProto;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the typed add and set accessors of repeated primitive fields on long lists. */
+@RunWith(JUnit4.class)
+public final class RepeatedPrimitiveFieldsTest {
+
+  // Enough elements for lists that span several levels of nodes in the J2Wasm runtime.
+  private static final int SIZE = 2000;
+
+  @Test
+  public void testAdd_manyElements() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    for (int i = 0; i < SIZE; i++) {
+      builder
+          .addRepeatedInt(i)
+          .addRepeatedLong(-i * 3000000000L)
+          .addRepeatedFloat(i / 2f)
+          .addRepeatedDouble(i / 4.0)
+          .addRepeatedBool(i % 3 == 0);
+    }
+    TestProto proto = builder.build();
+
+    assertThat(proto.getRepeatedIntCount()).isEqualTo(SIZE);
+    assertThat(proto.getRepeatedLongCount()).isEqualTo(SIZE);
+    assertThat(proto.getRepeatedFloatCount()).isEqualTo(SIZE);
+    assertThat(proto.getRepeatedDoubleCount()).isEqualTo(SIZE);
+    assertThat(proto.getRepeatedBoolCount()).isEqualTo(SIZE);
+    for (int i = 0; i < SIZE; i++) {
+      assertThat(proto.getRepeatedInt(i)).isEqualTo(i);
+      assertThat(proto.getRepeatedLong(i)).isEqualTo(-i * 3000000000L);
+      assertThat(proto.getRepeatedFloat(i)).isEqualTo(i / 2f);
+      assertThat(proto.getRepeatedDouble(i)).isEqualTo(i / 4.0);
+      assertThat(proto.getRepeatedBool(i)).isEqualTo(i % 3 == 0);
+    }
+  }
+
+  @Test
+  public void testSet_manyElements() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    for (int i = 0; i < SIZE; i++) {
+      builder.addRepeatedInt(0).addRepeatedLong(0L).addRepeatedDouble(0.0).addRepeatedBool(false);
+    }
+    for (int i = 0; i < SIZE; i += 7) {
+      builder
+          .setRepeatedInt(i, -i)
+          .setRepeatedLong(i, Long.MAX_VALUE - i)
+          .setRepeatedDouble(i, Double.MIN_VALUE)
+          .setRepeatedBool(i, true);
+    }
+    TestProto proto = builder.build();
+
+    for (int i = 0; i < SIZE; i++) {
+      boolean isSet = i % 7 == 0;
+      assertThat(proto.getRepeatedInt(i)).isEqualTo(isSet ? -i : 0);
+      assertThat(proto.getRepeatedLong(i)).isEqualTo(isSet ? Long.MAX_VALUE - i : 0L);
+      assertThat(proto.getRepeatedDouble(i)).isEqualTo(isSet ? Double.MIN_VALUE : 0.0);
+      assertThat(proto.getRepeatedBool(i)).isEqualTo(isSet);
+    }
+  }
+
+  @Test
+  public void testSet_doesNotChangeBuiltMessages() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    for (int i = 0; i < SIZE; i++) {
+      builder.addRepeatedInt(i);
+    }
+    TestProto first = builder.build();
+
+    builder.setRepeatedInt(0, -1).setRepeatedInt(SIZE / 2, -1).setRepeatedInt(SIZE - 1, -1);
+    TestProto second = builder.build();
+    builder.addRepeatedInt(SIZE);
+
+    assertThat(first.getRepeatedInt(0)).isEqualTo(0);
+    assertThat(first.getRepeatedInt(SIZE / 2)).isEqualTo(SIZE / 2);
+    assertThat(first.getRepeatedInt(SIZE - 1)).isEqualTo(SIZE - 1);
+    assertThat(second.getRepeatedInt(0)).isEqualTo(-1);
+    assertThat(second.getRepeatedInt(SIZE / 2)).isEqualTo(-1);
+    assertThat(second.getRepeatedInt(SIZE - 1)).isEqualTo(-1);
+    assertThat(second.getRepeatedIntCount()).isEqualTo(SIZE);
+    assertThat(builder.getRepeatedIntCount()).isEqualTo(SIZE + 1);
+  }
+
+  @Test
+  public void testSet_doesNotChangeOriginalMessage() {
+    TestProto.Builder builder = TestProto.newBuilder();
+    for (int i = 0; i < SIZE; i++) {
+      builder.addRepeatedLong(i);
+    }
+    TestProto original = builder.build();
+
+    TestProto modified = original.toBuilder().setRepeatedLong(SIZE / 3, -1L).build();
+
+    assertThat(original.getRepeatedLong(SIZE / 3)).isEqualTo((long) (SIZE / 3));
+    assertThat(modified.getRepeatedLong(SIZE / 3)).isEqualTo(-1L);
+    assertThat(modified).isNotEqualTo(original);
+  }
+
+  @Test
+  public void testAdd_afterAddAll() {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      values.add(i);
+    }
+    TestProto proto =
+        TestProto.newBuilder()
+            .addAllRepeatedInt(values)
+            .addRepeatedInt(40)
+            .setRepeatedInt(0, -1)
+            .build();
+
+    assertThat(proto.getRepeatedIntCount()).isEqualTo(41);
+    assertThat(proto.getRepeatedInt(0)).isEqualTo(-1);
+    assertThat(proto.getRepeatedInt(39)).isEqualTo(39);
+    assertThat(proto.getRepeatedInt(40)).isEqualTo(40);
+  }
+
+  @Test
+  public void testEquals_sameValuesAddedDifferently() {
+    TestProto.Builder first = TestProto.newBuilder();
+    TestProto.Builder second = TestProto.newBuilder().addAllRepeatedDouble(Arrays.asList(1.0, 2.0));
+    for (int i = 0; i < SIZE; i++) {
+      first.addRepeatedDouble(i);
+    }
+    for (int i = 2; i < SIZE; i++) {
+      second.addRepeatedDouble(i);
+    }
+    second.setRepeatedDouble(0, 0.0).setRepeatedDouble(1, 1.0);
+
+    assertThat(first.build()).isEqualTo(second.build());
+    assertThat(first.build().hashCode()).isEqualTo(second.build().hashCode());
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.j2cl.integration;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.contrib.j2cl.protos.Accessor.TestProto;
+import com.google.protobuf.contrib.j2cl.protos.Accessor.TestProto.NestedMessage;
+import com.google.protobuf.contrib.j2cl.protos.Maps.MapTestProto;
+import com.google.protobuf.contrib.j2cl.protos.Oneofs.TestProtoWithOneOfs;
+import com.google.protobuf.contrib.j2cl.protos.Proto3Accessors.TestProto3;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class WireFormatTest {
+
+  @Test
+  public void testSerialize_varint() {
+    assertThat(TestProto.newBuilder().setOptionalInt(150).build().toByteArray())
+        .isEqualTo(bytes(0x20, 0x96, 0x01));
+    assertThat(TestProto.newBuilder().setOptionalInt(-1).build().toByteArray())
+        .isEqualTo(bytes(0x20, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0x01));
+  }
+
+  @Test
+  public void testSerialize_explicitPresence() {
+    assertThat(TestProto.newBuilder().setOptionalInt(0).build().toByteArray())
+        .isEqualTo(bytes(0x20, 0x00));
+  }
+
+  @Test
+  public void testSerialize_implicitPresence() {
+    TestProto3 proto = TestProto3.newBuilder().setProto3Int32(0).setProto3String("").build();
+    assertThat(proto.toByteArray()).isEmpty();
+    assertThat(proto.getSerializedSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSerialize_string() {
+    assertThat(TestProto.newBuilder().setOptionalString("testing").build().toByteArray())
+        .isEqualTo(bytes(0x9a, 0x01, 0x07, 0x74, 0x65, 0x73, 0x74, 0x69, 0x6e, 0x67));
+  }
+
+  @Test
+  public void testSerialize_packed() {
+    TestProto3 proto =
+        TestProto3.newBuilder().addProto3PluralBool(true).addProto3PluralBool(false).build();
+    assertThat(proto.toByteArray()).isEqualTo(bytes(0x62, 0x02, 0x01, 0x00));
+  }
+
+  @Test
+  public void testParse_packedAndUnpacked() throws Exception {
+    // Packed and unpacked encodings are accepted for any repeated scalar field.
+    assertThat(TestProto.parseFrom(bytes(0x32, 0x02, 0x05, 0x06)).getRepeatedIntList())
+        .containsExactly(5, 6)
+        .inOrder();
+    assertThat(TestProto3.parseFrom(bytes(0x60, 0x01, 0x60, 0x00)).getProto3PluralBoolList())
+        .containsExactly(true, false)
+        .inOrder();
+  }
+
+  @Test
+  public void testParse_skipsUnknownFields() throws Exception {
+    TestProto proto =
+        TestProto.parseFrom(
+            bytes(
+                // Unknown varint field 100.
+                0xa0, 0x06, 0x01,
+                // Unknown group field 101 containing a varint.
+                0xab, 0x06, 0x08, 0x01, 0xac, 0x06,
+                // optional_int = 3
+                0x20, 0x03));
+    assertThat(proto).isEqualTo(TestProto.newBuilder().setOptionalInt(3).build());
+  }
+
+  @Test
+  public void testParse_mergesMessages() throws Exception {
+    TestProto first =
+        TestProto.newBuilder()
+            .setOptionalMessage(NestedMessage.newBuilder().setPayload("first"))
+            .addRepeatedInt(1)
+            .build();
+    TestProto second =
+        TestProto.newBuilder()
+            .setOptionalMessage(NestedMessage.newBuilder().setPayload("second"))
+            .addRepeatedInt(2)
+            .build();
+
+    TestProto merged = TestProto.parseFrom(concat(first.toByteArray(), second.toByteArray()));
+    assertThat(merged.getOptionalMessage().getPayload()).isEqualTo("second");
+    assertThat(merged.getRepeatedIntList()).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void testParse_invalid() {
+    // Truncated varint.
+    assertThrows(InvalidProtocolBufferException.class, () -> TestProto.parseFrom(bytes(0x20)));
+    // Truncated string.
+    assertThrows(
+        InvalidProtocolBufferException.class, () -> TestProto.parseFrom(bytes(0x9a, 0x01, 0x05)));
+    // Zero tag.
+    assertThrows(InvalidProtocolBufferException.class, () -> TestProto.parseFrom(bytes(0x00)));
+    // Unexpected end group tag.
+    assertThrows(InvalidProtocolBufferException.class, () -> TestProto.parseFrom(bytes(0x24)));
+  }
+
+  @Test
+  public void testRoundTrip_proto2() throws Exception {
+    TestProto proto =
+        TestProto.newBuilder()
+            .setOptionalBool(true)
+            .addRepeatedBool(false)
+            .setOptionalInt(-8964)
+            .addRepeatedInt(1)
+            .addRepeatedInt(-1)
+            .setOptionalLong(Long.MIN_VALUE)
+            .addRepeatedLong(Long.MAX_VALUE)
+            .setOptionalFloat(-0.0f)
+            .addRepeatedFloat(Float.NaN)
+            .setOptionalDouble(1.5)
+            .addRepeatedDouble(Double.NEGATIVE_INFINITY)
+            .setOptionalString("é😀")
+            .addRepeatedString("")
+            .setOptionalBytes(ByteString.copyFromUtf8("bytes"))
+            .addRepeatedBytes(ByteString.EMPTY)
+            .setOptionalMessage(NestedMessage.newBuilder().setPayload("payload"))
+            .addRepeatedMessage(NestedMessage.getDefaultInstance())
+            .build();
+
+    assertRoundTrips(proto);
+    assertThat(TestProto.parseFrom(proto.toByteArray()).getOptionalString()).isEqualTo("é😀");
+  }
+
+  @Test
+  public void testRoundTrip_proto3() throws Exception {
+    assertRoundTrips(
+        TestProto3.newBuilder()
+            .setProto3Bool(true)
+            .setProto3String("string")
+            .setProto3Float(1.5f)
+            .setProto3Double(-2.5)
+            .setProto3Int32(-1)
+            .setProto3Uint32(-1)
+            .setProto3Long(Long.MIN_VALUE)
+            .setProto3Bytes(ByteString.copyFromUtf8("bytes"))
+            .addProto3PluralBool(true)
+            .setProto3Enum(TestProto3.TestEnum.TWO)
+            .setProto3Message(TestProto3.NestedMessage.getDefaultInstance())
+            .build());
+  }
+
+  @Test
+  public void testRoundTrip_maps() throws Exception {
+    assertRoundTrips(
+        MapTestProto.newBuilder()
+            .putInt32KeyInt32Value(1, 0)
+            .putInt32KeyInt32Value(-1, 2)
+            .putInt32KeyStringValue(3, "three")
+            .putInt32KeyEnumValue(4, MapTestProto.TestEnum.B)
+            .putInt32KeyMessageValue(
+                5, MapTestProto.NestedMessage.newBuilder().setFoo("foo").build())
+            .putInt64KeyDoubleValue(Long.MAX_VALUE, 1.5)
+            .build());
+  }
+
+  @Test
+  public void testRoundTrip_oneofs() throws Exception {
+    TestProtoWithOneOfs proto = TestProtoWithOneOfs.newBuilder().setALong(5).build();
+    assertRoundTrips(proto);
+
+    // The last oneof field on the wire wins.
+    byte[] bytes = TestProtoWithOneOfs.newBuilder().setAnInt(1).build().toByteArray();
+    TestProtoWithOneOfs parsed = TestProtoWithOneOfs.parseFrom(concat(bytes, proto.toByteArray()));
+    assertThat(parsed.hasAnInt()).isFalse();
+    assertThat(parsed.getALong()).isEqualTo(5);
+  }
+
+  private static void assertRoundTrips(TestProto proto) throws Exception {
+    assertThat(TestProto.parseFrom(proto.toByteArray())).isEqualTo(proto);
+    assertThat(TestProto.parseFrom(proto.toByteString())).isEqualTo(proto);
+    assertThat(proto.toByteArray()).hasLength(proto.getSerializedSize());
+  }
+
+  private static void assertRoundTrips(TestProto3 proto) throws Exception {
+    assertThat(TestProto3.parseFrom(proto.toByteArray())).isEqualTo(proto);
+    assertThat(proto.toByteArray()).hasLength(proto.getSerializedSize());
+  }
+
+  private static void assertRoundTrips(MapTestProto proto) throws Exception {
+    assertThat(MapTestProto.parseFrom(proto.toByteArray())).isEqualTo(proto);
+    assertThat(proto.toByteArray()).hasLength(proto.getSerializedSize());
+  }
+
+  private static void assertRoundTrips(TestProtoWithOneOfs proto) throws Exception {
+    assertThat(TestProtoWithOneOfs.parseFrom(proto.toByteArray())).isEqualTo(proto);
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] result = new byte[first.length + second.length];
+    System.arraycopy(first, 0, result, 0, first.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+}
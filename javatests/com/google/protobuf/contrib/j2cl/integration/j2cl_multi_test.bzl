@@ -15,6 +15,7 @@ def j2cl_multi_test(
         srcs,
         deps = [],
         proto_deps = [],
+        generate_j2cl_test = True,
         generate_java_test = True,
         generate_wasm_test = True):
     deps = deps + [
@@ -37,35 +38,36 @@ def j2cl_multi_test(
     java_proto_deps = [x + "_java_proto" for x in proto_deps]
     java_deps = deps + ["//java/com/google/protobuf"] + java_proto_deps
 
-    j2cl_test(
-        name = name,
-        test_class = test_class,
-        srcs = srcs,
-        deps = j2cl_deps,
-    )
+    if generate_j2cl_test:
+        j2cl_test(
+            name = name,
+            test_class = test_class,
+            srcs = srcs,
+            deps = j2cl_deps,
+        )
 
-    j2cl_test(
-        name = name + "_compiled",
-        test_class = test_class,
-        srcs = srcs,
-        deps = j2cl_deps,
-        compile = 1,
-        extra_defs = [
-            "--jscomp_error=conformanceViolations",
-        ],
-    )
+        j2cl_test(
+            name = name + "_compiled",
+            test_class = test_class,
+            srcs = srcs,
+            deps = j2cl_deps,
+            compile = 1,
+            extra_defs = [
+                "--jscomp_error=conformanceViolations",
+            ],
+        )
 
-    j2cl_test(
-        name = name + "_compiled_checks_off",
-        test_class = test_class,
-        srcs = srcs,
-        deps = j2cl_deps,
-        compile = 1,
-        extra_defs = [
-            "--define=proto.im.defines.CHECKED_MODE__DO_NOT_USE_INTERNAL=false",
-            "--jscomp_error=conformanceViolations",
-        ],
-    )
+        j2cl_test(
+            name = name + "_compiled_checks_off",
+            test_class = test_class,
+            srcs = srcs,
+            deps = j2cl_deps,
+            compile = 1,
+            extra_defs = [
+                "--define=proto.im.defines.CHECKED_MODE__DO_NOT_USE_INTERNAL=false",
+                "--jscomp_error=conformanceViolations",
+            ],
+        )
 
     if generate_java_test:
         native.java_test(
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf.contrib.j2cl.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessageLite.Internal_.BinarySerializationHelper.DelimitedParser;
+import com.google.protobuf.GeneratedMessageLite.Internal_.Uint8Array;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for GeneratedMessageLite.Internal_.BinarySerializationHelper.DelimitedParser */
+@RunWith(JUnit4.class)
+public class DelimitedParserTest {
+
+  // Parses the bytes of each message as a UTF-8 string.
+  private final DelimitedParser<String> parser =
+      new DelimitedParser<>(data -> ByteString.copyFrom(data.asBytes()).toStringUtf8());
+
+  @Test
+  public void testParse_singleMessage() throws Exception {
+    assertThat(parser.parse(chunk(3, 'a', 'b', 'c'))).containsExactly("abc");
+    parser.finish();
+  }
+
+  @Test
+  public void testParse_multipleMessagesInOneChunk() throws Exception {
+    assertThat(parser.parse(chunk(1, 'a', 2, 'b', 'c', 3, 'd', 'e', 'f')))
+        .containsExactly("a", "bc", "def")
+        .inOrder();
+    parser.finish();
+  }
+
+  @Test
+  public void testParse_zeroLengthMessage() throws Exception {
+    assertThat(parser.parse(chunk(0, 1, 'a', 0))).containsExactly("", "a", "").inOrder();
+    parser.finish();
+  }
+
+  @Test
+  public void testParse_lengthPrefixSplitAcrossChunks() throws Exception {
+    // A 200 byte message, its length prefix is 0xC8 0x01.
+    assertThat(parser.parse(chunk(0xC8))).isEmpty();
+    byte[] message = new byte[200];
+    for (int i = 0; i < message.length; i++) {
+      message[i] = 'x';
+    }
+    byte[] rest = new byte[message.length + 1];
+    rest[0] = 0x01;
+    System.arraycopy(message, 0, rest, 1, message.length);
+
+    assertThat(parser.parse(new Uint8Array(rest)))
+        .containsExactly(ByteString.copyFrom(message).toStringUtf8());
+    parser.finish();
+  }
+
+  @Test
+  public void testParse_messageSplitAcrossChunks() throws Exception {
+    assertThat(parser.parse(chunk(1, 'a', 5, 'b'))).containsExactly("a");
+    assertThat(parser.parse(chunk('c', 'd'))).isEmpty();
+    assertThat(parser.parse(chunk('e'))).isEmpty();
+    assertThat(parser.parse(chunk('f', 1, 'g'))).containsExactly("bcdef", "g").inOrder();
+    parser.finish();
+  }
+
+  @Test
+  public void testParse_emptyChunk() throws Exception {
+    assertThat(parser.parse(chunk())).isEmpty();
+    assertThat(parser.parse(chunk(2, 'a'))).isEmpty();
+    assertThat(parser.parse(chunk())).isEmpty();
+    assertThat(parser.parse(chunk('b'))).containsExactly("ab");
+  }
+
+  @Test
+  public void testFinish_truncatedMessage() throws Exception {
+    assertThat(parser.parse(chunk(3, 'a', 'b'))).isEmpty();
+
+    assertThrows(InvalidProtocolBufferException.class, parser::finish);
+  }
+
+  @Test
+  public void testFinish_truncatedLengthPrefix() throws Exception {
+    assertThat(parser.parse(chunk(0xC8))).isEmpty();
+
+    assertThrows(InvalidProtocolBufferException.class, parser::finish);
+  }
+
+  @Test
+  public void testParse_malformedVarint() {
+    assertThrows(
+        InvalidProtocolBufferException.class,
+        () -> parser.parse(chunk(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01)));
+  }
+
+  @Test
+  public void testParse_failingMessage() {
+    DelimitedParser<String> failingParser =
+        new DelimitedParser<>(
+            data -> {
+              throw new IllegalArgumentException();
+            });
+
+    assertThrows(InvalidProtocolBufferException.class, () -> failingParser.parse(chunk(0)));
+  }
+
+  @Test
+  public void testParse_afterFailure() {
+    assertThrows(
+        InvalidProtocolBufferException.class,
+        () -> parser.parse(chunk(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01)));
+
+    assertThrows(IllegalStateException.class, () -> parser.parse(chunk(1, 'a')));
+    assertThrows(IllegalStateException.class, parser::finish);
+  }
+
+  @Test
+  public void testParse_afterTruncatedFinish() throws Exception {
+    assertThat(parser.parse(chunk(3, 'a'))).isEmpty();
+    assertThrows(InvalidProtocolBufferException.class, parser::finish);
+
+    assertThrows(IllegalStateException.class, () -> parser.parse(chunk('b', 'c')));
+  }
+
+  private static Uint8Array chunk(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return new Uint8Array(bytes);
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class FieldStorageTest {
+
+  // Slots are copied on write in chunks of this many fields.
+  private static final int CHUNK_SIZE = 16;
+
+  @Test
+  public void testCopy_writeToCopyLeavesOriginalUnchanged() {
+    int fieldCount = 3 * CHUNK_SIZE;
+    FieldStorage original = newFilledStorage(fieldCount);
+
+    for (int fieldNumber = 1; fieldNumber <= fieldCount; fieldNumber += CHUNK_SIZE / 2) {
+      FieldStorage copy = original.copy();
+      copy.put(fieldNumber, "updated");
+
+      assertThat(copy.get(fieldNumber, null)).isEqualTo("updated");
+      assertFilled(original, fieldCount);
+      assertThat(copy.equals(original)).isFalse();
+    }
+  }
+
+  @Test
+  public void testCopy_writeToOriginalLeavesCopyUnchanged() {
+    int fieldCount = 3 * CHUNK_SIZE;
+    FieldStorage original = newFilledStorage(fieldCount);
+
+    for (int fieldNumber = 1; fieldNumber <= fieldCount; fieldNumber += CHUNK_SIZE / 2) {
+      FieldStorage copy = original.copy();
+      original.put(fieldNumber, "updated");
+
+      assertFilled(copy, fieldCount);
+      original.put(fieldNumber, valueOf(fieldNumber));
+    }
+  }
+
+  @Test
+  public void testCopy_writePrimitiveToCopyLeavesOriginalUnchanged() {
+    int fieldCount = 3 * CHUNK_SIZE;
+    FieldStorage original = FieldStorage.create(numbers(fieldCount));
+    for (int fieldNumber = 1; fieldNumber <= fieldCount; fieldNumber++) {
+      original.putInt(fieldNumber, fieldNumber);
+    }
+
+    for (int fieldNumber = 1; fieldNumber <= fieldCount; fieldNumber += CHUNK_SIZE / 2) {
+      FieldStorage copy = original.copy();
+      copy.putInt(fieldNumber, -1);
+
+      assertThat(copy.getInt(fieldNumber, 0)).isEqualTo(-1);
+      for (int i = 1; i <= fieldCount; i++) {
+        assertThat(original.getInt(i, 0)).isEqualTo(i);
+      }
+    }
+  }
+
+  @Test
+  public void testCopy_removeFromCopyLeavesOriginalUnchanged() {
+    int fieldCount = 3 * CHUNK_SIZE;
+    FieldStorage original = newFilledStorage(fieldCount);
+
+    for (int fieldNumber = 1; fieldNumber <= fieldCount; fieldNumber += CHUNK_SIZE / 2) {
+      FieldStorage copy = original.copy();
+      copy.remove(fieldNumber);
+
+      assertThat(copy.has(fieldNumber)).isFalse();
+      assertFilled(original, fieldCount);
+    }
+  }
+
+  @Test
+  public void testCopy_untouchedCopiesAreEqual() {
+    int fieldCount = 3 * CHUNK_SIZE;
+    FieldStorage original = newFilledStorage(fieldCount);
+
+    FieldStorage copy = original.copy();
+    FieldStorage copyOfCopy = copy.copy();
+    copyOfCopy.put(1, "updated");
+    copyOfCopy.put(1, valueOf(1));
+
+    assertThat(copy.equals(original)).isTrue();
+    assertThat(copyOfCopy.equals(original)).isTrue();
+    assertThat(copyOfCopy.hashCode()).isEqualTo(original.hashCode());
+  }
+
+  @Test
+  public void testCopy_emptyStorage() {
+    FieldStorage original = FieldStorage.create(numbers(3 * CHUNK_SIZE));
+
+    FieldStorage copy = original.copy();
+    copy.put(CHUNK_SIZE + 1, "value");
+
+    assertThat(original.has(CHUNK_SIZE + 1)).isFalse();
+    assertThat(copy.get(CHUNK_SIZE + 1, null)).isEqualTo("value");
+  }
+
+  @Test
+  public void testChunkBoundary() {
+    // Exactly one full chunk, one more field than that, and one field short of two chunks.
+    for (int fieldCount : new int[] {CHUNK_SIZE, CHUNK_SIZE + 1, 2 * CHUNK_SIZE - 1}) {
+      FieldStorage storage = newFilledStorage(fieldCount);
+      assertFilled(storage, fieldCount);
+
+      storage.putInt(fieldCount, -1);
+      assertThat(storage.getInt(fieldCount, 0)).isEqualTo(-1);
+      assertThat(storage.get(fieldCount - 1, null)).isEqualTo(valueOf(fieldCount - 1));
+
+      // The field right after the last one has no slot.
+      storage.put(fieldCount + 1, "value");
+      assertThat(storage.get(fieldCount + 1, null)).isEqualTo("value");
+    }
+  }
+
+  @Test
+  public void testChunkBoundary_copy() {
+    for (int fieldCount : new int[] {CHUNK_SIZE, CHUNK_SIZE + 1}) {
+      FieldStorage original = newFilledStorage(fieldCount);
+
+      FieldStorage copy = original.copy();
+      copy.putInt(fieldCount, -1);
+      copy.remove(1);
+
+      assertFilled(original, fieldCount);
+      assertThat(copy.getInt(fieldCount, 0)).isEqualTo(-1);
+      assertThat(copy.has(1)).isFalse();
+      assertThat(copy.equals(original)).isFalse();
+    }
+  }
+
+  @Test
+  public void testChunkBoundary_equalsAndHashCode() {
+    FieldStorage storage = newFilledStorage(CHUNK_SIZE + 1);
+    FieldStorage other = newFilledStorage(CHUNK_SIZE + 1);
+
+    assertThat(other.equals(storage)).isTrue();
+    assertThat(other.hashCode()).isEqualTo(storage.hashCode());
+
+    // Only the last field, alone in its chunk, differs.
+    other.put(CHUNK_SIZE + 1, "updated");
+    assertThat(other.equals(storage)).isFalse();
+    assertThat(storage.equals(other)).isFalse();
+  }
+
+  @Test
+  public void testSparseFieldNumbers() {
+    int[] fieldNumbers = {5, 3, 1000, 50000};
+    FieldStorage storage = FieldStorage.create(fieldNumbers);
+
+    for (int fieldNumber : fieldNumbers) {
+      assertThat(storage.has(fieldNumber)).isFalse();
+      storage.put(fieldNumber, valueOf(fieldNumber));
+    }
+    storage.putInt(3, -1);
+
+    assertThat(storage.getInt(3, 0)).isEqualTo(-1);
+    assertThat(storage.get(5, null)).isEqualTo(valueOf(5));
+    assertThat(storage.get(1000, null)).isEqualTo(valueOf(1000));
+    assertThat(storage.get(50000, null)).isEqualTo(valueOf(50000));
+    // Numbers in the gaps and past the largest field number don't alias any field.
+    for (int fieldNumber : new int[] {1, 4, 999, 49999, 50001}) {
+      assertThat(storage.has(fieldNumber)).isFalse();
+    }
+  }
+
+  @Test
+  public void testSparseFieldNumbers_gapsGoToExpansion() {
+    FieldStorage storage = FieldStorage.create(new int[] {1, 1000, 50000});
+    storage.put(1000, "field");
+    storage.put(500, "gap");
+    storage.put(60000, "beyond");
+
+    assertThat(storage.get(500, null)).isEqualTo("gap");
+    assertThat(storage.get(60000, null)).isEqualTo("beyond");
+    assertThat(storage.get(1000, null)).isEqualTo("field");
+
+    FieldStorage copy = storage.copy();
+    copy.remove(500);
+    copy.put(1000, "updated");
+
+    assertThat(storage.get(500, null)).isEqualTo("gap");
+    assertThat(storage.get(1000, null)).isEqualTo("field");
+    assertThat(copy.has(500)).isFalse();
+    assertThat(copy.get(1000, null)).isEqualTo("updated");
+  }
+
+  @Test
+  public void testSparseFieldNumbers_equalsAndHashCode() {
+    int[] fieldNumbers = {5, 3, 1000, 50000};
+    FieldStorage storage = FieldStorage.create(fieldNumbers);
+    FieldStorage other = FieldStorage.create(fieldNumbers);
+    storage.put(50000, "value");
+    other.put(50000, "value");
+
+    assertThat(other.equals(storage)).isTrue();
+    assertThat(other.hashCode()).isEqualTo(storage.hashCode());
+
+    other.put(4, "value");
+    assertThat(other.equals(storage)).isFalse();
+  }
+
+  @Test
+  public void testExpansion_fieldWithoutSlot() {
+    // Field 100 isn't a field of the message, e.g. an extension.
+    FieldStorage storage = FieldStorage.create(numbers(3));
+
+    assertThat(storage.has(100)).isFalse();
+    assertThat(storage.get(100, "default")).isEqualTo("default");
+
+    storage.put(100, "value");
+    assertThat(storage.has(100)).isTrue();
+    assertThat(storage.get(100, "default")).isEqualTo("value");
+
+    storage.put(100, "updated");
+    assertThat(storage.get(100, "default")).isEqualTo("updated");
+
+    storage.remove(100);
+    assertThat(storage.has(100)).isFalse();
+    assertThat(storage.get(100, "default")).isEqualTo("default");
+  }
+
+  @Test
+  public void testExpansion_fieldsBeyondMaxSlots() {
+    // Only the first 1024 fields get a slot.
+    int fieldCount = 1100;
+    FieldStorage storage = newFilledStorage(fieldCount);
+
+    assertFilled(storage, fieldCount);
+
+    storage.put(1050, "updated");
+    storage.remove(1100);
+    assertThat(storage.get(1050, null)).isEqualTo("updated");
+    assertThat(storage.has(1100)).isFalse();
+    assertThat(storage.get(1024, null)).isEqualTo(valueOf(1024));
+    assertThat(storage.get(1025, null)).isEqualTo(valueOf(1025));
+  }
+
+  @Test
+  public void testExpansion_primitives() {
+    FieldStorage storage = FieldStorage.create(numbers(3));
+
+    storage.putInt(100, -1);
+    storage.putLong(101, Long.MIN_VALUE);
+    storage.putDouble(102, -0.0);
+    storage.putBoolean(103, true);
+
+    assertThat(storage.getInt(100, 0)).isEqualTo(-1);
+    assertThat(storage.getLong(101, 0)).isEqualTo(Long.MIN_VALUE);
+    assertThat(storage.getDouble(102, 0)).isEqualTo(-0.0);
+    assertThat(storage.getBoolean(103, false)).isTrue();
+    assertThat(storage.get(100, null)).isEqualTo(-1);
+    assertThat(storage.getInt(104, 7)).isEqualTo(7);
+  }
+
+  @Test
+  public void testExpansion_insertKeepsOtherFields() {
+    FieldStorage storage = FieldStorage.create(numbers(3));
+
+    // Inserted out of order, and more than the initial capacity.
+    int[] fieldNumbers = {500, 100, 300, 200, 400, 50, 600};
+    for (int fieldNumber : fieldNumbers) {
+      storage.put(fieldNumber, valueOf(fieldNumber));
+    }
+    storage.remove(300);
+
+    for (int fieldNumber : fieldNumbers) {
+      assertThat(storage.get(fieldNumber, null))
+          .isEqualTo(fieldNumber == 300 ? null : valueOf(fieldNumber));
+    }
+  }
+
+  @Test
+  public void testExpansion_copy() {
+    FieldStorage original = FieldStorage.create(numbers(3));
+    original.put(100, "a");
+    original.put(200, "b");
+
+    FieldStorage copy = original.copy();
+    copy.put(100, "updated");
+    copy.put(300, "c");
+    copy.remove(200);
+    original.put(400, "d");
+
+    assertThat(original.get(100, null)).isEqualTo("a");
+    assertThat(original.get(200, null)).isEqualTo("b");
+    assertThat(original.has(300)).isFalse();
+    assertThat(copy.get(100, null)).isEqualTo("updated");
+    assertThat(copy.has(200)).isFalse();
+    assertThat(copy.get(300, null)).isEqualTo("c");
+    assertThat(copy.has(400)).isFalse();
+  }
+
+  @Test
+  public void testExpansion_equals() {
+    FieldStorage storage = FieldStorage.create(numbers(3));
+    storage.put(100, "a");
+    FieldStorage copy = storage.copy();
+    FieldStorage other = FieldStorage.create(numbers(3));
+    other.put(100, "a");
+
+    assertThat(copy.equals(storage)).isTrue();
+    assertThat(other.equals(storage)).isTrue();
+    assertThat(other.hashCode()).isEqualTo(storage.hashCode());
+
+    other.remove(100);
+    assertThat(other.equals(storage)).isFalse();
+    // An emptied expansion is the same as none.
+    assertThat(other.equals(FieldStorage.create(numbers(3)))).isTrue();
+    assertThat(other.hashCode()).isEqualTo(FieldStorage.create(numbers(3)).hashCode());
+  }
+
+  private static FieldStorage newFilledStorage(int fieldCount) {
+    FieldStorage storage = FieldStorage.create(numbers(fieldCount));
+    for (int fieldNumber = 1; fieldNumber <= fieldCount; fieldNumber++) {
+      storage.put(fieldNumber, valueOf(fieldNumber));
+    }
+    return storage;
+  }
+
+  private static void assertFilled(FieldStorage storage, int fieldCount) {
+    for (int fieldNumber = 1; fieldNumber <= fieldCount; fieldNumber++) {
+      assertThat(storage.get(fieldNumber, null)).isEqualTo(valueOf(fieldNumber));
+    }
+  }
+
+  /** Returns the field numbers 1 to count. */
+  private static int[] numbers(int count) {
+    int[] numbers = new int[count];
+    for (int i = 0; i < count; i++) {
+      numbers[i] = i + 1;
+    }
+    return numbers;
+  }
+
+  private static String valueOf(int fieldNumber) {
+    return "field" + fieldNumber;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class LazyMessageTest {
+
+  // lazy_child { payload: 5 }
+  private static final byte[] LAZY_CHILD = {0x1a, 0x02, 0x08, 0x05};
+  // lazy_child { payload: 5 }, with the payload in an overlong varint that re-encodes shorter.
+  private static final byte[] LAZY_CHILD_OVERLONG = {0x1a, 0x03, 0x08, (byte) 0x85, 0x00};
+  // lazy_child with a payload tag that is missing its value.
+  private static final byte[] MALFORMED_LAZY_CHILD = {0x1a, 0x01, 0x08};
+
+  @Test
+  public void testLazyField_decodedOnFirstAccess() throws Exception {
+    TestMessage message = TestMessage.parseFrom(LAZY_CHILD);
+
+    assertThat(message.getUnresolvedField(3)).isInstanceOf(LazyMessage.class);
+    assertThat(message.hasLazyChild()).isTrue();
+    assertThat(message.getUnresolvedField(3)).isInstanceOf(LazyMessage.class);
+
+    TestMessage child = message.getLazyChild();
+    assertThat(child.getPayload()).isEqualTo(5);
+    assertThat(message.getLazyChild()).isSameInstanceAs(child);
+  }
+
+  @Test
+  public void testLazyField_untouchedIsWrittenBackByteForByte() throws Exception {
+    TestMessage message = TestMessage.parseFrom(LAZY_CHILD_OVERLONG);
+
+    assertThat(message.getSerializedSize()).isEqualTo(LAZY_CHILD_OVERLONG.length);
+    assertThat(message.toByteArray()).isEqualTo(LAZY_CHILD_OVERLONG);
+    assertThat(message.getUnresolvedField(3)).isInstanceOf(LazyMessage.class);
+  }
+
+  @Test
+  public void testLazyField_keptThroughBuilder() throws Exception {
+    TestMessage message = TestMessage.parseFrom(LAZY_CHILD_OVERLONG).toBuilder().build();
+
+    assertThat(message.toByteArray()).isEqualTo(LAZY_CHILD_OVERLONG);
+    assertThat(message.getLazyChild().getPayload()).isEqualTo(5);
+  }
+
+  @Test
+  public void testLazyField_mergesOccurrences() throws Exception {
+    // lazy_child { payload: 5 } followed by lazy_child { child { } }.
+    TestMessage message =
+        TestMessage.parseFrom(new byte[] {0x1a, 0x02, 0x08, 0x05, 0x1a, 0x02, 0x12, 0x00});
+
+    assertThat(message.getLazyChild().getPayload()).isEqualTo(5);
+    assertThat(message.getLazyChild().hasChild()).isTrue();
+  }
+
+  @Test
+  public void testLazyField_malformedReadsAsDefaultInstance() throws Exception {
+    TestMessage message = TestMessage.parseFrom(MALFORMED_LAZY_CHILD);
+
+    assertThat(message.hasLazyChild()).isTrue();
+    assertThat(message.getLazyChild()).isEqualTo(TestMessage.getDefaultInstance());
+  }
+
+  @Test
+  public void testLazyField_malformedKeepsSizeOnceComputed() throws Exception {
+    TestMessage message = TestMessage.parseFrom(MALFORMED_LAZY_CHILD);
+
+    assertThat(message.getSerializedSize()).isEqualTo(MALFORMED_LAZY_CHILD.length);
+    assertThat(message.getLazyChild()).isEqualTo(TestMessage.getDefaultInstance());
+    assertThat(message.toByteArray()).isEqualTo(MALFORMED_LAZY_CHILD);
+  }
+
+  @Test
+  public void testLazyField_malformedInNestedMessageKeepsSize() throws Exception {
+    // child { <MALFORMED_LAZY_CHILD> }
+    byte[] bytes = {0x12, 0x03, 0x1a, 0x01, 0x08};
+    TestMessage message = TestMessage.parseFrom(bytes);
+
+    assertThat(message.getSerializedSize()).isEqualTo(bytes.length);
+    assertThat(message.getChild().getLazyChild()).isEqualTo(TestMessage.getDefaultInstance());
+    assertThat(message.toByteArray()).isEqualTo(bytes);
+  }
+
+  @Test
+  public void testNonLazyField_malformedFailsParsing() {
+    assertThrows(
+        InvalidProtocolBufferException.class,
+        () -> TestMessage.parseFrom(new byte[] {0x12, 0x01, 0x08}));
+  }
+}
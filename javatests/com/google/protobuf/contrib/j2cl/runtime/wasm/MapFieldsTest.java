@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MapFieldsTest {
+
+  @Test
+  public void testBuilderMap_sameView() {
+    TestMessage.Builder builder = TestMessage.newBuilder();
+
+    assertThat(builder.getEntriesMap()).isSameInstanceAs(builder.getEntriesMap());
+  }
+
+  @Test
+  public void testBuilderMap_viewReflectsUpdates() {
+    TestMessage.Builder builder = TestMessage.newBuilder();
+    Map<String, Integer> entries = builder.getEntriesMap();
+
+    builder.putEntries("a", 1).putEntries("b", 2);
+    assertThat(entries).containsExactly("a", 1, "b", 2);
+
+    builder.removeEntries("a");
+    assertThat(entries).containsExactly("b", 2);
+    assertThat(builder.getEntriesMap()).isSameInstanceAs(entries);
+  }
+
+  @Test
+  public void testBuilderMap_viewIsUnmodifiable() {
+    Map<String, Integer> entries = TestMessage.newBuilder().putEntries("a", 1).getEntriesMap();
+
+    assertThrows(UnsupportedOperationException.class, () -> entries.put("b", 2));
+    assertThrows(UnsupportedOperationException.class, () -> entries.remove("a"));
+  }
+
+  @Test
+  public void testBuilderMap_cloneHasOwnView() {
+    TestMessage.Builder builder = TestMessage.newBuilder().putEntries("a", 1);
+    Map<String, Integer> entries = builder.getEntriesMap();
+    TestMessage.Builder clone = builder.clone();
+
+    clone.putEntries("b", 2);
+
+    assertThat(clone.getEntriesMap()).isNotSameInstanceAs(entries);
+    assertThat(clone.getEntriesMap()).containsExactly("a", 1, "b", 2);
+    assertThat(entries).containsExactly("a", 1);
+  }
+
+  @Test
+  public void testBuilderMap_viewUnchangedByBuild() {
+    TestMessage.Builder builder = TestMessage.newBuilder().putEntries("a", 1);
+    Map<String, Integer> entries = builder.getEntriesMap();
+    TestMessage message = builder.build();
+
+    builder.putEntries("b", 2);
+
+    assertThat(entries).containsExactly("a", 1, "b", 2);
+    assertThat(message.getEntriesMap()).containsExactly("a", 1);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MessageEqualityTest {
+
+  // More elements than fit in a single leaf of a PrimitiveList.
+  private static final int SIZE = 100;
+
+  @Test
+  public void testEquals_sharedStorage() {
+    TestMessage message = newMessageWithValues();
+
+    TestMessage copy = message.toBuilder().build();
+
+    assertThat(copy).isEqualTo(message);
+    assertThat(copy.hashCode()).isEqualTo(message.hashCode());
+  }
+
+  @Test
+  public void testEquals_partiallySharedList() {
+    TestMessage message = newMessageWithValues();
+
+    // Only the leaf holding the last element is copied, the others stay shared.
+    TestMessage copy =
+        message.toBuilder().setValues(SIZE - 1, -1).setValues(SIZE - 1, SIZE - 1).build();
+    TestMessage different = message.toBuilder().setValues(SIZE - 1, -1).build();
+
+    assertThat(copy).isEqualTo(message);
+    assertThat(copy.hashCode()).isEqualTo(message.hashCode());
+    assertThat(different).isNotEqualTo(message);
+  }
+
+  @Test
+  public void testEquals_separateStorage() {
+    TestMessage message = newMessageWithValues();
+
+    TestMessage other = newMessageWithValues();
+
+    assertThat(other).isEqualTo(message);
+    assertThat(other.hashCode()).isEqualTo(message.hashCode());
+  }
+
+  @Test
+  public void testEquals_boxedAndUnboxedList() {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < SIZE; i++) {
+      values.add(i);
+    }
+
+    // Values added through the generic accessors stay boxed.
+    TestMessage boxed = TestMessage.newBuilder().addAllValues(values).build();
+
+    assertThat(boxed.getValuesList()).isNotInstanceOf(PrimitiveList.class);
+    assertThat(boxed).isEqualTo(newMessageWithValues());
+    assertThat(boxed.hashCode()).isEqualTo(newMessageWithValues().hashCode());
+  }
+
+  @Test
+  public void testEquals_collidingHashCodes() {
+    // 31 * (31 * 1 + 0) + 31 == 31 * (31 * 1 + 1) + 0
+    TestMessage message = TestMessage.newBuilder().addValues(0).addValues(31).build();
+    TestMessage other = TestMessage.newBuilder().addValues(1).addValues(0).build();
+
+    assertThat(message.hashCode()).isEqualTo(other.hashCode());
+    assertThat(message).isNotEqualTo(other);
+    assertThat(other).isNotEqualTo(message);
+  }
+
+  @Test
+  public void testEquals_zeroHashCode() {
+    // The fields hash to 31 * (31 * 1 + -31) == 0, which the message memoizes as MAX_VALUE.
+    TestMessage message = TestMessage.newBuilder().setPayload(-31).build();
+    TestMessage other = TestMessage.newBuilder().setPayload(-31).build();
+    // The fields of this one hash to MAX_VALUE.
+    TestMessage colliding = TestMessage.newBuilder().setPayload(-1039105022).build();
+
+    assertThat(message.hashCode()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(colliding.hashCode()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(other.hashCode()).isEqualTo(message.hashCode());
+    assertThat(message).isEqualTo(other);
+    assertThat(message).isNotEqualTo(colliding);
+    assertThat(colliding).isNotEqualTo(message);
+  }
+
+  @Test
+  public void testEquals_memoizedHashCodeRejects() {
+    TestMessage message = TestMessage.newBuilder().setPayload(1).build();
+    TestMessage other = TestMessage.newBuilder().setPayload(2).build();
+
+    assertThat(message).isNotEqualTo(other);
+    message.hashCode();
+    other.hashCode();
+    assertThat(message).isNotEqualTo(other);
+    assertThat(message).isEqualTo(TestMessage.newBuilder().setPayload(1).build());
+  }
+
+  @Test
+  public void testPrimitiveList_equalsAndHashCodeMatchList() {
+    TestMessage message = newMessageWithValues();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < SIZE; i++) {
+      expected.add(i);
+    }
+
+    assertThat(message.getValuesList()).isInstanceOf(PrimitiveList.class);
+    assertThat(message.getValuesList().equals(expected)).isTrue();
+    assertThat(expected.equals(message.getValuesList())).isTrue();
+    assertThat(message.getValuesList().hashCode()).isEqualTo(expected.hashCode());
+    assertThat(message.getValuesList().equals(Arrays.asList(0, 1))).isFalse();
+  }
+
+  private static TestMessage newMessageWithValues() {
+    TestMessage.Builder builder = TestMessage.newBuilder();
+    for (int i = 0; i < SIZE; i++) {
+      builder.addValues(i);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+/**
+ * A message with a singular field of each primitive kind, written the way the J2Wasm generator
+ * renders them.
+ *
+ * <pre>
+ * message PrimitiveFieldsMessage {
+ *   optional int32 int32_value = 1 [default = 42];
+ *   optional int64 int64_value = 2;
+ *   optional uint32 uint32_value = 3;
+ *   optional uint64 uint64_value = 4;
+ *   optional float float_value = 5;
+ *   optional double double_value = 6;
+ *   optional bool bool_value = 7;
+ * }
+ * </pre>
+ */
+public final class PrimitiveFieldsMessage
+    extends GeneratedMessageLite<PrimitiveFieldsMessage, PrimitiveFieldsMessage.Builder> {
+
+  private static PrimitiveFieldsMessage DEFAULT_INSTANCE;
+
+  private PrimitiveFieldsMessage(Builder builder) {
+    super(builder);
+  }
+
+  private PrimitiveFieldsMessage() {
+    super(new int[] {1, 2, 3, 4, 5, 6, 7});
+  }
+
+  public static PrimitiveFieldsMessage getDefaultInstance() {
+    if (DEFAULT_INSTANCE == null) {
+      DEFAULT_INSTANCE = new PrimitiveFieldsMessage();
+    }
+    return DEFAULT_INSTANCE;
+  }
+
+  @Override
+  public PrimitiveFieldsMessage getDefaultInstanceForType() {
+    return getDefaultInstance();
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  private static MessageSchema SCHEMA;
+
+  @Override
+  protected MessageSchema internalGetSchema() {
+    if (SCHEMA == null) {
+      SCHEMA =
+          MessageSchema.newBuilder()
+              .addField(1, MessageSchema.TYPE_INT32, 0)
+              .addField(2, MessageSchema.TYPE_INT64, 0)
+              .addField(3, MessageSchema.TYPE_UINT32, 0)
+              .addField(4, MessageSchema.TYPE_UINT64, 0)
+              .addField(5, MessageSchema.TYPE_FLOAT, 0)
+              .addField(6, MessageSchema.TYPE_DOUBLE, 0)
+              .addField(7, MessageSchema.TYPE_BOOL, 0)
+              .build();
+    }
+    return SCHEMA;
+  }
+
+  public static PrimitiveFieldsMessage parseFrom(byte[] data)
+      throws InvalidProtocolBufferException {
+    return parseFrom(getDefaultInstance(), data);
+  }
+
+  public boolean hasInt32Value() {
+    return hasField(1);
+  }
+
+  public int getInt32Value() {
+    return getIntField(1, 42);
+  }
+
+  public boolean hasInt64Value() {
+    return hasField(2);
+  }
+
+  public long getInt64Value() {
+    return getLongField(2, 0L);
+  }
+
+  public boolean hasUint32Value() {
+    return hasField(3);
+  }
+
+  public int getUint32Value() {
+    return getIntField(3, 0);
+  }
+
+  public boolean hasUint64Value() {
+    return hasField(4);
+  }
+
+  public long getUint64Value() {
+    return getLongField(4, 0L);
+  }
+
+  public boolean hasFloatValue() {
+    return hasField(5);
+  }
+
+  public float getFloatValue() {
+    return getFloatField(5, 0f);
+  }
+
+  public boolean hasDoubleValue() {
+    return hasField(6);
+  }
+
+  public double getDoubleValue() {
+    return getDoubleField(6, 0.0);
+  }
+
+  public boolean hasBoolValue() {
+    return hasField(7);
+  }
+
+  public boolean getBoolValue() {
+    return getBooleanField(7, false);
+  }
+
+  /** Returns the field through the generic accessor, boxing it, or null if it is not set. */
+  Object getBoxedField(int fieldNumber) {
+    return getField(fieldNumber, null);
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(getDefaultInstance());
+  }
+
+  public static final class Builder
+      extends GeneratedMessageLite.Builder<PrimitiveFieldsMessage, Builder> {
+
+    private Builder(Builder builder) {
+      super(builder);
+    }
+
+    private Builder(PrimitiveFieldsMessage message) {
+      super(message);
+    }
+
+    public PrimitiveFieldsMessage getDefaultInstanceForType() {
+      return getDefaultInstance();
+    }
+
+    @Override
+    public PrimitiveFieldsMessage build() {
+      return new PrimitiveFieldsMessage(this);
+    }
+
+    @Override
+    public Builder clone() {
+      return new Builder(this);
+    }
+
+    public boolean hasInt32Value() {
+      return hasField(1);
+    }
+
+    public int getInt32Value() {
+      return getIntField(1, 42);
+    }
+
+    public Builder setInt32Value(int value) {
+      return setIntField(1, value);
+    }
+
+    public Builder clearInt32Value() {
+      return removeField(1);
+    }
+
+    public Builder setInt64Value(long value) {
+      return setLongField(2, value);
+    }
+
+    public Builder clearInt64Value() {
+      return removeField(2);
+    }
+
+    public Builder setUint32Value(int value) {
+      return setIntField(3, value);
+    }
+
+    public Builder setUint64Value(long value) {
+      return setLongField(4, value);
+    }
+
+    public Builder setFloatValue(float value) {
+      return setFloatField(5, value);
+    }
+
+    public Builder clearFloatValue() {
+      return removeField(5);
+    }
+
+    public Builder setDoubleValue(double value) {
+      return setDoubleField(6, value);
+    }
+
+    public Builder clearDoubleValue() {
+      return removeField(6);
+    }
+
+    public Builder setBoolValue(boolean value) {
+      return setBooleanField(7, value);
+    }
+
+    public Builder clearBoolValue() {
+      return removeField(7);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message written the way the J2Wasm generator renders them, for testing the runtime internals.
+ *
+ * <pre>
+ * message TestMessage {
+ *   optional int32 payload = 1;
+ *   optional TestMessage child = 2;
+ *   optional TestMessage lazy_child = 3 [lazy = true];
+ *   repeated int32 values = 4 [packed = true];
+ *   map&lt;string, int32&gt; entries = 5;
+ * }
+ * </pre>
+ */
+public final class TestMessage extends GeneratedMessageLite<TestMessage, TestMessage.Builder> {
+
+  public static final int PAYLOAD_FIELD_NUMBER = 1;
+  public static final int CHILD_FIELD_NUMBER = 2;
+  public static final int LAZY_CHILD_FIELD_NUMBER = 3;
+  public static final int VALUES_FIELD_NUMBER = 4;
+  public static final int ENTRIES_FIELD_NUMBER = 5;
+
+  private static TestMessage DEFAULT_INSTANCE;
+
+  private TestMessage(Builder builder) {
+    super(builder);
+  }
+
+  private TestMessage() {
+    super(new int[] {1, 2, 3, 4, 5});
+  }
+
+  public static TestMessage getDefaultInstance() {
+    if (DEFAULT_INSTANCE == null) {
+      DEFAULT_INSTANCE = new TestMessage();
+    }
+    return DEFAULT_INSTANCE;
+  }
+
+  @Override
+  public TestMessage getDefaultInstanceForType() {
+    return getDefaultInstance();
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  private static MessageSchema SCHEMA;
+
+  @Override
+  protected MessageSchema internalGetSchema() {
+    if (SCHEMA == null) {
+      SCHEMA =
+          MessageSchema.newBuilder()
+              .addField(1, MessageSchema.TYPE_INT32, 0)
+              .addMessageField(2, MessageSchema.TYPE_MESSAGE, 0, TestMessage::getDefaultInstance)
+              .addMessageField(
+                  3,
+                  MessageSchema.TYPE_MESSAGE,
+                  MessageSchema.LAZY,
+                  TestMessage::getDefaultInstance)
+              .addField(4, MessageSchema.TYPE_INT32, MessageSchema.REPEATED | MessageSchema.PACKED)
+              .addMapField(5, MessageSchema.TYPE_STRING, MessageSchema.TYPE_INT32)
+              .build();
+    }
+    return SCHEMA;
+  }
+
+  public static TestMessage parseFrom(byte[] data) throws InvalidProtocolBufferException {
+    return parseFrom(getDefaultInstance(), data);
+  }
+
+  public boolean hasPayload() {
+    return hasField(1);
+  }
+
+  public int getPayload() {
+    return getIntField(1, 0);
+  }
+
+  public boolean hasChild() {
+    return hasField(2);
+  }
+
+  public TestMessage getChild() {
+    return getField(2, getDefaultInstance());
+  }
+
+  public boolean hasLazyChild() {
+    return hasField(3);
+  }
+
+  public TestMessage getLazyChild() {
+    return getField(3, getDefaultInstance());
+  }
+
+  public List<Integer> getValuesList() {
+    return getFieldList(4);
+  }
+
+  public Map<String, Integer> getEntriesMap() {
+    return getFieldMap(5);
+  }
+
+  /** Returns the raw value stored for the field, without decoding lazy messages. */
+  Object getUnresolvedField(int fieldNumber) {
+    return fields.getUnresolved(fieldNumber);
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(getDefaultInstance());
+  }
+
+  public static final class Builder extends GeneratedMessageLite.Builder<TestMessage, Builder> {
+
+    private Builder(Builder builder) {
+      super(builder);
+    }
+
+    private Builder(TestMessage message) {
+      super(message);
+    }
+
+    public TestMessage getDefaultInstanceForType() {
+      return getDefaultInstance();
+    }
+
+    @Override
+    public TestMessage build() {
+      return new TestMessage(this);
+    }
+
+    @Override
+    public Builder clone() {
+      return new Builder(this);
+    }
+
+    public int getPayload() {
+      return getIntField(1, 0);
+    }
+
+    public Builder setPayload(int value) {
+      return setIntField(1, value);
+    }
+
+    public Builder clearPayload() {
+      return removeField(1);
+    }
+
+    public TestMessage getChild() {
+      return getField(2, getDefaultInstance());
+    }
+
+    public Builder setChild(TestMessage value) {
+      return setField(2, value);
+    }
+
+    public Builder getChildBuilder() {
+      return getFieldBuilder(2, getDefaultInstance());
+    }
+
+    public Builder clearChild() {
+      return removeField(2);
+    }
+
+    public TestMessage getLazyChild() {
+      return getField(3, getDefaultInstance());
+    }
+
+    public Builder setLazyChild(TestMessage value) {
+      return setField(3, value);
+    }
+
+    public Builder addValues(int value) {
+      return addRepeatedIntField(4, value);
+    }
+
+    public Builder setValues(int index, int value) {
+      return setRepeatedIntField(4, index, value);
+    }
+
+    public Builder addAllValues(Iterable<Integer> values) {
+      return addAllRepeatedField(4, values);
+    }
+
+    public Map<String, Integer> getEntriesMap() {
+      return getFieldMap(5);
+    }
+
+    public Builder putEntries(String key, int value) {
+      return putMapField(5, key, value);
+    }
+
+    public Builder removeEntries(String key) {
+      return removeMapField(5, key);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests singular primitive fields, which FieldStorage keeps unboxed as raw bits. */
+@RunWith(JUnit4.class)
+public final class UnboxedPrimitiveFieldsTest {
+
+  private static final float[] FLOATS = {
+    Float.NaN,
+    -0f,
+    0f,
+    Float.MIN_VALUE,
+    Float.MAX_VALUE,
+    Float.NEGATIVE_INFINITY,
+    // A NaN other than the canonical one.
+    Float.intBitsToFloat(0x7fc00001),
+  };
+
+  private static final double[] DOUBLES = {
+    Double.NaN,
+    -0.0,
+    0.0,
+    Double.MIN_VALUE,
+    Double.MAX_VALUE,
+    Double.NEGATIVE_INFINITY,
+    Double.longBitsToDouble(0x7ff8000000000001L),
+  };
+
+  @Test
+  public void testFloat_roundTrip() throws Exception {
+    for (float value : FLOATS) {
+      PrimitiveFieldsMessage message =
+          PrimitiveFieldsMessage.newBuilder().setFloatValue(value).build();
+      PrimitiveFieldsMessage parsed = PrimitiveFieldsMessage.parseFrom(message.toByteArray());
+
+      assertThat(Float.floatToIntBits(message.getFloatValue()))
+          .isEqualTo(Float.floatToIntBits(value));
+      assertThat(Float.floatToIntBits(parsed.getFloatValue()))
+          .isEqualTo(Float.floatToIntBits(value));
+      assertThat(message.getBoxedField(5)).isEqualTo(value);
+      assertThat(parsed).isEqualTo(message);
+      assertThat(parsed.hashCode()).isEqualTo(message.hashCode());
+    }
+  }
+
+  @Test
+  public void testDouble_roundTrip() throws Exception {
+    for (double value : DOUBLES) {
+      PrimitiveFieldsMessage message =
+          PrimitiveFieldsMessage.newBuilder().setDoubleValue(value).build();
+      PrimitiveFieldsMessage parsed = PrimitiveFieldsMessage.parseFrom(message.toByteArray());
+
+      assertThat(Double.doubleToLongBits(message.getDoubleValue()))
+          .isEqualTo(Double.doubleToLongBits(value));
+      assertThat(Double.doubleToLongBits(parsed.getDoubleValue()))
+          .isEqualTo(Double.doubleToLongBits(value));
+      assertThat(message.getBoxedField(6)).isEqualTo(value);
+      assertThat(parsed).isEqualTo(message);
+      assertThat(parsed.hashCode()).isEqualTo(message.hashCode());
+    }
+  }
+
+  @Test
+  public void testNegativeZero_notEqualToZero() {
+    PrimitiveFieldsMessage negativeZero =
+        PrimitiveFieldsMessage.newBuilder().setFloatValue(-0f).setDoubleValue(-0.0).build();
+    PrimitiveFieldsMessage zero =
+        PrimitiveFieldsMessage.newBuilder().setFloatValue(0f).setDoubleValue(0.0).build();
+
+    assertThat(negativeZero).isNotEqualTo(zero);
+    assertThat(negativeZero.toBuilder().setFloatValue(0f).setDoubleValue(0.0).build())
+        .isEqualTo(zero);
+  }
+
+  @Test
+  public void testNegativeInt32_roundTrip() throws Exception {
+    for (int value : new int[] {-1, Integer.MIN_VALUE}) {
+      PrimitiveFieldsMessage message =
+          PrimitiveFieldsMessage.newBuilder().setInt32Value(value).build();
+      PrimitiveFieldsMessage parsed = PrimitiveFieldsMessage.parseFrom(message.toByteArray());
+
+      // Negative int32 values are sign extended to a 10 byte varint.
+      assertThat(message.getSerializedSize()).isEqualTo(11);
+      assertThat(message.getInt32Value()).isEqualTo(value);
+      assertThat(parsed.getInt32Value()).isEqualTo(value);
+      // The bits are widened to a long internally, the boxed value is still an int.
+      assertThat(message.getBoxedField(1)).isEqualTo(value);
+      assertThat(parsed).isEqualTo(message);
+    }
+  }
+
+  @Test
+  public void testInt64_roundTrip() throws Exception {
+    for (long value : new long[] {-1L, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 32}) {
+      PrimitiveFieldsMessage message =
+          PrimitiveFieldsMessage.newBuilder().setInt64Value(value).build();
+      PrimitiveFieldsMessage parsed = PrimitiveFieldsMessage.parseFrom(message.toByteArray());
+
+      assertThat(parsed.getInt64Value()).isEqualTo(value);
+      assertThat(message.getBoxedField(2)).isEqualTo(value);
+      assertThat(parsed).isEqualTo(message);
+    }
+  }
+
+  @Test
+  public void testUint32_edgeValues() throws Exception {
+    // 2^32 - 1 and 2^31, which are negative as an int.
+    for (int value : new int[] {-1, Integer.MIN_VALUE}) {
+      PrimitiveFieldsMessage message =
+          PrimitiveFieldsMessage.newBuilder().setUint32Value(value).build();
+      PrimitiveFieldsMessage parsed = PrimitiveFieldsMessage.parseFrom(message.toByteArray());
+
+      // Unlike int32, uint32 values are not sign extended.
+      assertThat(message.getSerializedSize()).isEqualTo(6);
+      assertThat(parsed.getUint32Value()).isEqualTo(value);
+      assertThat(message.getBoxedField(3)).isEqualTo(value);
+      assertThat(parsed).isEqualTo(message);
+    }
+  }
+
+  @Test
+  public void testUint64_edgeValues() throws Exception {
+    // 2^64 - 1 and 2^63, which are negative as a long.
+    for (long value : new long[] {-1L, Long.MIN_VALUE}) {
+      PrimitiveFieldsMessage message =
+          PrimitiveFieldsMessage.newBuilder().setUint64Value(value).build();
+      PrimitiveFieldsMessage parsed = PrimitiveFieldsMessage.parseFrom(message.toByteArray());
+
+      assertThat(message.getSerializedSize()).isEqualTo(11);
+      assertThat(parsed.getUint64Value()).isEqualTo(value);
+      assertThat(message.getBoxedField(4)).isEqualTo(value);
+      assertThat(parsed).isEqualTo(message);
+    }
+  }
+
+  @Test
+  public void testHas_unsetFieldReturnsDefault() {
+    PrimitiveFieldsMessage message = PrimitiveFieldsMessage.getDefaultInstance();
+
+    assertThat(message.hasInt32Value()).isFalse();
+    assertThat(message.getInt32Value()).isEqualTo(42);
+    assertThat(message.hasFloatValue()).isFalse();
+    assertThat(message.getFloatValue()).isEqualTo(0f);
+    assertThat(message.hasBoolValue()).isFalse();
+    assertThat(message.getBoolValue()).isFalse();
+    assertThat(message.getBoxedField(1)).isNull();
+  }
+
+  @Test
+  public void testHas_fieldSetToZero() throws Exception {
+    PrimitiveFieldsMessage message =
+        PrimitiveFieldsMessage.newBuilder()
+            .setInt32Value(0)
+            .setInt64Value(0L)
+            .setDoubleValue(0.0)
+            .setBoolValue(false)
+            .build();
+    PrimitiveFieldsMessage parsed = PrimitiveFieldsMessage.parseFrom(message.toByteArray());
+
+    // Zero is not the default of int32_value, but is still set rather than defaulted.
+    assertThat(message.hasInt32Value()).isTrue();
+    assertThat(message.getInt32Value()).isEqualTo(0);
+    assertThat(message.hasInt64Value()).isTrue();
+    assertThat(message.hasDoubleValue()).isTrue();
+    assertThat(message.hasBoolValue()).isTrue();
+    assertThat(message.getSerializedSize()).isEqualTo(2 + 2 + 9 + 2);
+    assertThat(parsed.hasInt32Value()).isTrue();
+    assertThat(parsed.hasBoolValue()).isTrue();
+    assertThat(parsed).isEqualTo(message);
+    assertThat(message).isNotEqualTo(PrimitiveFieldsMessage.getDefaultInstance());
+  }
+
+  @Test
+  public void testClear() {
+    PrimitiveFieldsMessage.Builder builder =
+        PrimitiveFieldsMessage.newBuilder()
+            .setInt32Value(-1)
+            .setInt64Value(Long.MIN_VALUE)
+            .setFloatValue(Float.NaN)
+            .setDoubleValue(-0.0)
+            .setBoolValue(true);
+    PrimitiveFieldsMessage message = builder.build();
+
+    PrimitiveFieldsMessage cleared =
+        builder
+            .clearInt32Value()
+            .clearInt64Value()
+            .clearFloatValue()
+            .clearDoubleValue()
+            .clearBoolValue()
+            .build();
+
+    assertThat(builder.hasInt32Value()).isFalse();
+    assertThat(builder.getInt32Value()).isEqualTo(42);
+    assertThat(cleared.hasInt64Value()).isFalse();
+    assertThat(cleared.getInt64Value()).isEqualTo(0L);
+    assertThat(cleared.hasDoubleValue()).isFalse();
+    assertThat(cleared.getSerializedSize()).isEqualTo(0);
+    assertThat(cleared).isEqualTo(PrimitiveFieldsMessage.getDefaultInstance());
+    assertThat(cleared.hashCode())
+        .isEqualTo(PrimitiveFieldsMessage.getDefaultInstance().hashCode());
+    // Clearing the builder does not change messages built before.
+    assertThat(message.getInt32Value()).isEqualTo(-1);
+    assertThat(message.hasBoolValue()).isTrue();
+  }
+
+  @Test
+  public void testOverwrite_withOtherValue() {
+    PrimitiveFieldsMessage.Builder builder = PrimitiveFieldsMessage.newBuilder().setInt32Value(-1);
+    PrimitiveFieldsMessage message = builder.build();
+
+    builder.setInt32Value(7);
+
+    assertThat(builder.getInt32Value()).isEqualTo(7);
+    assertThat(message.getInt32Value()).isEqualTo(-1);
+    assertThat(builder.build())
+        .isEqualTo(PrimitiveFieldsMessage.newBuilder().setInt32Value(7).build());
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.protobuf;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.protobuf.GeneratedMessageLite.GeneratedExtension;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class UnknownFieldsTest {
+
+  // payload: 1
+  private static final byte[] PAYLOAD = {0x08, 0x01};
+  // 99: 1
+  private static final byte[] VARINT = {(byte) 0x98, 0x06, 0x01};
+  // 100: fixed32 1, 101: fixed64 2, 102: "hi", 103 { 1: 5 }
+  private static final byte[] OTHER_WIRE_TYPES = {
+    (byte) 0xa5, 0x06, 0x01, 0x00, 0x00, 0x00,
+    (byte) 0xa9, 0x06, 0x02, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+    (byte) 0xb2, 0x06, 0x02, 'h', 'i',
+    (byte) 0xbb, 0x06, 0x08, 0x05, (byte) 0xbc, 0x06,
+  };
+
+  @Test
+  public void testUnknownField_writtenBack() throws Exception {
+    byte[] bytes = concat(PAYLOAD, VARINT);
+
+    TestMessage message = TestMessage.parseFrom(bytes);
+
+    assertThat(message.getPayload()).isEqualTo(1);
+    assertThat(message.getSerializedSize()).isEqualTo(bytes.length);
+    assertThat(message.toByteArray()).isEqualTo(bytes);
+  }
+
+  @Test
+  public void testUnknownFields_allWireTypesWrittenBackAfterKnownFields() throws Exception {
+    TestMessage message = TestMessage.parseFrom(concat(VARINT, PAYLOAD, OTHER_WIRE_TYPES));
+
+    assertThat(message.getPayload()).isEqualTo(1);
+    assertThat(message.toByteArray()).isEqualTo(concat(PAYLOAD, VARINT, OTHER_WIRE_TYPES));
+  }
+
+  @Test
+  public void testUnknownFields_keptInNestedMessagesAndThroughBuilder() throws Exception {
+    // child { 99: 1 }
+    byte[] child = concat(new byte[] {0x12, (byte) VARINT.length}, VARINT);
+
+    TestMessage message = TestMessage.parseFrom(child).toBuilder().setPayload(1).build();
+
+    assertThat(message.toByteArray()).isEqualTo(concat(PAYLOAD, child));
+    assertThat(message.getChild().toByteArray()).isEqualTo(VARINT);
+  }
+
+  @Test
+  public void testKnownFieldWithOtherWireType_keptAsUnknown() throws Exception {
+    // payload as a length delimited field.
+    byte[] bytes = {0x0a, 0x01, 0x00};
+
+    TestMessage message = TestMessage.parseFrom(bytes);
+
+    assertThat(message.hasPayload()).isFalse();
+    assertThat(message.toByteArray()).isEqualTo(bytes);
+  }
+
+  @Test
+  public void testUnknownFields_partOfEquality() throws Exception {
+    TestMessage message = TestMessage.parseFrom(concat(PAYLOAD, VARINT));
+
+    assertThat(message).isEqualTo(TestMessage.parseFrom(concat(PAYLOAD, VARINT)));
+    assertThat(message.hashCode())
+        .isEqualTo(TestMessage.parseFrom(concat(PAYLOAD, VARINT)).hashCode());
+    assertThat(message).isNotEqualTo(TestMessage.parseFrom(PAYLOAD));
+  }
+
+  @Test
+  public void testExtensionSetThroughBuilder_failsToSerialize() {
+    TestMessage message =
+        TestMessage.newBuilder()
+            .setPayload(1)
+            .setExtension(new GeneratedExtension<TestMessage, Integer>(99, 0), 1)
+            .build();
+
+    assertThrows(UnsupportedOperationException.class, message::toByteArray);
+  }
+
+  @Test
+  public void testUnknownFields_keptWhenOtherFieldsChange() throws Exception {
+    TestMessage message = TestMessage.parseFrom(concat(PAYLOAD, VARINT));
+
+    assertThat(message.toBuilder().setPayload(2).build().toByteArray())
+        .isEqualTo(concat(new byte[] {0x08, 0x02}, VARINT));
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    int length = 0;
+    for (byte[] array : arrays) {
+      length += array.length;
+    }
+    byte[] result = new byte[length];
+    int offset = 0;
+    for (byte[] array : arrays) {
+      System.arraycopy(array, 0, result, offset, array.length);
+      offset += array.length;
+    }
+    return result;
+  }
+}